@@ -0,0 +1,133 @@
+package sh.harold.sprite.atlas;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a version manifest and an asset index the way {@link MojangAtlasSource} does now, streaming through
+ * a {@link JsonReader}, against the previous parsing that read each body into a string and built a full
+ * {@link JsonObject} tree before picking out what it needed. Both inputs are generated in the shape of the
+ * real files: a manifest of 800 versions with the requested one near the top, and an asset index of 4,500
+ * objects of which about a quarter are textures. Run with the {@code gc} profiler to compare allocation per
+ * parse.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetadataParseBenchmark {
+    private static final String VERSION = "1.21.8";
+
+    private byte[] manifest;
+    private byte[] assetIndex;
+
+    @Setup
+    public void setUp() {
+        manifest = manifest(800).getBytes(StandardCharsets.UTF_8);
+        assetIndex = assetIndex(4_500, new Random(42)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String streamedManifest() throws IOException {
+        try (JsonReader reader = reader(manifest)) {
+            return MojangAtlasSource.readVersionUrl(reader, VERSION);
+        }
+    }
+
+    @Benchmark
+    public String treeManifest() {
+        JsonObject root = JsonParser.parseString(new String(manifest, StandardCharsets.UTF_8)).getAsJsonObject();
+        for (JsonElement element : root.getAsJsonArray("versions")) {
+            JsonObject version = element.getAsJsonObject();
+            if (VERSION.equals(version.get("id").getAsString())) {
+                return version.get("url").getAsString();
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public AssetIndex streamedAssetIndex() throws IOException {
+        try (JsonReader reader = reader(assetIndex)) {
+            return MojangAtlasSource.readAssetIndex(reader);
+        }
+    }
+
+    @Benchmark
+    public AssetIndex treeAssetIndex() {
+        JsonObject root = JsonParser.parseString(new String(assetIndex, StandardCharsets.UTF_8)).getAsJsonObject();
+        Map<String, String> textures = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonElement> entry : root.getAsJsonObject("objects").entrySet()) {
+            String path = entry.getKey();
+            if (path.contains("/textures/") && path.endsWith(".png")) {
+                textures.put(path, entry.getValue().getAsJsonObject().get("hash").getAsString());
+            }
+        }
+        return AssetIndex.fromHexHashes(textures);
+    }
+
+    private static JsonReader reader(byte[] body) {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+    }
+
+    private static String manifest(int versions) {
+        StringBuilder json = new StringBuilder("{\"latest\":{\"release\":\"1.21.10\",\"snapshot\":\"25w41a\"},")
+            .append("\"versions\":[");
+        for (int i = 0; i < versions; i++) {
+            // The requested version sits a few entries down, as a recent release does in the real manifest.
+            String id = i == 12 ? VERSION : "version-" + i;
+            json.append(i == 0 ? "" : ",")
+                .append("{\"id\":\"").append(id).append("\",\"type\":\"release\",")
+                .append("\"url\":\"https://piston-meta.mojang.com/v1/packages/").append(i).append('/').append(id)
+                .append(".json\",\"time\":\"2025-07-17T12:00:00+00:00\",\"releaseTime\":\"2025-07-17T12:00:00+00:00\",")
+                .append("\"sha1\":\"").append(hex(20, i)).append("\",\"complianceLevel\":1}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String assetIndex(int objects, Random random) {
+        String[] kinds = {
+            "minecraft/textures/block/", "minecraft/sounds/ambient/", "minecraft/lang/", "minecraft/sounds/mob/"
+        };
+        String[] suffixes = {".png", ".ogg", ".json", ".ogg"};
+        StringBuilder json = new StringBuilder("{\"objects\":{");
+        for (int i = 0; i < objects; i++) {
+            int kind = i % kinds.length;
+            json.append(i == 0 ? "" : ",")
+                .append('"').append(kinds[kind]).append("asset_").append(i).append(suffixes[kind])
+                .append("\":{\"hash\":\"").append(hex(20, random.nextLong()))
+                .append("\",\"size\":").append(random.nextInt(1 << 20)).append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String hex(int bytes, long seed) {
+        byte[] raw = new byte[bytes];
+        new Random(seed).nextBytes(raw);
+        return HexFormat.of().formatHex(raw);
+    }
+}
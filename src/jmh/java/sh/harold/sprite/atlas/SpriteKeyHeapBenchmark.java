@@ -0,0 +1,199 @@
+package sh.harold.sprite.atlas;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Measures the retained heap of a catalog's sprite keys as the groups hold them now, ids into a front-coded
+ * {@link SpriteSymbolTable}, against the same keys held as a {@code List<String>} per group with one string
+ * per sprite, as the groups held them before. Each figure is the heap still in use after full collections
+ * while only that structure is reachable, and is reported as an auxiliary counter next to the (meaningless)
+ * single-shot time.
+ *
+ * <p>Set {@code cacheDir} to a version's atlas cache directory, the one holding {@code textures.index}, to
+ * measure a real catalog; its atlases are copied to a temporary directory, so the snapshot written while
+ * building never lands in the cache. Left empty, a synthetic cache shaped like the vanilla one is generated.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 0)
+@Measurement(iterations = 3)
+// Under the serial collector System.gc() is a full collection, so heap used settles to what is reachable.
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseSerialGC")
+@State(Scope.Benchmark)
+public class SpriteKeyHeapBenchmark {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    @Param("")
+    public String cacheDir;
+
+    private Path cacheRoot;
+    private Logger logger;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RetainedBytes {
+        public long snapshot;
+        public long symbolTable;
+        public long stringLists;
+
+        @Setup(org.openjdk.jmh.annotations.Level.Iteration)
+        public void clear() {
+            snapshot = 0;
+            symbolTable = 0;
+            stringLists = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        cacheRoot = Files.createTempDirectory("sprite-key-heap");
+        if (cacheDir.isEmpty()) {
+            writeSyntheticCache(cacheRoot);
+        } else {
+            copyAtlases(Path.of(cacheDir), cacheRoot);
+        }
+        logger = Logger.getLogger(SpriteKeyHeapBenchmark.class.getName());
+        logger.setLevel(Level.WARNING);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(cacheRoot)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void retained(RetainedBytes retained) throws IOException, InterruptedException {
+        // A first build loads and initializes everything building touches, so the baseline already holds it.
+        build();
+        long empty = usedHeap();
+        SpriteAtlasCatalog catalog = build();
+        SpriteAtlasCatalog.CatalogSnapshot snapshot = catalog.snapshotOrEmpty();
+        List<SpriteAtlasCatalog.SpriteGroup> groups = new ArrayList<>();
+        for (SpriteAtlasCatalog.AtlasEntry atlas : snapshot.atlases()) {
+            groups.addAll(atlas.groups());
+        }
+        retained.snapshot = usedHeap() - empty;
+
+        catalog = null;
+        snapshot = null;
+        retained.symbolTable = usedHeap() - empty;
+
+        List<List<String>> lists = new ArrayList<>(groups.size());
+        for (SpriteAtlasCatalog.SpriteGroup group : groups) {
+            List<String> keys = new ArrayList<>(group.size());
+            for (String key : group.sprites()) {
+                keys.add(new String(key.toCharArray()));
+            }
+            lists.add(keys);
+        }
+        groups = null;
+        retained.stringLists = usedHeap() - empty;
+        lists.clear();
+    }
+
+    private SpriteAtlasCatalog build() throws IOException {
+        SpriteAtlasCatalog catalog = new SpriteAtlasCatalog(cacheRoot, logger);
+        catalog.rebuild(AssetIndex.empty(), "heap");
+        return catalog;
+    }
+
+    // Objects only freed once their references are processed need another collection, so collect until settled.
+    private static long usedHeap() throws InterruptedException {
+        long used = -1;
+        for (int i = 0; i < 20; i++) {
+            System.gc();
+            Thread.sleep(50);
+            long settled = used;
+            used = MEMORY.getHeapMemoryUsage().getUsed();
+            if (used == settled) {
+                break;
+            }
+        }
+        return used;
+    }
+
+    private static void copyAtlases(Path source, Path target) throws IOException {
+        Files.copy(source.resolve("textures.index"), target.resolve("textures.index"));
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String relative = source.relativize(file).toString().replace('\\', '/');
+                if (Files.isRegularFile(file) && AtlasCacheStore.isCachedAtlasPath(relative)) {
+                    Path copy = target.resolve(relative);
+                    Files.createDirectories(copy.getParent());
+                    Files.copy(file, copy);
+                }
+            }
+        }
+    }
+
+    // Roughly the vanilla 1.21 counts: the big directory atlases plus armor trims as paletted permutations.
+    private static void writeSyntheticCache(Path root) throws IOException {
+        String[][] directories = {
+            {"blocks", "block", "1150"}, {"items", "item", "1400"}, {"particles", "particle", "190"},
+            {"gui", "gui/sprites", "760"}, {"mob_effects", "mob_effect", "40"}, {"paintings", "painting", "50"}
+        };
+        String[] words = {"oak", "spruce", "copper", "stone", "deepslate", "stripped", "log", "planks", "door",
+            "trapdoor", "stairs", "slab", "weathered", "oxidized", "waxed", "top", "side", "bottom", "cut", "tuff"};
+        List<String> textures = new ArrayList<>();
+        Path atlases = Files.createDirectories(root.resolve("minecraft/atlases"));
+        for (String[] directory : directories) {
+            int count = Integer.parseInt(directory[2]);
+            for (int i = 0; i < count; i++) {
+                String name = words[i % words.length] + "_" + words[(i / words.length) % words.length] + "_" + i;
+                textures.add("minecraft/textures/" + directory[1] + "/" + name + ".png");
+            }
+            Files.writeString(atlases.resolve(directory[0] + ".json"), "{\"sources\":[{\"type\":"
+                + "\"minecraft:directory\",\"source\":\"" + directory[1] + "\",\"prefix\":\"" + directory[1] + "/\"}]}",
+                StandardCharsets.UTF_8);
+        }
+
+        String[] patterns = {"coast", "dune", "eye", "host", "raiser", "rib", "sentry", "shaper", "silence", "snout",
+            "spire", "tide", "vex", "ward", "wayfinder", "wild", "flow", "bolt"};
+        String[] materials = {"quartz", "iron", "netherite", "redstone", "copper", "gold", "emerald", "diamond",
+            "lapis", "amethyst", "resin", "iron_darker", "netherite_darker", "gold_darker", "diamond_darker"};
+        StringBuilder bases = new StringBuilder();
+        for (String pattern : patterns) {
+            for (String layer : new String[]{"humanoid", "humanoid_leggings"}) {
+                bases.append(bases.isEmpty() ? "" : ",").append("\"trims/entity/").append(layer).append('/')
+                    .append(pattern).append('"');
+            }
+        }
+        StringBuilder permutations = new StringBuilder();
+        for (String material : materials) {
+            permutations.append(permutations.isEmpty() ? "" : ",").append('"').append(material)
+                .append("\":\"trims/color_palettes/").append(material).append('"');
+        }
+        Files.writeString(atlases.resolve("armor_trims.json"), "{\"sources\":[{"
+            + "\"type\":\"minecraft:paletted_permutations\","
+            + "\"textures\":[" + bases + "],\"palette_key\":\"trims/color_palettes/trim_palette\","
+            + "\"permutations\":{" + permutations + "}}]}", StandardCharsets.UTF_8);
+        Files.write(root.resolve("textures.index"), textures, StandardCharsets.UTF_8);
+    }
+}
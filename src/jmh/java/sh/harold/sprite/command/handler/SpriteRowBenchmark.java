@@ -0,0 +1,80 @@
+package sh.harold.sprite.command.handler;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders one sprite row of {@code /sprite view <atlas>} the way the handler does now, with the sprite
+ * component built directly, against the previous rendering that parsed a MiniMessage tag for the icon of
+ * every row. Both render the same row.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpriteRowBenchmark {
+    private static final MiniMessage MINI = MiniMessage.miniMessage();
+
+    @Param({"block/stone", "trims/entity/humanoid/coast_netherite_darker"})
+    public String spriteKey;
+
+    private String atlasId;
+    private String previewCommand;
+
+    @Setup
+    public void setUp() {
+        atlasId = "minecraft:blocks";
+        previewCommand = "/sprite preview blocks " + spriteKey;
+    }
+
+    @Benchmark
+    public Component directRow() {
+        return SpriteViewCommandHandler.spriteLine(atlasId, spriteKey, previewCommand);
+    }
+
+    @Benchmark
+    public Component miniMessageRow() {
+        String miniMessageTag = "sprite:\"" + atlasId.replace("\"", "\\\"") + "\":" + spriteKey.replace("\"", "\\\"");
+        Component icon = MINI.deserialize("<reset><white><" + miniMessageTag + ">");
+        Component framed = Component.text("[ ", NamedTextColor.GRAY)
+            .append(icon)
+            .append(Component.text(" ]", NamedTextColor.GRAY))
+            .clickEvent(ClickEvent.runCommand(previewCommand))
+            .hoverEvent(Component.text("Click to preview in title", NamedTextColor.YELLOW));
+        String jsonPayload = "{\"object\":\"atlas\",\"atlas\":\"" + atlasId + "\",\"sprite\":\"" + spriteKey + "\"}";
+        return Component.text(spriteKey.substring(spriteKey.lastIndexOf('/') + 1), NamedTextColor.YELLOW)
+            .clickEvent(ClickEvent.copyToClipboard(spriteKey))
+            .hoverEvent(Component.text("Copy full path: " + spriteKey, NamedTextColor.GRAY))
+            .append(Component.text(" "))
+            .append(framed)
+            .append(Component.text(" "))
+            .append(Component.text("-", NamedTextColor.GRAY))
+            .append(Component.text(" "))
+            .append(copyButton("[MM]", NamedTextColor.LIGHT_PURPLE, "<" + miniMessageTag + ">", "Copy MiniMessage tag"))
+            .append(Component.text(" "))
+            .append(copyButton("[JSON]", NamedTextColor.AQUA, jsonPayload, "Copy JSON payload"));
+    }
+
+    private static Component copyButton(String label, NamedTextColor color, String payload, String hover) {
+        return Component.text(label, color)
+            .clickEvent(ClickEvent.copyToClipboard(payload))
+            .hoverEvent(Component.text(hover, NamedTextColor.GRAY));
+    }
+}
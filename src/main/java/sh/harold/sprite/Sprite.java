@@ -1,11 +1,15 @@
 package sh.harold.sprite;
 
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 import sh.harold.sprite.atlas.AtlasCacheService;
-import sh.harold.sprite.atlas.SpriteAtlasCatalog;
 import sh.harold.sprite.atlas.SpriteAtlasService;
+import sh.harold.sprite.atlas.SpriteCatalogRegistry;
+import sh.harold.sprite.atlas.SpriteQueryService;
 import sh.harold.sprite.command.SpriteCommandRegistrar;
 import sh.harold.sprite.command.handler.RefreshAtlasCacheHandler;
+import sh.harold.sprite.command.handler.SpritePageCache;
+import sh.harold.sprite.command.handler.SpritePageDispatcher;
 import sh.harold.sprite.command.handler.SpriteViewCommandHandler;
 import sh.harold.sprite.config.SpriteConfig;
 import sh.harold.sprite.config.SpriteConfigLoader;
@@ -13,20 +17,35 @@ import sh.harold.sprite.config.SpriteConfigLoader;
 public final class Sprite extends JavaPlugin {
     private SpriteAtlasService atlasService;
     private SpriteCommandRegistrar commandRegistrar;
+    private SpritePageDispatcher pageDispatcher;
     private SpriteConfig spriteConfig;
 
     @Override
     public void onEnable() {
         spriteConfig = new SpriteConfigLoader(this).load();
-        var cacheService = new AtlasCacheService(getDataFolder().toPath(), getLogger());
-        var catalog = new SpriteAtlasCatalog(cacheService.getAtlasCacheDir(), getLogger());
-
         var serverVersion = getServer().getMinecraftVersion();
-        atlasService = new SpriteAtlasService(this, cacheService, catalog, serverVersion, spriteConfig);
+        var cacheService = new AtlasCacheService(getDataFolder().toPath(), serverVersion, getLogger());
+        var catalogs = new SpriteCatalogRegistry(cacheService, spriteConfig.additionalVersions(), getLogger());
+
+        atlasService = new SpriteAtlasService(this, cacheService, catalogs, spriteConfig);
         atlasService.bootstrapFromCache();
+        atlasService.startWatching();
+        getServer().getServicesManager().register(SpriteQueryService.class, new SpriteQueryService(catalogs), this,
+            ServicePriority.Normal);
 
         var refreshHandler = new RefreshAtlasCacheHandler(atlasService);
-        var viewHandler = new SpriteViewCommandHandler(catalog, spriteConfig.titleDisplayDuration());
+        var pageCache = new SpritePageCache(spriteConfig.pageCacheComponents());
+        pageDispatcher = new SpritePageDispatcher(this);
+        var viewHandler = new SpriteViewCommandHandler(catalogs, spriteConfig.titleDisplayDuration(), pageCache,
+            pageDispatcher);
+        for (String version : catalogs.versions()) {
+            catalogs.catalog(version).addListener((previous, current, diff) -> {
+                if (isEnabled()) {
+                    getServer().getScheduler().runTaskAsynchronously(this,
+                        () -> viewHandler.warmPages(version, previous, current, diff));
+                }
+            });
+        }
 
         commandRegistrar = new SpriteCommandRegistrar(this, refreshHandler, viewHandler);
         commandRegistrar.register();
@@ -36,6 +55,12 @@ public final class Sprite extends JavaPlugin {
 
     @Override
     public void onDisable() {
-        // No-op for now.
+        getServer().getServicesManager().unregisterAll(this);
+        if (atlasService != null) {
+            atlasService.shutdown();
+        }
+        if (pageDispatcher != null) {
+            pageDispatcher.close();
+        }
     }
 }
@@ -0,0 +1,141 @@
+package sh.harold.sprite.atlas;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Populates atlases from an exploded client jar or resource pack: a directory holding
+ * {@code assets/<namespace>/atlases} and {@code assets/<namespace>/textures}. The textures are hashed while the
+ * atlases are copied, so duplicates can be reported without a Mojang asset index.
+ */
+final class AssetDirectoryAtlasSource implements AtlasSource {
+    private static final String SOURCE_ID = "directory";
+
+    private final String pathTemplate;
+    private final AtlasCacheStore store;
+    private final Logger logger;
+
+    AssetDirectoryAtlasSource(String pathTemplate, AtlasCacheStore store, Logger logger) {
+        this.pathTemplate = Objects.requireNonNull(pathTemplate, "pathTemplate");
+        this.store = Objects.requireNonNull(store, "store");
+        this.logger = Objects.requireNonNull(logger, "logger");
+    }
+
+    @Override
+    public String describe() {
+        return "directory " + pathTemplate;
+    }
+
+    @Override
+    public AssetIndex populate(String serverVersion, boolean extractAtlases, boolean verify) throws IOException {
+        Path root = Path.of(pathTemplate.replace("{version}", serverVersion));
+        // Accept either the directory containing assets/ or the assets directory itself.
+        if (Files.isDirectory(root.resolve("assets"))) {
+            root = root.resolve("assets");
+        }
+        if (!Files.isDirectory(root)) {
+            logger.info("No asset directory at " + root + " for " + serverVersion + ".");
+            return null;
+        }
+        AssetIndex stored = store.readAssetIndex(serverVersion);
+        if (extractAtlases) {
+            AssetIndex hashes = populateFrom(root, serverVersion, verify || stored == null);
+            if (hashes != null) {
+                return hashes;
+            }
+        }
+        return stored == null ? AssetIndex.empty() : stored;
+    }
+
+    /**
+     * Copies the directory's atlases over the cached ones and hashes its textures, unless the cache is already
+     * current and {@code verify} is off.
+     *
+     * @return the texture hashes, or {@code null} when nothing was copied
+     */
+    private AssetIndex populateFrom(Path assetsRoot, String serverVersion, boolean verify) throws IOException {
+        List<Path> atlasFiles = new ArrayList<>();
+        Map<String, Path> textures = new LinkedHashMap<>();
+        MessageDigest digest = newDigest();
+        try (Stream<Path> stream = Files.walk(assetsRoot)) {
+            for (Path file : (Iterable<Path>) stream.sorted()::iterator) {
+                if (!Files.isRegularFile(file)) {
+                    continue;
+                }
+                String entryName = toEntryName(assetsRoot, file);
+                if (AtlasCacheStore.isAtlasEntry(entryName)) {
+                    atlasFiles.add(file);
+                    AtlasCacheStore.updateWithFileStamp(digest, entryName, file);
+                } else if (AtlasCacheStore.isTextureEntry(entryName)) {
+                    String texture = entryName.substring(AtlasCacheStore.ASSETS_PREFIX.length());
+                    textures.put(texture, file);
+                    digest.update((texture + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        if (atlasFiles.isEmpty()) {
+            logger.warning("Asset directory " + assetsRoot + " contains no atlas definitions.");
+        }
+
+        // The revision covers atlas stamps and the texture listing, so an untouched directory copies nothing.
+        String revision = HexFormat.of().formatHex(digest.digest());
+        if (!verify && store.isCurrent(serverVersion, SOURCE_ID, revision)) {
+            logger.info("Atlas cache already up to date with " + assetsRoot + "; skipping copy.");
+            return null;
+        }
+        store.clearAtlases();
+        for (Path atlasFile : atlasFiles) {
+            store.copyAtlas(toEntryName(assetsRoot, atlasFile), atlasFile);
+        }
+        AssetIndex hashes = hashTextures(textures);
+        int indexed = store.writeTextureIndex(new ArrayList<>(textures.keySet()));
+        store.markPopulated(serverVersion, SOURCE_ID, revision);
+        logger.info("Copied " + atlasFiles.size() + " atlas files and hashed " + indexed + " textures from "
+            + assetsRoot + ".");
+        return hashes;
+    }
+
+    private static AssetIndex hashTextures(Map<String, Path> textures) throws IOException {
+        Map<String, String> hashes = new ConcurrentHashMap<>();
+        try {
+            textures.entrySet().parallelStream().forEach(texture -> {
+                MessageDigest digest = newDigest();
+                try {
+                    digest.update(Files.readAllBytes(texture.getValue()));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Failed to hash " + texture.getValue(), ex);
+                }
+                hashes.put(texture.getKey(), HexFormat.of().formatHex(digest.digest()));
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return AssetIndex.fromHexHashes(hashes);
+    }
+
+    private static String toEntryName(Path assetsRoot, Path file) {
+        return AtlasCacheStore.ASSETS_PREFIX + assetsRoot.relativize(file).toString().replace('\\', '/');
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 digest unavailable", ex);
+        }
+    }
+}
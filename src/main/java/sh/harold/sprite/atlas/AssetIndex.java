@@ -0,0 +1,90 @@
+package sh.harold.sprite.atlas;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Texture entries retained from a Mojang asset index: asset paths in sorted order alongside their
+ * SHA-1 content hashes. Sounds, language files and other non-texture objects are never kept.
+ */
+public final class AssetIndex {
+    static final int HASH_LENGTH = 20;
+
+    private final String[] paths;
+    private final byte[] hashes;
+
+    AssetIndex(String[] paths, byte[] hashes) {
+        this.paths = Objects.requireNonNull(paths, "paths");
+        this.hashes = Objects.requireNonNull(hashes, "hashes");
+        if (hashes.length != paths.length * HASH_LENGTH) {
+            throw new IllegalArgumentException("Expected " + paths.length * HASH_LENGTH + " hash bytes, got " + hashes.length);
+        }
+    }
+
+    static AssetIndex empty() {
+        return new AssetIndex(new String[0], new byte[0]);
+    }
+
+    /**
+     * Builds an index from asset paths mapped to hex-encoded SHA-1 hashes. Entries with malformed
+     * hashes are dropped.
+     */
+    static AssetIndex fromHexHashes(Map<String, String> textures) {
+        String[] sorted = textures.keySet().toArray(String[]::new);
+        Arrays.sort(sorted);
+        HexFormat hex = HexFormat.of();
+        String[] paths = new String[sorted.length];
+        byte[] hashes = new byte[sorted.length * HASH_LENGTH];
+        int count = 0;
+        for (String path : sorted) {
+            String hash = textures.get(path);
+            if (hash == null || hash.length() != HASH_LENGTH * 2) {
+                continue;
+            }
+            try {
+                byte[] raw = hex.parseHex(hash);
+                System.arraycopy(raw, 0, hashes, count * HASH_LENGTH, HASH_LENGTH);
+            } catch (IllegalArgumentException ex) {
+                continue;
+            }
+            paths[count++] = path;
+        }
+        return new AssetIndex(Arrays.copyOf(paths, count), Arrays.copyOf(hashes, count * HASH_LENGTH));
+    }
+
+    public int size() {
+        return paths.length;
+    }
+
+    public List<String> paths() {
+        return Collections.unmodifiableList(Arrays.asList(paths));
+    }
+
+    public String path(int index) {
+        return paths[index];
+    }
+
+    public String hash(int index) {
+        return HexFormat.of().formatHex(hashes, index * HASH_LENGTH, (index + 1) * HASH_LENGTH);
+    }
+
+    public String hash(String path) {
+        int index = indexOf(path);
+        return index < 0 ? null : hash(index);
+    }
+
+    /**
+     * Returns the entry index of {@code path}, or a negative value when the index does not contain it.
+     */
+    int indexOf(String path) {
+        return Arrays.binarySearch(paths, path);
+    }
+
+    byte[] rawHashes() {
+        return hashes;
+    }
+}
@@ -0,0 +1,471 @@
+package sh.harold.sprite.atlas;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Owns the on-disk layout of {@code atlas-cache}: extracted atlas JSON, the texture index, the asset store
+ * and the metadata recording which source and revision the cache was populated from.
+ */
+final class AtlasCacheStore {
+    static final String ASSETS_PREFIX = "assets/";
+    static final String ATLAS_PATH_SEGMENT = "/atlases/";
+    private static final String ATLAS_DIRECTORY = "atlases";
+    static final String TEXTURE_PATH_SEGMENT = "/textures/";
+    static final String JSON_SUFFIX = ".json";
+    static final String PNG_SUFFIX = ".png";
+    private static final String ASSET_STORE_FILE = "asset-index.bin";
+    private static final String LEGACY_ASSET_INDEX_FILE = "asset-index.json";
+    private static final String TEXTURE_INDEX_FILE = "textures.index";
+    private static final String METADATA_FILE = "atlas-metadata.json";
+
+    private final Path root;
+    private final Logger logger;
+    private final Gson gson;
+    // What the last full fingerprint read: everything but the atlas files, then each atlas file's stamp by its
+    // root-relative path, so a batch of atlas edits restamps only those files. Guarded by this store.
+    private String sharedStamps;
+    private TreeMap<String, String> atlasStamps;
+
+    AtlasCacheStore(Path root, Logger logger) {
+        this.root = Objects.requireNonNull(root, "root");
+        this.logger = Objects.requireNonNull(logger, "logger");
+        this.gson = new GsonBuilder().setPrettyPrinting().create();
+    }
+
+    Path root() {
+        return root;
+    }
+
+    static boolean isAtlasEntry(String name) {
+        return name.startsWith(ASSETS_PREFIX) && name.contains(ATLAS_PATH_SEGMENT) && name.endsWith(JSON_SUFFIX);
+    }
+
+    static boolean isTextureEntry(String name) {
+        return name.startsWith(ASSETS_PREFIX) && name.contains(TEXTURE_PATH_SEGMENT) && name.endsWith(PNG_SUFFIX);
+    }
+
+    /**
+     * Returns whether a path relative to a cache root is an atlas definition, i.e.
+     * {@code <namespace>/atlases/...json}. Nested version caches under the root never match.
+     */
+    static boolean isCachedAtlasPath(String relativePath) {
+        int firstSlash = relativePath.indexOf('/');
+        return firstSlash > 0
+            && relativePath.startsWith(ATLAS_PATH_SEGMENT, firstSlash)
+            && relativePath.endsWith(JSON_SUFFIX);
+    }
+
+    /**
+     * Returns whether {@code relativePath} is one of the indexes every atlas expands against, so a change
+     * to it affects the whole catalog rather than a single atlas.
+     */
+    static boolean isSharedCatalogInput(String relativePath) {
+        return relativePath.equals(TEXTURE_INDEX_FILE) || relativePath.equals(ASSET_STORE_FILE);
+    }
+
+    /**
+     * Returns whether the cache was fully populated for {@code version} from {@code revision} of
+     * {@code source}, so the source can skip extracting it again.
+     */
+    boolean isCurrent(String version, String source, String revision) {
+        AtlasCacheMetadata metadata = readMetadata();
+        return metadata != null
+            && metadata.version().equals(version)
+            && metadata.source().equals(source)
+            && metadata.revision().equalsIgnoreCase(revision)
+            && Files.exists(root.resolve(TEXTURE_INDEX_FILE));
+    }
+
+    /**
+     * Returns whether the atlas files on disk came from {@code revision} of {@code source}, regardless of
+     * whether the texture index survived.
+     */
+    boolean hasExtracted(String version, String source, String revision) {
+        AtlasCacheMetadata metadata = readMetadata();
+        return metadata != null
+            && metadata.version().equals(version)
+            && metadata.source().equals(source)
+            && metadata.revision().equalsIgnoreCase(revision);
+    }
+
+    void markPopulated(String version, String source, String revision) throws IOException {
+        AtlasCacheMetadata metadata = new AtlasCacheMetadata(version, source, revision, System.currentTimeMillis());
+        Files.createDirectories(root);
+        Files.writeString(root.resolve(METADATA_FILE), gson.toJson(metadata.toJson()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deletes everything beneath each {@code <namespace>/atlases} directory, so a source repopulating the cache
+     * leaves no atlas behind that it no longer provides. The directories themselves stay, and stay watched.
+     */
+    void clearAtlases() throws IOException {
+        for (Path atlasDirectory : atlasDirectories()) {
+            try (Stream<Path> files = Files.walk(atlasDirectory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    if (!file.equals(atlasDirectory)) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        }
+    }
+
+    private List<Path> atlasDirectories() throws IOException {
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+        try (Stream<Path> namespaces = Files.list(root)) {
+            return namespaces.map(namespace -> namespace.resolve(ATLAS_DIRECTORY))
+                .filter(Files::isDirectory)
+                .toList();
+        }
+    }
+
+    /**
+     * Replaces the cached atlases with every atlas JSON from a client jar and indexes its textures in a single
+     * pass over the central directory.
+     */
+    JarExtraction extractFromJar(Path jarPath) throws IOException {
+        return extractFromJar(jarPath, false);
+    }
+
+    /**
+     * Like {@link #extractFromJar(Path)}, optionally hashing every texture while the jar is open so sources
+     * without a Mojang asset index can still report duplicate textures.
+     */
+    JarExtraction extractFromJar(Path jarPath, boolean hashTextures) throws IOException {
+        try (ZipFile zip = new ZipFile(jarPath.toFile())) {
+            List<ZipEntry> atlasEntries = new ArrayList<>();
+            List<ZipEntry> textureEntries = new ArrayList<>();
+            List<String> textures = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String name = entry.getName();
+                if (isAtlasEntry(name)) {
+                    atlasEntries.add(entry);
+                } else if (isTextureEntry(name)) {
+                    textureEntries.add(entry);
+                    textures.add(name.substring(ASSETS_PREFIX.length()));
+                }
+            }
+
+            int indexed = writeTextureIndex(textures);
+            clearAtlases();
+            extractAtlases(zip, atlasEntries);
+            AssetIndex hashes = hashTextures ? hashTextures(zip, textureEntries) : null;
+            return new JarExtraction(atlasEntries.size(), indexed, hashes);
+        }
+    }
+
+    private static AssetIndex hashTextures(ZipFile zip, List<ZipEntry> textureEntries) throws IOException {
+        Map<String, String> hashes = new ConcurrentHashMap<>();
+        try {
+            textureEntries.parallelStream().forEach(entry -> {
+                try (InputStream in = zip.getInputStream(entry)) {
+                    MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                    byte[] buffer = new byte[8192];
+                    for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                        digest.update(buffer, 0, read);
+                    }
+                    hashes.put(entry.getName().substring(ASSETS_PREFIX.length()), HexFormat.of().formatHex(digest.digest()));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Failed to hash " + entry.getName(), ex);
+                } catch (NoSuchAlgorithmException ex) {
+                    throw new IllegalStateException("SHA-1 digest unavailable", ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return AssetIndex.fromHexHashes(hashes);
+    }
+
+    private void extractAtlases(ZipFile zip, List<ZipEntry> atlasEntries) throws IOException {
+        // ZipFile serves concurrent readers from the central directory, so each atlas inflates independently.
+        try {
+            atlasEntries.parallelStream().forEach(entry -> extractEntry(zip, entry));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private void extractEntry(ZipFile zip, ZipEntry entry) {
+        Path destination = root.resolve(entry.getName().substring(ASSETS_PREFIX.length()));
+        try (InputStream in = zip.getInputStream(entry)) {
+            Files.createDirectories(destination.getParent());
+            Files.copy(in, destination, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to extract " + entry.getName(), ex);
+        }
+    }
+
+    /**
+     * Writes one atlas file addressed by its jar entry name ({@code assets/<namespace>/atlases/...}).
+     */
+    void writeAtlas(String entryName, byte[] contents) throws IOException {
+        Path destination = root.resolve(entryName.substring(ASSETS_PREFIX.length()));
+        Files.createDirectories(destination.getParent());
+        Files.write(destination, contents);
+    }
+
+    /**
+     * Copies one atlas file addressed by its entry name, keeping its timestamps so an unchanged source does
+     * not look modified to the catalog fingerprint.
+     */
+    void copyAtlas(String entryName, Path source) throws IOException {
+        Path destination = root.resolve(entryName.substring(ASSETS_PREFIX.length()));
+        Files.createDirectories(destination.getParent());
+        Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    int writeTextureIndex(List<String> textures) throws IOException {
+        textures.sort(String::compareTo);
+
+        Path indexPath = root.resolve(TEXTURE_INDEX_FILE);
+        Files.createDirectories(indexPath.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(indexPath, StandardCharsets.UTF_8)) {
+            for (String texture : textures) {
+                writer.write(texture);
+                writer.newLine();
+            }
+        }
+        return textures.size();
+    }
+
+    void ensureTextureIndex(Path jarPath) throws IOException {
+        if (Files.exists(root.resolve(TEXTURE_INDEX_FILE))) {
+            return;
+        }
+        List<String> textures = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(jarPath.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (isTextureEntry(name)) {
+                    textures.add(name.substring(ASSETS_PREFIX.length()));
+                }
+            }
+        }
+        int indexed = writeTextureIndex(textures);
+        logger.info("Generated texture index with " + indexed + " textures.");
+    }
+
+    /**
+     * Stores the asset index {@code version} was populated with, tagged with that version.
+     */
+    void writeAssetIndex(String version, AssetIndex assetIndex) throws IOException {
+        TextureStore.write(root.resolve(ASSET_STORE_FILE), version, assetIndex);
+        Files.deleteIfExists(root.resolve(LEGACY_ASSET_INDEX_FILE));
+    }
+
+    /**
+     * Reads the stored asset index for {@code version}. An index stored for another version, or one written
+     * before indexes were tagged, describes other textures, so it is replaced by an empty index.
+     *
+     * @return the index, or {@code null} when none is stored or it cannot be read
+     */
+    AssetIndex readAssetIndex(String version) {
+        TextureStore.Tagged stored = readTaggedAssetIndex();
+        if (stored == null) {
+            return null;
+        }
+        if (!version.equals(stored.minecraftVersion())) {
+            logger.fine(() -> "Ignoring asset index stored for " + stored.minecraftVersion() + " while loading " + version);
+            return AssetIndex.empty();
+        }
+        return stored.index();
+    }
+
+    private TextureStore.Tagged readTaggedAssetIndex() {
+        Path storePath = root.resolve(ASSET_STORE_FILE);
+        if (Files.exists(storePath)) {
+            try {
+                return TextureStore.read(storePath);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Failed to read cached asset store", ex);
+                return null;
+            }
+        }
+
+        Path legacyPath = root.resolve(LEGACY_ASSET_INDEX_FILE);
+        if (!Files.exists(legacyPath)) {
+            return null;
+        }
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(legacyPath, StandardCharsets.UTF_8))) {
+            AssetIndex legacy = MojangAtlasSource.readAssetIndex(reader);
+            return legacy == null ? null : new TextureStore.Tagged(null, legacy);
+        } catch (IOException | IllegalStateException ex) {
+            logger.log(Level.WARNING, "Failed to read cached asset index", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Fingerprints the cached inputs the catalog is built from: the populating source and revision, the
+     * asset store's size, modification time and stored checksum, and the size and modification time of the
+     * texture index and every atlas file. Only the {@code <namespace>/atlases} directories are walked, not the
+     * textures beside them. The stamps are kept for {@link #fingerprint(Collection)}.
+     *
+     * @return a hex digest, or {@code null} if the cache could not be inspected
+     */
+    synchronized String fingerprint() {
+        sharedStamps = null;
+        atlasStamps = null;
+        if (!Files.isDirectory(root)) {
+            return null;
+        }
+        try {
+            AtlasCacheMetadata metadata = readMetadata();
+            StringBuilder shared = new StringBuilder(metadata == null
+                ? "manual"
+                : metadata.version() + ":" + metadata.source() + ":" + metadata.revision());
+
+            Path storePath = root.resolve(ASSET_STORE_FILE);
+            if (Files.exists(storePath)) {
+                shared.append(fileStamp(ASSET_STORE_FILE, storePath))
+                    .append(Long.toHexString(TextureStore.storedChecksum(storePath)));
+            }
+            Path textureIndexPath = root.resolve(TEXTURE_INDEX_FILE);
+            if (Files.exists(textureIndexPath)) {
+                shared.append(fileStamp(TEXTURE_INDEX_FILE, textureIndexPath));
+            }
+
+            TreeMap<String, String> stamps = new TreeMap<>();
+            for (Path atlasDirectory : atlasDirectories()) {
+                try (Stream<Path> files = Files.walk(atlasDirectory)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        String relative = root.relativize(file).toString().replace('\\', '/');
+                        if (Files.isRegularFile(file) && isCachedAtlasPath(relative)) {
+                            stamps.put(relative, fileStamp(relative, file));
+                        }
+                    }
+                }
+            }
+            sharedStamps = shared.toString();
+            atlasStamps = stamps;
+            return digestStamps();
+        } catch (IOException ex) {
+            logger.log(Level.FINE, "Unable to fingerprint atlas cache", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Updates the last {@link #fingerprint()} for edits to the atlas files at {@code atlasPaths}, relative to
+     * the root, restamping only those files. Falls back to a full fingerprint when there is none to update.
+     */
+    synchronized String fingerprint(Collection<String> atlasPaths) {
+        if (atlasStamps == null) {
+            return fingerprint();
+        }
+        try {
+            for (String atlasPath : atlasPaths) {
+                Path file = root.resolve(atlasPath);
+                if (isCachedAtlasPath(atlasPath) && Files.isRegularFile(file)) {
+                    atlasStamps.put(atlasPath, fileStamp(atlasPath, file));
+                } else {
+                    atlasStamps.remove(atlasPath);
+                }
+            }
+        } catch (IOException ex) {
+            // Removed between the check and the stamp; a full walk settles what is there now.
+            return fingerprint();
+        }
+        return digestStamps();
+    }
+
+    private String digestStamps() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(sharedStamps.getBytes(StandardCharsets.UTF_8));
+            for (String stamp : atlasStamps.values()) {
+                digest.update(stamp.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 digest unavailable", ex);
+        }
+    }
+
+    static void updateWithFileStamp(MessageDigest digest, String name, Path file) throws IOException {
+        digest.update(fileStamp(name, file).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String fileStamp(String name, Path file) throws IOException {
+        return name + "|" + Files.size(file) + "|" + Files.getLastModifiedTime(file).toMillis() + "\n";
+    }
+
+    private AtlasCacheMetadata readMetadata() {
+        Path metadataPath = root.resolve(METADATA_FILE);
+        if (!Files.exists(metadataPath)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(metadataPath, StandardCharsets.UTF_8)) {
+            JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+            JsonElement source = json.get("source");
+            // Caches written before sources were pluggable only ever came from Mojang's client jar.
+            return new AtlasCacheMetadata(
+                json.get("version").getAsString(),
+                source == null ? MojangAtlasSource.SOURCE_ID : source.getAsString(),
+                (source == null ? json.get("jarSha1") : json.get("revision")).getAsString(),
+                json.get("extractedAt").getAsLong()
+            );
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Failed to read atlas metadata; cache will be re-extracted.", ex);
+            return null;
+        }
+    }
+
+    /**
+     * @param hashes the textures' content hashes, or {@code null} when they were not hashed
+     */
+    record JarExtraction(int atlases, int textures, AssetIndex hashes) {
+    }
+
+    private record AtlasCacheMetadata(String version, String source, String revision, long extractedAt) {
+        JsonObject toJson() {
+            JsonObject obj = new JsonObject();
+            obj.addProperty("version", version);
+            obj.addProperty("source", source);
+            obj.addProperty("revision", revision);
+            obj.addProperty("extractedAt", extractedAt);
+            return obj;
+        }
+    }
+}
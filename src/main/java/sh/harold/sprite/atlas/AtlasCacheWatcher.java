@@ -0,0 +1,188 @@
+package sh.harold.sprite.atlas;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Watches one atlas cache root for edits to atlas definitions. Only the root, its namespace directories
+ * and everything under {@code <namespace>/atlases/} are registered. Events are collected until the
+ * directory has been quiet for {@link #DEBOUNCE_MILLIS}, so an editor's save or a bulk copy reaches the
+ * listener as a single batch.
+ */
+final class AtlasCacheWatcher implements AutoCloseable {
+    static final long DEBOUNCE_MILLIS = 150;
+    private static final String ATLASES_DIR = "atlases";
+
+    private final Path root;
+    private final Listener listener;
+    private final Logger logger;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Thread thread;
+
+    private AtlasCacheWatcher(Path root, Listener listener, Logger logger) throws IOException {
+        this.root = Objects.requireNonNull(root, "root");
+        this.listener = Objects.requireNonNull(listener, "listener");
+        this.logger = Objects.requireNonNull(logger, "logger");
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::run, "sprite-atlas-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    static AtlasCacheWatcher start(Path root, Listener listener, Logger logger) throws IOException {
+        Files.createDirectories(root);
+        AtlasCacheWatcher watcher = new AtlasCacheWatcher(root, listener, logger);
+        try {
+            watcher.registerTree(root);
+        } catch (IOException ex) {
+            watcher.close();
+            throw ex;
+        }
+        watcher.thread.start();
+        return watcher;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<String> changedAtlases = new TreeSet<>();
+                boolean rescan = false;
+                while (key != null) {
+                    rescan |= drain(key, changedAtlases);
+                    key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                try {
+                    if (rescan) {
+                        listener.rescanRequired();
+                    } else if (!changedAtlases.isEmpty()) {
+                        listener.atlasesChanged(changedAtlases);
+                    }
+                } catch (RuntimeException ex) {
+                    logger.log(Level.WARNING, "Atlas cache change listener failed", ex);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ignored) {
+            // Closed on shutdown.
+        }
+    }
+
+    /**
+     * Collects the atlas paths touched by {@code key}'s events.
+     *
+     * @return whether the whole catalog needs rebuilding, because events were lost or a shared index changed
+     */
+    private boolean drain(WatchKey key, Set<String> changedAtlases) {
+        Path directory = directories.get(key);
+        boolean rescan = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                rescan = true;
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            String relative = relativize(child);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+                // Files copied in along with a new directory may land before it is registered.
+                try {
+                    registerTree(child);
+                    collectAtlases(child, changedAtlases);
+                } catch (IOException ex) {
+                    logger.log(Level.WARNING, "Failed to watch new atlas directory " + child, ex);
+                    rescan = true;
+                }
+            } else if (AtlasCacheStore.isCachedAtlasPath(relative)) {
+                changedAtlases.add(relative);
+            } else if (AtlasCacheStore.isSharedCatalogInput(relative)) {
+                rescan = true;
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+        return rescan;
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path relative = root.relativize(dir);
+                if (!isWatched(relative)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                // Top-level directories (namespaces, but also the jar and HTTP caches) only matter when an
+                // atlases directory appears in them, so downloads there do not wake the watcher.
+                WatchKey key = isTopLevel(relative)
+                    ? dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE)
+                    : dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void collectAtlases(Path start, Set<String> changedAtlases) throws IOException {
+        try (Stream<Path> files = Files.walk(start)) {
+            files.filter(Files::isRegularFile)
+                .map(this::relativize)
+                .filter(AtlasCacheStore::isCachedAtlasPath)
+                .forEach(changedAtlases::add);
+        }
+    }
+
+    // The root itself relativizes to a single empty name, so depth one covers it and the namespaces.
+    private static boolean isWatched(Path relative) {
+        return relative.getNameCount() <= 1 || relative.getName(1).toString().equals(ATLASES_DIR);
+    }
+
+    private static boolean isTopLevel(Path relative) {
+        return relative.getNameCount() == 1 && !relative.toString().isEmpty();
+    }
+
+    private String relativize(Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * Receives debounced batches of changes from the watcher thread.
+     */
+    interface Listener {
+        /**
+         * Called with the cache-relative paths of atlas definitions that were created, modified or deleted.
+         */
+        void atlasesChanged(Set<String> atlasPaths);
+
+        /**
+         * Called when events were lost or a shared index changed, so every atlas must be rebuilt.
+         */
+        void rescanRequired();
+    }
+}
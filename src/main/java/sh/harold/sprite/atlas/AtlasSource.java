@@ -0,0 +1,25 @@
+package sh.harold.sprite.atlas;
+
+import java.io.IOException;
+
+/**
+ * A place atlas definitions and the texture index can be populated from. {@link AtlasCacheService} asks
+ * the configured sources in priority order and stops at the first one that can serve the server version.
+ */
+interface AtlasSource {
+    /**
+     * Short human-readable description used in log messages.
+     */
+    String describe();
+
+    /**
+     * Populates the atlas cache for {@code serverVersion}.
+     *
+     * @param extractAtlases whether to write atlas files and the texture index, or only resolve the asset
+     *                       index because atlases are managed by hand
+     * @param verify whether to recheck the source's contents instead of trusting a current cache
+     * @return the asset index for the version, or {@code null} when this source cannot serve it
+     */
+    AssetIndex populate(String serverVersion, boolean extractAtlases, boolean verify)
+        throws IOException, InterruptedException;
+}
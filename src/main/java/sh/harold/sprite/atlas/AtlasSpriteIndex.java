@@ -0,0 +1,236 @@
+package sh.harold.sprite.atlas;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Every sprite of one atlas in case-insensitive order, as a read-only list. Sprites stored as keys are int
+ * references into the atlas's groups, kept in order alongside an open-addressing hash table over them, so
+ * {@link #contains(Object)} answers in constant expected time; paletted permutations take no entry and are
+ * checked against their sequences' inputs instead. No full order is kept: reads by position walk the stored
+ * sprites and the already sorted sequences side by side (see {@link SortedParts}). Texture uses address stored
+ * sprites by their position among the stored ones, {@link #stored(int)}.
+ */
+final class AtlasSpriteIndex extends AbstractList<String> implements RandomAccess {
+    static final AtlasSpriteIndex EMPTY = new AtlasSpriteIndex(List.of(), new int[1], new int[0], new int[1], List.of(),
+        new int[1]);
+    // Keys differing only in case keep a fixed order, so the full order does not depend on how it was merged.
+    private static final Comparator<String> ORDER = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    private final List<SpriteAtlasCatalog.SpriteGroup> groups;
+    private final int[] groupStarts;
+    private final int[] order;
+    private final int[] slots;
+    private final List<PalettedSprites> sequences;
+    private final int[] sequenceStarts;
+    private final List<List<String>> parts;
+
+    private AtlasSpriteIndex(List<SpriteAtlasCatalog.SpriteGroup> groups, int[] groupStarts, int[] order, int[] slots,
+                             List<PalettedSprites> sequences, int[] sequenceStarts) {
+        this.groups = groups;
+        this.groupStarts = groupStarts;
+        this.order = order;
+        this.slots = slots;
+        this.sequences = sequences;
+        this.sequenceStarts = sequenceStarts;
+        this.parts = new ArrayList<>(sequences.size() + 1);
+        parts.add(new AbstractList<>() {
+            @Override
+            public String get(int position) {
+                return stored(position);
+            }
+
+            @Override
+            public int size() {
+                return order.length;
+            }
+        });
+        for (PalettedSprites sequence : sequences) {
+            parts.add(inOrder(sequence));
+        }
+    }
+
+    /**
+     * Indexes the sprites of {@code groups}. References count stored sprites group by group in list order.
+     */
+    static AtlasSpriteIndex of(List<SpriteAtlasCatalog.SpriteGroup> groups) {
+        int[] groupStarts = new int[groups.size() + 1];
+        List<String> keys = new ArrayList<>();
+        List<PalettedSprites> sequences = new ArrayList<>();
+        for (int g = 0; g < groups.size(); g++) {
+            groupStarts[g] = keys.size();
+            keys.addAll(GroupSprites.plainPart(groups.get(g).sprites()));
+            sequences.addAll(GroupSprites.palettedParts(groups.get(g).sprites()));
+        }
+        groupStarts[groups.size()] = keys.size();
+        int[] sequenceStarts = new int[sequences.size() + 1];
+        for (int i = 0; i < sequences.size(); i++) {
+            sequenceStarts[i + 1] = sequenceStarts[i] + sequences.get(i).size();
+        }
+        if (keys.isEmpty() && sequenceStarts[sequences.size()] == 0) {
+            return EMPTY;
+        }
+
+        Integer[] sorted = new Integer[keys.size()];
+        Arrays.setAll(sorted, i -> i);
+        Arrays.sort(sorted, (a, b) -> ORDER.compare(keys.get(a), keys.get(b)));
+        int[] order = new int[sorted.length];
+        Arrays.setAll(order, i -> sorted[i]);
+
+        int[] slots = new int[Math.max(1, Integer.highestOneBit(keys.size()) << 2)];
+        int mask = slots.length - 1;
+        for (int index = 0; index < order.length; index++) {
+            int slot = spread(keys.get(order[index]).hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index + 1;
+        }
+        return new AtlasSpriteIndex(List.copyOf(groups), groupStarts, order, slots, List.copyOf(sequences),
+            sequenceStarts);
+    }
+
+    @Override
+    public String get(int index) {
+        Objects.checkIndex(index, size());
+        if (sequences.isEmpty()) {
+            return stored(index);
+        }
+        return SortedParts.slice(parts, ORDER, index, index + 1).getFirst();
+    }
+
+    @Override
+    public int size() {
+        return order.length + sequenceStarts[sequences.size()];
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof String key && (storedIndexOf(key) >= 0 || generates(key));
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof String key)) {
+            return -1;
+        }
+        int stored = storedIndexOf(key);
+        if (sequences.isEmpty() || (stored < 0 && !generates(key))) {
+            return stored;
+        }
+        return SortedParts.positionOf(parts, ORDER, key);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return SortedParts.iterator(parts, ORDER);
+    }
+
+    /**
+     * Returns the sprites from {@code fromIndex} to {@code toIndex} as an unmodifiable copy, walking the parts
+     * from there rather than reading each position on its own.
+     */
+    @Override
+    public List<String> subList(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size());
+        return SortedParts.slice(parts, ORDER, fromIndex, toIndex);
+    }
+
+    /**
+     * Returns how many of the atlas's sprites are stored as keys rather than generated.
+     */
+    int storedCount() {
+        return order.length;
+    }
+
+    /**
+     * Returns the stored sprite at {@code position} among the stored sprites, which are in the same order as
+     * the full list.
+     */
+    String stored(int position) {
+        Objects.checkIndex(position, order.length);
+        return keyAt(order[position]);
+    }
+
+    /**
+     * Returns the position of {@code key} among the stored sprites, or {@code -1} when it is not stored.
+     * Candidates are compared against the symbol table's bytes, so probing decodes no key.
+     */
+    int storedIndexOf(String key) {
+        int mask = slots.length - 1;
+        for (int slot = spread(key.hashCode()) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int index = slots[slot] - 1;
+            int ref = order[index];
+            int group = runOf(groupStarts, ref);
+            List<String> keys = GroupSprites.plainPart(groups.get(group).sprites());
+            if (SpriteSymbolTable.matches(keys, ref - groupStarts[group], key)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private boolean generates(String key) {
+        for (PalettedSprites sequence : sequences) {
+            if (sequence.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String keyAt(int ref) {
+        int group = runOf(groupStarts, ref);
+        return GroupSprites.plainPart(groups.get(group).sprites()).get(ref - groupStarts[group]);
+    }
+
+    // A sequence's keys are sorted as strings, which is this order too while every character folds to itself,
+    // as in the lower-case keys resource locations allow. Only other keys are sorted again, sequence by sequence.
+    private static List<String> inOrder(PalettedSprites sequence) {
+        if (foldsToItself(sequence.bases()) && foldsToItself(sequence.suffixes())) {
+            return sequence;
+        }
+        String[] keys = sequence.toArray(String[]::new);
+        Arrays.sort(keys, ORDER);
+        return List.of(keys);
+    }
+
+    private static boolean foldsToItself(List<String> inputs) {
+        for (String input : inputs) {
+            for (int i = 0; i < input.length(); i++) {
+                char c = input.charAt(i);
+                if (Character.toLowerCase(Character.toUpperCase(c)) != c) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int runOf(int[] starts, int value) {
+        int run = Arrays.binarySearch(starts, value);
+        if (run < 0) {
+            return -run - 2;
+        }
+        // Empty runs share a start with the run after them.
+        while (starts[run + 1] == value) {
+            run++;
+        }
+        return run;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
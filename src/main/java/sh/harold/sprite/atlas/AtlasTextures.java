@@ -0,0 +1,170 @@
+package sh.harold.sprite.atlas;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The textures one atlas is built from. Texture paths are front-coded in sorted order, and each texture lists
+ * the positions among the atlas's stored sprites ({@link AtlasSpriteIndex#stored(int)}) of the sprites that use
+ * it, along with the SHA-1 content hash the asset index recorded for it, when it had one. Paletted permutations
+ * are stored as complemented positions: they use the texture, but their pixels are generated from it rather
+ * than copied.
+ */
+public final class AtlasTextures {
+    static final AtlasTextures EMPTY = new AtlasTextures(SpriteSymbolTable.EMPTY, new int[1], new int[0], new int[0], new byte[0]);
+
+    private final SpriteSymbolTable paths;
+    private final int[] useStarts;
+    private final int[] uses;
+    private final int[] hashed;
+    private final byte[] hashes;
+
+    private AtlasTextures(SpriteSymbolTable paths, int[] useStarts, int[] uses, int[] hashed, byte[] hashes) {
+        this.paths = paths;
+        this.useStarts = useStarts;
+        this.uses = uses;
+        this.hashed = hashed;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Adopts arrays decoded from a snapshot, validating them against an atlas of {@code storedCount} stored sprites.
+     */
+    static AtlasTextures fromEncoded(SpriteSymbolTable paths, int[] useStarts, int[] uses, int[] hashed, byte[] hashes,
+                                     int storedCount) throws IOException {
+        boolean valid = useStarts.length == paths.size() + 1
+            && useStarts[0] == 0
+            && useStarts[paths.size()] == uses.length
+            && hashes.length == hashed.length * AssetIndex.HASH_LENGTH;
+        for (int t = 0; valid && t < paths.size(); t++) {
+            valid = useStarts[t] <= useStarts[t + 1];
+        }
+        for (int use : uses) {
+            valid &= position(use) < storedCount;
+        }
+        for (int i = 0; valid && i < hashed.length; i++) {
+            valid = hashed[i] < paths.size() && (i == 0 || hashed[i - 1] < hashed[i]);
+        }
+        if (!valid) {
+            throw new IOException("Atlas texture index is inconsistent");
+        }
+        return paths.size() == 0 ? EMPTY : new AtlasTextures(paths, useStarts, uses, hashed, hashes);
+    }
+
+    static boolean isPaletted(int use) {
+        return use < 0;
+    }
+
+    static int position(int use) {
+        return use < 0 ? ~use : use;
+    }
+
+    int size() {
+        return paths.size();
+    }
+
+    SpriteSymbolTable paths() {
+        return paths;
+    }
+
+    String path(int texture) {
+        return paths.key(texture);
+    }
+
+    /**
+     * Returns the id of {@code texturePath}, or {@code -1} when no sprite of the atlas uses it.
+     */
+    int find(String texturePath) {
+        return paths.id(texturePath);
+    }
+
+    int[] uses(int texture) {
+        return Arrays.copyOfRange(uses, useStarts[texture], useStarts[texture + 1]);
+    }
+
+    int hashedCount() {
+        return hashed.length;
+    }
+
+    int hashedTexture(int index) {
+        return hashed[index];
+    }
+
+    byte[] hash(int index) {
+        return Arrays.copyOfRange(hashes, index * AssetIndex.HASH_LENGTH, (index + 1) * AssetIndex.HASH_LENGTH);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AtlasTextures other
+            && Arrays.equals(paths.encoded(), other.paths.encoded())
+            && Arrays.equals(useStarts, other.useStarts)
+            && Arrays.equals(uses, other.uses)
+            && Arrays.equals(hashed, other.hashed)
+            && Arrays.equals(hashes, other.hashes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(paths.encoded()) + Arrays.hashCode(uses);
+    }
+
+    /**
+     * Collects texture uses while an atlas's sources are expanded, before its sprite order is known.
+     */
+    static final class Builder {
+        private final Map<String, Map<String, Boolean>> usesByTexture = new TreeMap<>();
+
+        void add(String texturePath, String spriteKey, boolean paletted) {
+            // A sprite copied from the texture by any source counts as a copy.
+            usesByTexture.computeIfAbsent(texturePath, key -> new LinkedHashMap<>())
+                .merge(spriteKey, paletted, Boolean::logicalAnd);
+        }
+
+        AtlasTextures build(AtlasSpriteIndex sprites, AssetIndex assetIndex) {
+            if (usesByTexture.isEmpty()) {
+                return EMPTY;
+            }
+            SpriteSymbolTable paths = SpriteSymbolTable.of(usesByTexture.keySet());
+            int[] useStarts = new int[usesByTexture.size() + 1];
+            int[] uses = new int[usesByTexture.values().stream().mapToInt(Map::size).sum()];
+            int[] hashed = new int[usesByTexture.size()];
+            byte[] hashes = new byte[usesByTexture.size() * AssetIndex.HASH_LENGTH];
+            byte[] assetHashes = assetIndex.rawHashes();
+            int useCount = 0;
+            int hashedCount = 0;
+            int texture = 0;
+            for (Map.Entry<String, Map<String, Boolean>> entry : usesByTexture.entrySet()) {
+                useStarts[texture] = useCount;
+                // Position and flag packed together so one primitive sort orders the texture's uses.
+                long[] packed = new long[entry.getValue().size()];
+                int count = 0;
+                for (Map.Entry<String, Boolean> use : entry.getValue().entrySet()) {
+                    int position = sprites.storedIndexOf(use.getKey());
+                    if (position >= 0) {
+                        packed[count++] = ((long) position << 1) | (use.getValue() ? 1 : 0);
+                    }
+                }
+                Arrays.sort(packed, 0, count);
+                for (int i = 0; i < count; i++) {
+                    int position = (int) (packed[i] >>> 1);
+                    uses[useCount++] = (packed[i] & 1) != 0 ? ~position : position;
+                }
+
+                int assetEntry = assetIndex.indexOf(entry.getKey());
+                if (assetEntry >= 0) {
+                    System.arraycopy(assetHashes, assetEntry * AssetIndex.HASH_LENGTH,
+                        hashes, hashedCount * AssetIndex.HASH_LENGTH, AssetIndex.HASH_LENGTH);
+                    hashed[hashedCount++] = texture;
+                }
+                texture++;
+            }
+            useStarts[texture] = useCount;
+            return new AtlasTextures(paths, useStarts, Arrays.copyOf(uses, useCount), Arrays.copyOf(hashed, hashedCount),
+                Arrays.copyOf(hashes, hashedCount * AssetIndex.HASH_LENGTH));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package sh.harold.sprite.atlas;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Shared primitives for sprite's binary cache files: unsigned varints, length-prefixed UTF-8 strings
+ * and front-coded string runs.
+ */
+final class BinaryIO {
+    private BinaryIO() {
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) throws IOException {
+        int length = readVarInt(buffer);
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes strings relative to their predecessor as {@code sharedPrefix:varint, suffixLength:varint,
+     * suffix:utf8}. Sorted input compresses best but any order round-trips.
+     */
+    static final class FrontCodedWriter {
+        private final DataOutput out;
+        private byte[] previous = new byte[0];
+
+        FrontCodedWriter(DataOutput out) {
+            this.out = out;
+        }
+
+        void write(String value) throws IOException {
+            byte[] current = value.getBytes(StandardCharsets.UTF_8);
+            int shared = Arrays.mismatch(previous, current);
+            if (shared < 0) {
+                shared = current.length;
+            }
+            writeVarInt(out, shared);
+            writeVarInt(out, current.length - shared);
+            out.write(current, shared, current.length - shared);
+            previous = current;
+        }
+    }
+
+    /**
+     * Decodes strings written by {@link FrontCodedWriter}.
+     */
+    static final class FrontCodedReader {
+        private final ByteBuffer buffer;
+        private byte[] current = new byte[256];
+        private int currentLength;
+
+        FrontCodedReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        String read() throws IOException {
+            int shared = readVarInt(buffer);
+            int suffixLength = readVarInt(buffer);
+            if (shared > currentLength || suffixLength > buffer.remaining()) {
+                throw new IOException("Corrupt front-coded string");
+            }
+            int length = shared + suffixLength;
+            if (length > current.length) {
+                current = Arrays.copyOf(current, Math.max(length, current.length * 2));
+            }
+            buffer.get(current, shared, suffixLength);
+            currentLength = length;
+            return new String(current, 0, currentLength, StandardCharsets.UTF_8);
+        }
+    }
+}
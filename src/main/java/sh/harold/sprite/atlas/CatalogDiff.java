@@ -0,0 +1,113 @@
+package sh.harold.sprite.atlas;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What changed between two published snapshots of a catalog. Atlases are compared as whole entries, which
+ * is cheap because unchanged atlases are shared between snapshots; sprites are only counted for atlases
+ * that were added, removed or changed.
+ *
+ * @param changedAtlases atlases present in both snapshots whose groups or textures differ
+ */
+public record CatalogDiff(
+    List<String> addedAtlases,
+    List<String> removedAtlases,
+    List<String> changedAtlases,
+    int addedSprites,
+    int removedSprites
+) {
+    public static CatalogDiff between(SpriteAtlasCatalog.CatalogSnapshot previous, SpriteAtlasCatalog.CatalogSnapshot current) {
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        int addedSprites = 0;
+        int removedSprites = 0;
+        for (SpriteAtlasCatalog.AtlasEntry atlas : current.atlases()) {
+            SpriteAtlasCatalog.AtlasEntry before = previous.atlasMap().get(atlas.atlasId());
+            if (before == null) {
+                added.add(atlas.atlasId());
+                addedSprites += atlas.spriteCount();
+            } else if (before != atlas && !before.equals(atlas)) {
+                changed.add(atlas.atlasId());
+                addedSprites += countMissing(atlas, before);
+                removedSprites += countMissing(before, atlas);
+            }
+        }
+        for (SpriteAtlasCatalog.AtlasEntry atlas : previous.atlases()) {
+            if (!current.atlasMap().containsKey(atlas.atlasId())) {
+                removed.add(atlas.atlasId());
+                removedSprites += atlas.spriteCount();
+            }
+        }
+        return new CatalogDiff(List.copyOf(added), List.copyOf(removed), List.copyOf(changed), addedSprites, removedSprites);
+    }
+
+    private static int countMissing(SpriteAtlasCatalog.AtlasEntry from, SpriteAtlasCatalog.AtlasEntry in) {
+        List<PalettedSprites> inSequences = new ArrayList<>();
+        for (SpriteAtlasCatalog.SpriteGroup group : in.groups()) {
+            inSequences.addAll(GroupSprites.palettedParts(group.sprites()));
+        }
+        Set<PalettedSprites> unchanged = new HashSet<>(inSequences);
+        int missing = 0;
+        // Sequences whose inputs are unchanged still generate every key, so only other sequences are counted.
+        for (SpriteAtlasCatalog.SpriteGroup group : from.groups()) {
+            for (String sprite : GroupSprites.plainPart(group.sprites())) {
+                missing += in.containsSprite(sprite) ? 0 : 1;
+            }
+            for (PalettedSprites sequence : GroupSprites.palettedParts(group.sprites())) {
+                if (!unchanged.contains(sequence)) {
+                    missing += countMissing(sequence, in, inSequences);
+                }
+            }
+        }
+        return missing;
+    }
+
+    // A sequence's keys are its bases times its suffixes. Those still present are either listed in the other atlas
+    // or generated there from a base and a suffix that one of its sequences also combines.
+    private static int countMissing(PalettedSprites sequence, SpriteAtlasCatalog.AtlasEntry in,
+                                    List<PalettedSprites> inSequences) {
+        int missing = sequence.size();
+        for (PalettedSprites other : inSequences) {
+            missing -= countCommon(sequence.bases(), other.bases())
+                * countCommon(sequence.suffixes(), other.suffixes());
+        }
+        for (SpriteAtlasCatalog.SpriteGroup group : in.groups()) {
+            for (String sprite : GroupSprites.plainPart(group.sprites())) {
+                missing -= sequence.contains(sprite) ? 1 : 0;
+            }
+        }
+        return missing;
+    }
+
+    private static int countCommon(List<String> sorted, List<String> otherSorted) {
+        int common = 0;
+        for (int i = 0, j = 0; i < sorted.size() && j < otherSorted.size(); ) {
+            int comparison = sorted.get(i).compareTo(otherSorted.get(j));
+            if (comparison == 0) {
+                common++;
+            }
+            if (comparison <= 0) {
+                i++;
+            }
+            if (comparison >= 0) {
+                j++;
+            }
+        }
+        return common;
+    }
+
+    public boolean isEmpty() {
+        return addedAtlases.isEmpty() && removedAtlases.isEmpty() && changedAtlases.isEmpty();
+    }
+
+    /**
+     * Returns whether anything cached for {@code atlasId} may be stale.
+     */
+    public boolean affects(String atlasId) {
+        return addedAtlases.contains(atlasId) || removedAtlases.contains(atlasId) || changedAtlases.contains(atlasId);
+    }
+}
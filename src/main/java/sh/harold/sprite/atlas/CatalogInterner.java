@@ -0,0 +1,168 @@
+package sh.harold.sprite.atlas;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canonicalizes catalog values across the catalogs of every loaded version. All of them take their sprite
+ * keys from one {@link SpriteSymbolTable} that only grows by keys no version had yet, so memory grows with
+ * the differences between versions rather than their number. Groups are then compared by their symbol ids
+ * and atlases by their canonical groups, so interning never decodes a key; atlases and groups that are
+ * identical between versions resolve to one shared instance. Entries are held weakly and disappear once no
+ * published snapshot references them.
+ */
+final class CatalogInterner {
+    private final Map<Object, PoolReference> pool = new HashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private SpriteSymbolTable symbols = SpriteSymbolTable.EMPTY;
+
+    /**
+     * Adds {@code keys} to the shared table and returns it, for groups to take their ids from.
+     */
+    synchronized SpriteSymbolTable symbolsFor(Collection<String> keys) {
+        symbols = symbols.with(keys);
+        return symbols;
+    }
+
+    /**
+     * Shares a table decoded from a snapshot file: it becomes the shared table when there is none yet, so its
+     * ids hold as they are, and otherwise its keys are added to the shared table, which is returned.
+     */
+    synchronized SpriteSymbolTable adopt(SpriteSymbolTable decoded) {
+        symbols = symbols.size() == 0 ? decoded : symbols.with(decoded.keys());
+        return symbols;
+    }
+
+    SpriteAtlasCatalog.CatalogSnapshot intern(SpriteAtlasCatalog.CatalogSnapshot snapshot) {
+        List<SpriteAtlasCatalog.AtlasEntry> atlases = new ArrayList<>(snapshot.atlases().size());
+        boolean replaced = false;
+        synchronized (pool) {
+            expungeCollected();
+            for (SpriteAtlasCatalog.AtlasEntry atlas : snapshot.atlases()) {
+                SpriteAtlasCatalog.AtlasEntry canonical = internAtlas(atlas);
+                replaced |= canonical != atlas;
+                atlases.add(canonical);
+            }
+        }
+        // Canonical atlases equal the ones they replace, so the snapshot's indexes still apply.
+        return replaced
+            ? SpriteAtlasCatalog.CatalogSnapshot.of(atlases, snapshot.searchIndex(), snapshot.reverseIndex())
+            : snapshot;
+    }
+
+    private SpriteAtlasCatalog.AtlasEntry internAtlas(SpriteAtlasCatalog.AtlasEntry atlas) {
+        List<SpriteAtlasCatalog.SpriteGroup> groups = new ArrayList<>(atlas.groups().size());
+        boolean sharedGroup = false;
+        for (SpriteAtlasCatalog.SpriteGroup group : atlas.groups()) {
+            SpriteAtlasCatalog.SpriteGroup canonical = canonical(GroupKey.of(group), group);
+            sharedGroup |= canonical != group;
+            groups.add(canonical);
+        }
+        AtlasKey key = new AtlasKey(atlas.atlasId(), atlas.namespace(), atlas.fileName(), groups, atlas.textures());
+        SpriteAtlasCatalog.AtlasEntry existing = lookup(key);
+        if (existing != null) {
+            return existing;
+        }
+        // Equal groups sort the same way, so the texture index's sprite positions still hold.
+        return canonical(key, !sharedGroup ? atlas : SpriteAtlasCatalog.AtlasEntry.of(atlas.atlasId(),
+            atlas.namespace(), atlas.fileName(), groups, sprites -> atlas.textures()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T lookup(Object key) {
+        PoolReference reference = pool.get(key);
+        return reference == null ? null : (T) reference.get();
+    }
+
+    private <T> T canonical(Object key, T value) {
+        T existing = lookup(key);
+        if (existing != null) {
+            return existing;
+        }
+        pool.put(key, new PoolReference(key, value, collected));
+        return value;
+    }
+
+    private void expungeCollected() {
+        for (Reference<?> reference = collected.poll(); reference != null; reference = collected.poll()) {
+            PoolReference pooled = (PoolReference) reference;
+            pool.remove(pooled.key, pooled);
+        }
+    }
+
+    /**
+     * Identifies a group by its plain sprites' symbol ids and its paletted sequences' inputs.
+     */
+    private record GroupKey(String id, List<String> plain, List<PalettedSprites> paletted, int hash) {
+        static GroupKey of(SpriteAtlasCatalog.SpriteGroup group) {
+            List<String> plain = GroupSprites.plainPart(group.sprites());
+            List<PalettedSprites> paletted = GroupSprites.palettedParts(group.sprites());
+            int hash = 31 * group.id().hashCode() + SpriteSymbolTable.idHash(plain);
+            for (PalettedSprites sequence : paletted) {
+                hash = 31 * hash + sequence.inputHash();
+            }
+            return new GroupKey(group.id(), plain, paletted, hash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof GroupKey other
+                && hash == other.hash
+                && id.equals(other.id)
+                && plain.equals(other.plain)
+                && paletted.equals(other.paletted);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Identifies an atlas by its identity, its texture index and its groups, which are already canonical and so
+     * compared by reference.
+     */
+    private record AtlasKey(String atlasId, String namespace, String fileName,
+                            List<SpriteAtlasCatalog.SpriteGroup> groups, AtlasTextures textures) {
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof AtlasKey other) || groups.size() != other.groups.size()) {
+                return false;
+            }
+            for (int i = 0; i < groups.size(); i++) {
+                if (groups.get(i) != other.groups.get(i)) {
+                    return false;
+                }
+            }
+            return atlasId.equals(other.atlasId)
+                && namespace.equals(other.namespace)
+                && fileName.equals(other.fileName)
+                && textures.equals(other.textures);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 31 * atlasId.hashCode() + textures.hashCode();
+            for (SpriteAtlasCatalog.SpriteGroup group : groups) {
+                hash = 31 * hash + System.identityHashCode(group);
+            }
+            return hash;
+        }
+    }
+
+    private static final class PoolReference extends WeakReference<Object> {
+        private final Object key;
+
+        private PoolReference(Object key, Object value, ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package sh.harold.sprite.atlas;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Serializes built {@link SpriteAtlasCatalog.CatalogSnapshot}s so the next start can map the file and
+ * serve the catalog without re-reading the asset index or any atlas JSON.
+ *
+ * <p>Layout: {@code magic:int, version:short, sourceKey:string}, the sprite symbol table as
+ * {@code keyCount:varint, byteLength:varint} and its front-coded bytes, then {@code atlasCount:varint} and
+ * per atlas {@code atlasId, namespace, fileName, groupCount}, and per group {@code id, keyCount}
+ * followed by its ascending symbol ids as varint deltas, then {@code sequenceCount} and per paletted sequence
+ * {@code baseCount} with each base and its texture, {@code suffixCount} with each suffix and its palette
+ * texture, and the palette key. Each atlas ends with its texture index: the paths as
+ * {@code textureCount:varint, byteLength:varint} and front-coded bytes, per texture {@code useCount} and each
+ * use as {@code position << 1 | paletted}, positions counting the atlas's stored sprites, then
+ * {@code hashedCount} and per hashed texture its id and 20-byte SHA-1, and finally its part of the search index
+ * as {@code byteLength:varint} and the bytes {@link SpriteSearchIndex#encodedPart(int)} wrote. The reverse
+ * index's duplicate sets follow the atlases the same way. A CRC-32 of the payload closes the file.</p>
+ */
+final class CatalogSnapshotCodec {
+    private static final int MAGIC = 0x53504353; // "SPCS"
+    private static final short FORMAT_VERSION = 6;
+    private static final int TRAILER_LENGTH = Long.BYTES;
+
+    private CatalogSnapshotCodec() {
+    }
+
+    static void write(Path path, SpriteAtlasCatalog.CatalogSnapshot snapshot, String sourceKey) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try {
+            writePayload(temp, snapshot, sourceKey, crc);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writePayload(Path temp, SpriteAtlasCatalog.CatalogSnapshot snapshot, String sourceKey, CRC32 crc)
+        throws IOException {
+        try (var fileOut = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(fileOut, crc));
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            BinaryIO.writeString(out, sourceKey);
+            // The shared table also holds other versions' keys, so ids are assigned against one of just these.
+            SpriteSymbolTable symbols = symbolsOf(snapshot);
+            BinaryIO.writeVarInt(out, symbols.size());
+            BinaryIO.writeVarInt(out, symbols.encoded().length);
+            out.write(symbols.encoded());
+            BinaryIO.writeVarInt(out, snapshot.atlases().size());
+            for (int a = 0; a < snapshot.atlases().size(); a++) {
+                SpriteAtlasCatalog.AtlasEntry atlas = snapshot.atlases().get(a);
+                BinaryIO.writeString(out, atlas.atlasId());
+                BinaryIO.writeString(out, atlas.namespace());
+                BinaryIO.writeString(out, atlas.fileName());
+                BinaryIO.writeVarInt(out, atlas.groups().size());
+                for (SpriteAtlasCatalog.SpriteGroup group : atlas.groups()) {
+                    BinaryIO.writeString(out, group.id());
+                    List<String> plain = GroupSprites.plainPart(group.sprites());
+                    BinaryIO.writeVarInt(out, plain.size());
+                    int previous = 0;
+                    for (String sprite : plain) {
+                        int id = symbols.id(sprite);
+                        BinaryIO.writeVarInt(out, id - previous);
+                        previous = id;
+                    }
+                    List<PalettedSprites> sequences = GroupSprites.palettedParts(group.sprites());
+                    BinaryIO.writeVarInt(out, sequences.size());
+                    for (PalettedSprites sequence : sequences) {
+                        writePaletted(out, sequence);
+                    }
+                }
+                writeTextures(out, atlas.textures());
+                writeSection(out, snapshot.searchIndex().encodedPart(a));
+            }
+            writeSection(out, snapshot.reverseIndex().encodedDuplicates());
+            out.flush();
+            fileOut.write(ByteBuffer.allocate(TRAILER_LENGTH).putLong(crc.getValue()).array());
+        }
+    }
+
+    /**
+     * Maps and decodes a snapshot file. This skips the asset index and atlas JSON, and the search and reverse
+     * index sections are only copied out, to be decoded when first used. The file's keys join the symbol table
+     * {@code interner} shares between versions.
+     *
+     * @return the snapshot, or {@code null} when it was written for a different source key or format
+     */
+    static SpriteAtlasCatalog.CatalogSnapshot read(Path path, String expectedSourceKey, CatalogInterner interner)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_LENGTH || size > Integer.MAX_VALUE) {
+                throw new IOException("Catalog snapshot " + path + " has an invalid size");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int payloadLength = (int) size - TRAILER_LENGTH;
+
+            ByteBuffer buffer = mapped.slice(0, payloadLength);
+            if (buffer.getInt() != MAGIC || buffer.getShort() != FORMAT_VERSION) {
+                return null;
+            }
+            if (!expectedSourceKey.equals(BinaryIO.readString(buffer))) {
+                return null;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(mapped.slice(0, payloadLength));
+            if (crc.getValue() != mapped.getLong(payloadLength)) {
+                throw new IOException("Catalog snapshot " + path + " failed checksum validation");
+            }
+
+            int symbolCount = BinaryIO.readVarInt(buffer);
+            int symbolBytes = BinaryIO.readVarInt(buffer);
+            if (symbolBytes > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            byte[] encodedSymbols = new byte[symbolBytes];
+            buffer.get(encodedSymbols);
+            SpriteSymbolTable stored = SpriteSymbolTable.fromEncoded(symbolCount, encodedSymbols);
+            SpriteSymbolTable symbols = interner.adopt(stored);
+            int[] sharedIds = symbols == stored ? null : sharedIds(stored, symbols);
+
+            int atlasCount = BinaryIO.readVarInt(buffer);
+            List<SpriteAtlasCatalog.AtlasEntry> atlases = new ArrayList<>(atlasCount);
+            List<byte[]> searchParts = new ArrayList<>(atlasCount);
+            for (int i = 0; i < atlasCount; i++) {
+                String atlasId = BinaryIO.readString(buffer);
+                if (i > 0 && atlases.get(i - 1).atlasId().compareTo(atlasId) >= 0) {
+                    throw new IOException("Catalog snapshot " + path + " lists atlases out of order");
+                }
+                String namespace = BinaryIO.readString(buffer);
+                String fileName = BinaryIO.readString(buffer);
+                int groupCount = BinaryIO.readVarInt(buffer);
+                List<SpriteAtlasCatalog.SpriteGroup> groups = new ArrayList<>(groupCount);
+                int storedCount = 0;
+                for (int g = 0; g < groupCount; g++) {
+                    String groupId = BinaryIO.readString(buffer);
+                    int keyCount = BinaryIO.readVarInt(buffer);
+                    int[] ids = new int[keyCount];
+                    int previous = 0;
+                    for (int s = 0; s < keyCount; s++) {
+                        previous += BinaryIO.readVarInt(buffer);
+                        if (previous >= symbolCount || (s > 0 && previous <= ids[s - 1])) {
+                            throw new IOException("Catalog snapshot " + path + " has an invalid sprite id");
+                        }
+                        ids[s] = previous;
+                    }
+                    if (sharedIds != null) {
+                        for (int s = 0; s < keyCount; s++) {
+                            ids[s] = sharedIds[ids[s]];
+                        }
+                    }
+                    int sequenceCount = BinaryIO.readVarInt(buffer);
+                    List<PalettedSprites> sequences = new ArrayList<>(Math.min(sequenceCount, buffer.remaining()));
+                    for (int p = 0; p < sequenceCount; p++) {
+                        sequences.add(readPaletted(buffer));
+                    }
+                    List<String> sprites = GroupSprites.of(symbols.slice(ids), sequences);
+                    groups.add(new SpriteAtlasCatalog.SpriteGroup(groupId, sprites));
+                    storedCount += keyCount;
+                }
+                AtlasTextures textures = readTextures(buffer, storedCount);
+                atlases.add(SpriteAtlasCatalog.AtlasEntry.of(atlasId, namespace, fileName, groups,
+                    sprites -> textures));
+                searchParts.add(readSection(buffer));
+            }
+            byte[] duplicates = readSection(buffer);
+            return SpriteAtlasCatalog.CatalogSnapshot.of(atlases, SpriteSearchIndex.fromEncoded(atlases, searchParts),
+                SpriteReverseIndex.fromEncoded(atlases, duplicates));
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Catalog snapshot " + path + " is truncated", ex);
+        }
+    }
+
+    // Maps the file's ids, which rank its keys in sorted order, to their ids in the shared table.
+    private static int[] sharedIds(SpriteSymbolTable stored, SpriteSymbolTable shared) {
+        int[] ids = new int[stored.size()];
+        int id = 0;
+        for (String key : stored.keys()) {
+            ids[id++] = shared.id(key);
+        }
+        return ids;
+    }
+
+    private static void writeSection(DataOutputStream out, byte[] section) throws IOException {
+        BinaryIO.writeVarInt(out, section.length);
+        out.write(section);
+    }
+
+    private static byte[] readSection(ByteBuffer buffer) throws IOException {
+        int length = BinaryIO.readVarInt(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] section = new byte[length];
+        buffer.get(section);
+        return section;
+    }
+
+    private static void writePaletted(DataOutputStream out, PalettedSprites sequence) throws IOException {
+        BinaryIO.writeVarInt(out, sequence.bases().size());
+        for (int i = 0; i < sequence.bases().size(); i++) {
+            BinaryIO.writeString(out, sequence.bases().get(i));
+            BinaryIO.writeString(out, sequence.baseTextures().get(i));
+        }
+        BinaryIO.writeVarInt(out, sequence.suffixes().size());
+        for (int i = 0; i < sequence.suffixes().size(); i++) {
+            BinaryIO.writeString(out, sequence.suffixes().get(i));
+            BinaryIO.writeString(out, sequence.paletteTextures().get(i));
+        }
+        BinaryIO.writeString(out, sequence.paletteKey());
+    }
+
+    private static PalettedSprites readPaletted(ByteBuffer buffer) throws IOException {
+        String[][] bases = readPairs(buffer);
+        String[][] suffixes = readPairs(buffer);
+        String paletteKey = BinaryIO.readString(buffer);
+        try {
+            return PalettedSprites.of(bases[0], bases[1], suffixes[0], suffixes[1], paletteKey);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Catalog snapshot has an invalid paletted sequence", ex);
+        }
+    }
+
+    private static String[][] readPairs(ByteBuffer buffer) throws IOException {
+        int count = BinaryIO.readVarInt(buffer);
+        if (count > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String[][] pairs = new String[2][count];
+        for (int i = 0; i < count; i++) {
+            pairs[0][i] = BinaryIO.readString(buffer);
+            pairs[1][i] = BinaryIO.readString(buffer);
+        }
+        return pairs;
+    }
+
+    private static void writeTextures(DataOutputStream out, AtlasTextures textures) throws IOException {
+        BinaryIO.writeVarInt(out, textures.size());
+        BinaryIO.writeVarInt(out, textures.paths().encoded().length);
+        out.write(textures.paths().encoded());
+        for (int texture = 0; texture < textures.size(); texture++) {
+            int[] uses = textures.uses(texture);
+            BinaryIO.writeVarInt(out, uses.length);
+            for (int use : uses) {
+                BinaryIO.writeVarInt(out, AtlasTextures.position(use) << 1 | (AtlasTextures.isPaletted(use) ? 1 : 0));
+            }
+        }
+        BinaryIO.writeVarInt(out, textures.hashedCount());
+        for (int i = 0; i < textures.hashedCount(); i++) {
+            BinaryIO.writeVarInt(out, textures.hashedTexture(i));
+            out.write(textures.hash(i));
+        }
+    }
+
+    private static AtlasTextures readTextures(ByteBuffer buffer, int storedCount) throws IOException {
+        int textureCount = BinaryIO.readVarInt(buffer);
+        int pathBytes = BinaryIO.readVarInt(buffer);
+        if (pathBytes > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] encodedPaths = new byte[pathBytes];
+        buffer.get(encodedPaths);
+        SpriteSymbolTable paths = SpriteSymbolTable.fromEncoded(textureCount, encodedPaths);
+
+        int[] useStarts = new int[textureCount + 1];
+        int[] uses = new int[textureCount];
+        int useCount = 0;
+        for (int texture = 0; texture < textureCount; texture++) {
+            useStarts[texture] = useCount;
+            int count = BinaryIO.readVarInt(buffer);
+            if (count > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            if (useCount + count > uses.length) {
+                uses = Arrays.copyOf(uses, Math.max(useCount + count, uses.length * 2));
+            }
+            for (int i = 0; i < count; i++) {
+                int packed = BinaryIO.readVarInt(buffer);
+                uses[useCount++] = (packed & 1) != 0 ? ~(packed >>> 1) : packed >>> 1;
+            }
+        }
+        useStarts[textureCount] = useCount;
+
+        int hashedCount = BinaryIO.readVarInt(buffer);
+        if ((long) hashedCount * AssetIndex.HASH_LENGTH > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        int[] hashed = new int[hashedCount];
+        byte[] hashes = new byte[hashedCount * AssetIndex.HASH_LENGTH];
+        for (int i = 0; i < hashedCount; i++) {
+            hashed[i] = BinaryIO.readVarInt(buffer);
+            buffer.get(hashes, i * AssetIndex.HASH_LENGTH, AssetIndex.HASH_LENGTH);
+        }
+        return AtlasTextures.fromEncoded(paths, useStarts, Arrays.copyOf(uses, useCount), hashed, hashes, storedCount);
+    }
+
+    private static SpriteSymbolTable symbolsOf(SpriteAtlasCatalog.CatalogSnapshot snapshot) {
+        List<String> keys = new ArrayList<>(snapshot.totalSprites());
+        for (SpriteAtlasCatalog.AtlasEntry atlas : snapshot.atlases()) {
+            for (SpriteAtlasCatalog.SpriteGroup group : atlas.groups()) {
+                keys.addAll(GroupSprites.plainPart(group.sprites()));
+            }
+        }
+        return SpriteSymbolTable.of(keys);
+    }
+}
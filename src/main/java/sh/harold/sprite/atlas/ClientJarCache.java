@@ -0,0 +1,219 @@
+package sh.harold.sprite.atlas;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import sh.harold.sprite.config.JarCachePolicy;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store for Mojang client jars. Jars are named by their SHA-1 so versions that share
+ * a build share a file, and a small {@code index.json} maps versions to hashes, tracks when each jar
+ * was last used for least-recently-used eviction, and remembers which files have already been verified.
+ */
+final class ClientJarCache {
+    private static final String INDEX_FILE = "index.json";
+    private static final String JAR_SUFFIX = ".jar";
+
+    private final Path cacheDir;
+    private final Logger logger;
+    private final Gson gson;
+
+    ClientJarCache(Path cacheDir, Logger logger) {
+        this.cacheDir = Objects.requireNonNull(cacheDir, "cacheDir");
+        this.logger = Objects.requireNonNull(logger, "logger");
+        this.gson = new GsonBuilder().setPrettyPrinting().create();
+    }
+
+    /**
+     * Returns where the jar with {@code sha1} lives. A jar cached under its version name by older builds
+     * is moved into place so it can be verified and reused instead of downloaded again.
+     */
+    Path resolve(String version, String sha1) throws IOException {
+        Files.createDirectories(cacheDir);
+        Path jarPath = jarPath(sha1);
+        Path legacyPath = cacheDir.resolve(version + JAR_SUFFIX);
+        if (Files.notExists(jarPath) && Files.exists(legacyPath)) {
+            Files.move(legacyPath, jarPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return jarPath;
+    }
+
+    /**
+     * Records that {@code version} resolved to the jar with {@code sha1}, then evicts least recently used
+     * jars until the cache fits {@code policy}. The jar just used is never evicted.
+     */
+    void markUsed(String version, String sha1, JarCachePolicy policy) throws IOException {
+        Index index = readIndex();
+        String hash = sha1.toLowerCase(Locale.ROOT);
+        index.versions().put(version, hash);
+        index.lastUsed().put(hash, System.currentTimeMillis());
+        evict(index, hash, policy);
+        writeIndex(index);
+    }
+
+    /**
+     * Returns whether {@code jarPath} was verified against {@code sha1} and has not been replaced or
+     * modified since, judged by its size, modification time and file key.
+     */
+    boolean isVerified(Path jarPath, String sha1) throws IOException {
+        FileStamp recorded = readIndex().verified().get(sha1.toLowerCase(Locale.ROOT));
+        return recorded != null && recorded.equals(FileStamp.of(jarPath));
+    }
+
+    /**
+     * Remembers that {@code jarPath} hashed to {@code sha1} so later starts can skip rehashing it.
+     */
+    void recordVerified(Path jarPath, String sha1) throws IOException {
+        Index index = readIndex();
+        index.verified().put(sha1.toLowerCase(Locale.ROOT), FileStamp.of(jarPath));
+        writeIndex(index);
+    }
+
+    /**
+     * Deletes the jar with {@code sha1} once everything needed from it has been extracted. The version
+     * mapping is kept so the next refresh knows which hash to expect.
+     */
+    void discard(String sha1) throws IOException {
+        String hash = sha1.toLowerCase(Locale.ROOT);
+        if (Files.deleteIfExists(jarPath(hash))) {
+            Index index = readIndex();
+            index.lastUsed().remove(hash);
+            index.verified().remove(hash);
+            writeIndex(index);
+            logger.info("Removed client jar " + hash + " after extraction.");
+        }
+    }
+
+    private void evict(Index index, String keepHash, JarCachePolicy policy) throws IOException {
+        List<CachedJar> jars = new ArrayList<>();
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(JAR_SUFFIX) || !Files.isRegularFile(file)) {
+                    continue;
+                }
+                String hash = name.substring(0, name.length() - JAR_SUFFIX.length());
+                // Untracked files (legacy version-named jars) fall back to their modification time.
+                long lastUsed = index.lastUsed().getOrDefault(hash, Files.getLastModifiedTime(file).toMillis());
+                jars.add(new CachedJar(hash, file, Files.size(file), lastUsed));
+            }
+        }
+        jars.sort(Comparator.comparingLong(CachedJar::lastUsed));
+
+        long totalBytes = jars.stream().mapToLong(CachedJar::size).sum();
+        int count = jars.size();
+        for (CachedJar jar : jars) {
+            boolean overBytes = policy.maxBytes() > 0 && totalBytes > policy.maxBytes();
+            boolean overCount = policy.maxJars() > 0 && count > policy.maxJars();
+            if (!overBytes && !overCount) {
+                break;
+            }
+            if (jar.hash().equals(keepHash)) {
+                continue;
+            }
+            Files.deleteIfExists(jar.path());
+            index.lastUsed().remove(jar.hash());
+            index.verified().remove(jar.hash());
+            totalBytes -= jar.size();
+            count--;
+            logger.info("Evicted cached client jar " + jar.path().getFileName() + " (" + (jar.size() / (1024 * 1024)) + " MB).");
+        }
+    }
+
+    private Path jarPath(String sha1) {
+        return cacheDir.resolve(sha1.toLowerCase(Locale.ROOT) + JAR_SUFFIX);
+    }
+
+    private Index readIndex() {
+        Path indexPath = cacheDir.resolve(INDEX_FILE);
+        Index index = new Index(new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>());
+        if (!Files.exists(indexPath)) {
+            return index;
+        }
+        try (Reader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+            JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+            for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject("versions").entrySet()) {
+                index.versions().put(entry.getKey(), entry.getValue().getAsString());
+            }
+            for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject("lastUsed").entrySet()) {
+                index.lastUsed().put(entry.getKey(), entry.getValue().getAsLong());
+            }
+            JsonObject verified = json.getAsJsonObject("verified");
+            if (verified != null) {
+                for (Map.Entry<String, JsonElement> entry : verified.entrySet()) {
+                    index.verified().put(entry.getKey(), FileStamp.fromJson(entry.getValue().getAsJsonObject()));
+                }
+            }
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Failed to read client jar cache index; rebuilding it.", ex);
+        }
+        return index;
+    }
+
+    private void writeIndex(Index index) throws IOException {
+        JsonObject versions = new JsonObject();
+        index.versions().forEach(versions::addProperty);
+        JsonObject lastUsed = new JsonObject();
+        index.lastUsed().forEach(lastUsed::addProperty);
+        JsonObject verified = new JsonObject();
+        index.verified().forEach((hash, stamp) -> verified.add(hash, stamp.toJson()));
+        JsonObject json = new JsonObject();
+        json.add("versions", versions);
+        json.add("lastUsed", lastUsed);
+        json.add("verified", verified);
+
+        Path indexPath = cacheDir.resolve(INDEX_FILE);
+        Path temp = indexPath.resolveSibling(INDEX_FILE + ".tmp");
+        Files.writeString(temp, gson.toJson(json), StandardCharsets.UTF_8);
+        Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private record Index(Map<String, String> versions, Map<String, Long> lastUsed, Map<String, FileStamp> verified) {
+    }
+
+    private record FileStamp(long size, long modified, String fileKey) {
+        static FileStamp of(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            Object fileKey = attributes.fileKey();
+            return new FileStamp(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                fileKey == null ? null : fileKey.toString());
+        }
+
+        static FileStamp fromJson(JsonObject json) {
+            JsonElement fileKey = json.get("fileKey");
+            return new FileStamp(json.get("size").getAsLong(), json.get("modified").getAsLong(),
+                fileKey == null || fileKey.isJsonNull() ? null : fileKey.getAsString());
+        }
+
+        JsonObject toJson() {
+            JsonObject obj = new JsonObject();
+            obj.addProperty("size", size);
+            obj.addProperty("modified", modified);
+            obj.addProperty("fileKey", fileKey);
+            return obj;
+        }
+    }
+
+    private record CachedJar(String hash, Path path, long size, long lastUsed) {
+    }
+}
@@ -0,0 +1,135 @@
+package sh.harold.sprite.atlas;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * The sorted union of a group's plainly listed sprites and its {@link PalettedSprites} sequences, which never
+ * share a key. No merged order is kept: reads by position walk the sorted parts side by side from where the
+ * position falls (see {@link SortedParts}).
+ */
+final class GroupSprites extends AbstractList<String> implements RandomAccess {
+    private final List<String> plain;
+    private final List<PalettedSprites> paletted;
+    private final List<List<String>> parts;
+    private final int size;
+    private int hash;
+
+    private GroupSprites(List<String> plain, List<PalettedSprites> paletted) {
+        this.plain = plain;
+        this.paletted = paletted;
+        this.parts = new ArrayList<>(paletted.size() + 1);
+        parts.add(plain);
+        parts.addAll(paletted);
+        int size = 0;
+        for (List<String> part : parts) {
+            size += part.size();
+        }
+        this.size = size;
+    }
+
+    /**
+     * Combines a group's parts, returning the only non-empty part itself when there is just one.
+     */
+    static List<String> of(List<String> plain, List<PalettedSprites> paletted) {
+        Objects.requireNonNull(plain, "plain");
+        if (paletted.isEmpty()) {
+            return plain;
+        }
+        if (plain.isEmpty() && paletted.size() == 1) {
+            return paletted.getFirst();
+        }
+        return new GroupSprites(plain, List.copyOf(paletted));
+    }
+
+    /**
+     * Returns the sprites of a group's list that are stored as keys rather than generated.
+     */
+    static List<String> plainPart(List<String> sprites) {
+        return switch (sprites) {
+            case GroupSprites group -> group.plain;
+            case PalettedSprites ignored -> List.of();
+            default -> sprites;
+        };
+    }
+
+    static List<PalettedSprites> palettedParts(List<String> sprites) {
+        return switch (sprites) {
+            case GroupSprites group -> group.paletted;
+            case PalettedSprites sequence -> List.of(sequence);
+            default -> List.of();
+        };
+    }
+
+    @Override
+    public String get(int index) {
+        Objects.checkIndex(index, size());
+        return SortedParts.slice(parts, Comparator.naturalOrder(), index, index + 1).getFirst();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        for (List<String> part : parts) {
+            if (part.contains(o)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return contains(o) ? SortedParts.positionOf(parts, Comparator.naturalOrder(), (String) o) : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return SortedParts.iterator(parts, Comparator.naturalOrder());
+    }
+
+    /**
+     * Returns the keys from {@code fromIndex} to {@code toIndex} as an unmodifiable copy, walking the parts
+     * from there rather than reading each position on its own.
+     */
+    @Override
+    public List<String> subList(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size());
+        return SortedParts.slice(parts, Comparator.naturalOrder(), fromIndex, toIndex);
+    }
+
+    /**
+     * Compares the parts, so a group's sprites only equal another group's built from the same parts.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof GroupSprites other && plain.equals(other.plain) && paletted.equals(other.paletted);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = plain.hashCode();
+            for (PalettedSprites sequence : paletted) {
+                h = 31 * h + sequence.inputHash();
+            }
+            hash = h;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,57 @@
+package sh.harold.sprite.atlas;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Populates atlases from a client jar already on local or shared storage, e.g. a launcher's
+ * {@code versions/<version>/<version>.jar}. No network access is needed.
+ */
+final class LocalJarAtlasSource implements AtlasSource {
+    private static final String SOURCE_ID = "local-jar";
+
+    private final String pathTemplate;
+    private final AtlasCacheStore store;
+    private final Logger logger;
+
+    LocalJarAtlasSource(String pathTemplate, AtlasCacheStore store, Logger logger) {
+        this.pathTemplate = Objects.requireNonNull(pathTemplate, "pathTemplate");
+        this.store = Objects.requireNonNull(store, "store");
+        this.logger = Objects.requireNonNull(logger, "logger");
+    }
+
+    @Override
+    public String describe() {
+        return "local jar " + pathTemplate;
+    }
+
+    @Override
+    public AssetIndex populate(String serverVersion, boolean extractAtlases, boolean verify) throws IOException {
+        Path jarPath = Path.of(pathTemplate.replace("{version}", serverVersion));
+        if (!Files.isRegularFile(jarPath)) {
+            logger.info("No client jar at " + jarPath + " for " + serverVersion + ".");
+            return null;
+        }
+        AssetIndex stored = store.readAssetIndex(serverVersion);
+        if (extractAtlases) {
+            // Shared volumes rarely change in place, so size and modification time stand in for a full hash.
+            BasicFileAttributes attributes = Files.readAttributes(jarPath, BasicFileAttributes.class);
+            String revision = jarPath.toAbsolutePath() + "|" + attributes.size() + "|" + attributes.lastModifiedTime().toMillis();
+            if (!verify && stored != null && store.isCurrent(serverVersion, SOURCE_ID, revision)) {
+                logger.info("Atlas cache already up to date with " + jarPath + "; skipping extraction.");
+            } else {
+                // There is no Mojang asset index to take hashes from, so the jar's own textures are hashed.
+                AtlasCacheStore.JarExtraction extraction = store.extractFromJar(jarPath, true);
+                store.markPopulated(serverVersion, SOURCE_ID, revision);
+                logger.info("Extracted " + extraction.atlases() + " atlas files and hashed " + extraction.textures()
+                    + " textures from " + jarPath + ".");
+                return extraction.hashes();
+            }
+        }
+        return stored == null ? AssetIndex.empty() : stored;
+    }
+}
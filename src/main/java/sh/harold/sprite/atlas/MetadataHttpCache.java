@@ -0,0 +1,174 @@
+package sh.harold.sprite.atlas;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Persistent HTTP cache for Mojang metadata documents. Mutable documents are revalidated with
+ * {@code If-None-Match}/{@code If-Modified-Since}; immutable, content-addressed documents are served
+ * from disk without touching the network once cached.
+ */
+final class MetadataHttpCache {
+    private static final String USER_AGENT = "sprite-plugin/atlas-cache";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String VALIDATORS_SUFFIX = ".meta.json";
+
+    private final HttpClient httpClient;
+    private final Path cacheDir;
+    private final Logger logger;
+
+    MetadataHttpCache(HttpClient httpClient, Path cacheDir, Logger logger) {
+        this.httpClient = Objects.requireNonNull(httpClient, "httpClient");
+        this.cacheDir = Objects.requireNonNull(cacheDir, "cacheDir");
+        this.logger = Objects.requireNonNull(logger, "logger");
+    }
+
+    /**
+     * Opens the (decoded) body of {@code uri}, going to the network only when the cached copy is missing
+     * or, for mutable documents, when the server reports it changed.
+     *
+     * @param immutable whether the document at this URL never changes, e.g. hash-addressed package URLs
+     */
+    InputStream open(URI uri, boolean immutable) throws IOException, InterruptedException {
+        String key = cacheKey(uri);
+        Path body = cacheDir.resolve(key + BODY_SUFFIX);
+        Path validatorsPath = cacheDir.resolve(key + VALIDATORS_SUFFIX);
+        Validators cached = Files.exists(body) ? readValidators(validatorsPath, uri) : null;
+        if (cached != null && immutable) {
+            return Files.newInputStream(body);
+        }
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+            .timeout(Duration.ofSeconds(60))
+            .header("User-Agent", USER_AGENT)
+            .header("Accept-Encoding", "gzip")
+            .GET();
+        if (cached != null && cached.etag() != null) {
+            request.header("If-None-Match", cached.etag());
+        }
+        if (cached != null && cached.lastModified() != null) {
+            request.header("If-Modified-Since", cached.lastModified());
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request.build(), BodyHandlers.ofInputStream());
+        } catch (IOException ex) {
+            return staleCopy(cached, body, uri, ex);
+        }
+
+        int status = response.statusCode();
+        if (status == 304 && cached != null) {
+            response.body().close();
+            return Files.newInputStream(body);
+        }
+        if (status != 200) {
+            response.body().close();
+            IOException failure = new IOException("HTTP " + status + " when fetching " + uri);
+            if (status >= 500) {
+                return staleCopy(cached, body, uri, failure);
+            }
+            throw failure;
+        }
+
+        Files.createDirectories(cacheDir);
+        Path temp = Files.createTempFile(cacheDir, key, ".tmp");
+        try {
+            try (InputStream in = decode(response)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                return staleCopy(cached, body, uri, ex);
+            }
+            Files.move(temp, body, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        writeValidators(validatorsPath, new Validators(uri.toString(),
+            response.headers().firstValue("ETag").orElse(null),
+            response.headers().firstValue("Last-Modified").orElse(null)));
+        return Files.newInputStream(body);
+    }
+
+    /**
+     * Falls back to the cached body when revalidation failed on the network or the server side. Without a
+     * cached copy the failure is rethrown.
+     */
+    private InputStream staleCopy(Validators cached, Path body, URI uri, IOException failure) throws IOException {
+        if (cached == null) {
+            throw failure;
+        }
+        logger.log(Level.WARNING, "Failed to revalidate " + uri + "; using cached copy.", failure);
+        return Files.newInputStream(body);
+    }
+
+    private static InputStream decode(HttpResponse<InputStream> response) throws IOException {
+        boolean gzipped = response.headers().firstValue("Content-Encoding")
+            .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+            .orElse(false);
+        return gzipped ? new GZIPInputStream(response.body(), 8192) : response.body();
+    }
+
+    private Validators readValidators(Path path, URI uri) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+            if (!uri.toString().equals(json.get("url").getAsString())) {
+                return null;
+            }
+            return new Validators(json.get("url").getAsString(), optionalString(json, "etag"),
+                optionalString(json, "lastModified"));
+        } catch (Exception ex) {
+            logger.log(Level.FINE, "Ignoring unreadable metadata cache entry " + path, ex);
+            return null;
+        }
+    }
+
+    private void writeValidators(Path path, Validators validators) throws IOException {
+        JsonObject json = new JsonObject();
+        json.addProperty("url", validators.url());
+        json.addProperty("etag", validators.etag());
+        json.addProperty("lastModified", validators.lastModified());
+        Files.writeString(path, json.toString(), StandardCharsets.UTF_8);
+    }
+
+    private static String optionalString(JsonObject json, String field) {
+        JsonElement element = json.get(field);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static String cacheKey(URI uri) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return HexFormat.of().formatHex(digest.digest(uri.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 digest unavailable", ex);
+        }
+    }
+
+    private record Validators(String url, String etag, String lastModified) {
+    }
+}
@@ -0,0 +1,426 @@
+package sh.harold.sprite.atlas;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import sh.harold.sprite.config.ClientJarFetchMode;
+import sh.harold.sprite.config.JarCachePolicy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
+
+/**
+ * Resolves a version through Mojang's launcher metadata and populates atlases from the matching client
+ * jar. The same protocol serves HTTP mirrors: every Mojang URL is rehosted onto the mirror's base URL.
+ */
+final class MojangAtlasSource implements AtlasSource {
+    static final String SOURCE_ID = "client-jar";
+    static final String CLIENT_USER_AGENT = "sprite-plugin/atlas-client";
+    private static final URI MANIFEST_URI = URI.create("https://piston-meta.mojang.com/mc/game/version_manifest_v2.json");
+
+    private final String description;
+    private final UnaryOperator<URI> rehost;
+    private final HttpClient httpClient;
+    private final MetadataHttpCache metadataCache;
+    private final SegmentedDownloader downloader;
+    private final ClientJarCache jarCache;
+    private final AtlasCacheStore store;
+    private final ClientJarFetchMode fetchMode;
+    private final JarCachePolicy jarCachePolicy;
+    private final Logger logger;
+
+    private MojangAtlasSource(
+        String description,
+        UnaryOperator<URI> rehost,
+        Services services,
+        AtlasCacheStore store,
+        ClientJarFetchMode fetchMode,
+        JarCachePolicy jarCachePolicy
+    ) {
+        this.description = description;
+        this.rehost = rehost;
+        this.httpClient = services.httpClient();
+        this.metadataCache = services.metadataCache();
+        this.downloader = services.downloader();
+        this.jarCache = services.jarCache();
+        this.store = Objects.requireNonNull(store, "store");
+        this.fetchMode = Objects.requireNonNull(fetchMode, "fetchMode");
+        this.jarCachePolicy = Objects.requireNonNull(jarCachePolicy, "jarCachePolicy");
+        this.logger = services.logger();
+    }
+
+    static MojangAtlasSource official(Services services, AtlasCacheStore store, ClientJarFetchMode fetchMode,
+                                      JarCachePolicy jarCachePolicy) {
+        return new MojangAtlasSource("Mojang", UnaryOperator.identity(), services, store, fetchMode, jarCachePolicy);
+    }
+
+    /**
+     * Creates a source that fetches the manifest, version metadata, asset index and client jar from a mirror
+     * laid out like Mojang's hosts, e.g. {@code https://mirror.example/mc/game/version_manifest_v2.json}.
+     */
+    static MojangAtlasSource mirror(URI baseUri, Services services, AtlasCacheStore store,
+                                    ClientJarFetchMode fetchMode, JarCachePolicy jarCachePolicy) {
+        String base = baseUri.toString();
+        URI normalizedBase = URI.create(base.endsWith("/") ? base : base + "/");
+        UnaryOperator<URI> rehost = uri -> isMojangHost(uri.getHost())
+            ? normalizedBase.resolve(uri.getRawPath().substring(1))
+            : uri;
+        return new MojangAtlasSource("mirror " + normalizedBase, rehost, services, store, fetchMode, jarCachePolicy);
+    }
+
+    private static boolean isMojangHost(String host) {
+        return host != null && (host.endsWith("mojang.com") || host.endsWith("minecraft.net"));
+    }
+
+    @Override
+    public String describe() {
+        return description;
+    }
+
+    @Override
+    public AssetIndex populate(String serverVersion, boolean extractAtlases, boolean verify)
+        throws IOException, InterruptedException {
+        String versionUrl = fetchJson(rehost.apply(MANIFEST_URI), false, reader -> readVersionUrl(reader, serverVersion));
+        if (versionUrl == null) {
+            logger.warning("Unable to find version '" + serverVersion + "' in the " + description + " manifest.");
+            return null;
+        }
+
+        VersionMetadata versionMetadata = fetchJson(rehost.apply(URI.create(versionUrl)), true,
+            MojangAtlasSource::readVersionMetadata);
+        if (versionMetadata.assetIndexUrl() == null) {
+            logger.warning("Version metadata missing asset index information; atlas caching skipped.");
+            return null;
+        }
+
+        // Version JSON and asset index URLs are addressed by content hash, so cached copies never go stale.
+        AssetIndex assetIndex = fetchJson(rehost.apply(URI.create(versionMetadata.assetIndexUrl())), true,
+            MojangAtlasSource::readAssetIndex);
+        if (assetIndex == null) {
+            logger.warning("Asset index contained no objects; atlas caching skipped.");
+            return null;
+        }
+
+        if (extractAtlases) {
+            populateAtlasesFromClientJar(versionMetadata.client(), serverVersion, verify);
+        }
+        return assetIndex;
+    }
+
+    private void populateAtlasesFromClientJar(ClientDownload client, String serverVersion, boolean verifyJar)
+        throws IOException, InterruptedException {
+        if (client == null) {
+            logger.warning("Version JSON missing client download information; cannot populate atlases automatically.");
+            return;
+        }
+        if (client.url() == null || client.sha1() == null) {
+            logger.warning("Client download metadata incomplete; cannot populate atlases automatically.");
+            return;
+        }
+
+        URI jarUri = rehost.apply(URI.create(client.url()));
+        String expectedSha = client.sha1();
+
+        if (fetchMode == ClientJarFetchMode.RANGE
+            && populateAtlasesFromRemoteJar(jarUri, serverVersion, expectedSha, verifyJar)) {
+            return;
+        }
+
+        if (!verifyJar && store.isCurrent(serverVersion, SOURCE_ID, expectedSha)) {
+            logger.info("Atlas cache already up to date for " + serverVersion + "; skipping extraction.");
+            return;
+        }
+
+        Path jarPath = jarCache.resolve(serverVersion, expectedSha);
+        if (Files.notExists(jarPath) || !isJarIntact(jarPath, expectedSha, verifyJar)) {
+            logger.info("Downloading Minecraft client jar for " + serverVersion + " from " + description);
+            downloader.download(jarUri, jarPath, expectedSha, client.size());
+            jarCache.recordVerified(jarPath, expectedSha);
+        } else {
+            logger.info("Reusing cached Minecraft client jar for " + serverVersion);
+        }
+        jarCache.markUsed(serverVersion, expectedSha, jarCachePolicy);
+
+        if (!verifyJar && store.hasExtracted(serverVersion, SOURCE_ID, expectedSha)) {
+            store.ensureTextureIndex(jarPath);
+        } else {
+            AtlasCacheStore.JarExtraction extraction = store.extractFromJar(jarPath);
+            store.markPopulated(serverVersion, SOURCE_ID, expectedSha);
+            logger.info("Extracted " + extraction.atlases() + " atlas files and indexed " + extraction.textures()
+                + " textures from client jar.");
+        }
+
+        if (!jarCachePolicy.keepAfterExtraction()) {
+            jarCache.discard(expectedSha);
+        }
+    }
+
+    private boolean populateAtlasesFromRemoteJar(URI jarUri, String serverVersion, String expectedSha, boolean refetch)
+        throws IOException, InterruptedException {
+        if (!refetch && store.isCurrent(serverVersion, SOURCE_ID, expectedSha)) {
+            logger.info("Atlas cache already up to date for " + serverVersion + "; skipping extraction.");
+            return true;
+        }
+
+        RemoteZipReader remoteJar = new RemoteZipReader(httpClient, jarUri, CLIENT_USER_AGENT);
+        List<RemoteZipReader.Entry> entries = remoteJar.readCentralDirectory();
+        if (entries == null) {
+            logger.info("Client jar host does not support range requests; falling back to a full download.");
+            return false;
+        }
+
+        List<RemoteZipReader.Entry> atlasEntries = new ArrayList<>();
+        List<String> textures = new ArrayList<>();
+        for (RemoteZipReader.Entry entry : entries) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            if (AtlasCacheStore.isAtlasEntry(entry.name())) {
+                atlasEntries.add(entry);
+            } else if (AtlasCacheStore.isTextureEntry(entry.name())) {
+                textures.add(entry.name().substring(AtlasCacheStore.ASSETS_PREFIX.length()));
+            }
+        }
+
+        Map<RemoteZipReader.Entry, byte[]> contents = remoteJar.readEntries(atlasEntries);
+        if (contents == null) {
+            logger.info("Client jar host stopped honouring range requests; falling back to a full download.");
+            return false;
+        }
+        store.clearAtlases();
+        long fetchedBytes = 0;
+        for (Map.Entry<RemoteZipReader.Entry, byte[]> content : contents.entrySet()) {
+            store.writeAtlas(content.getKey().name(), content.getValue());
+            fetchedBytes += content.getKey().compressedSize();
+        }
+
+        int indexed = store.writeTextureIndex(textures);
+        store.markPopulated(serverVersion, SOURCE_ID, expectedSha);
+        logger.info("Fetched " + contents.size() + " atlas files (" + (fetchedBytes / 1024) + " KB compressed) and indexed "
+            + indexed + " textures via range requests.");
+        return true;
+    }
+
+    /**
+     * Checks a cached jar against its expected SHA-1. A jar already verified and untouched since is trusted
+     * without rereading it, unless {@code forceRehash} is set.
+     */
+    private boolean isJarIntact(Path jarPath, String expectedSha, boolean forceRehash) throws IOException {
+        if (!forceRehash && jarCache.isVerified(jarPath, expectedSha)) {
+            return true;
+        }
+        if (!hashMatches(jarPath, expectedSha)) {
+            return false;
+        }
+        jarCache.recordVerified(jarPath, expectedSha);
+        return true;
+    }
+
+    private boolean hashMatches(Path file, String expectedHash) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            String actual = toHex(digest.digest());
+            return expectedHash.equalsIgnoreCase(actual);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 digest unavailable", ex);
+        }
+    }
+
+    private String toHex(byte[] data) {
+        StringBuilder builder = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            builder.append(Character.forDigit((b >>> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private <T> T fetchJson(URI uri, boolean immutable, JsonStreamReader<T> parser) throws IOException, InterruptedException {
+        InputStream body = metadataCache.open(uri, immutable);
+        try (JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            return parser.read(reader);
+        } catch (IllegalStateException ex) {
+            throw new IOException("Unexpected JSON structure from " + uri, ex);
+        }
+    }
+
+    static String readVersionUrl(JsonReader reader, String serverVersion) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"versions".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String id = null;
+                String url = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "id" -> id = nextStringOrNull(reader);
+                        case "url" -> url = nextStringOrNull(reader);
+                        default -> reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (serverVersion.equals(id)) {
+                    // The manifest lists newest releases first, so stop reading as soon as we match.
+                    return url;
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return null;
+    }
+
+    private static VersionMetadata readVersionMetadata(JsonReader reader) throws IOException {
+        String assetIndexUrl = null;
+        ClientDownload client = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "assetIndex" -> assetIndexUrl = readStringField(reader, "url");
+                case "downloads" -> client = readClientDownload(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new VersionMetadata(assetIndexUrl, client);
+    }
+
+    private static ClientDownload readClientDownload(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        ClientDownload client = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"client".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            String url = null;
+            String sha1 = null;
+            long size = -1;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "url" -> url = nextStringOrNull(reader);
+                    case "sha1" -> sha1 = nextStringOrNull(reader);
+                    case "size" -> size = nextLongOrDefault(reader, -1L);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            client = new ClientDownload(url, sha1, size);
+        }
+        reader.endObject();
+        return client;
+    }
+
+    static AssetIndex readAssetIndex(JsonReader reader) throws IOException {
+        Map<String, String> textures = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"objects".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            textures = new LinkedHashMap<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String path = reader.nextName();
+                if (!path.contains(AtlasCacheStore.TEXTURE_PATH_SEGMENT) || !path.endsWith(AtlasCacheStore.PNG_SUFFIX)) {
+                    reader.skipValue();
+                    continue;
+                }
+                String hash = readStringField(reader, "hash");
+                if (hash != null) {
+                    textures.put(path, hash);
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+        return textures == null ? null : AssetIndex.fromHexHashes(textures);
+    }
+
+    private static String readStringField(JsonReader reader, String field) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (field.equals(reader.nextName())) {
+                value = nextStringOrNull(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    private static long nextLongOrDefault(JsonReader reader, long fallback) throws IOException {
+        if (reader.peek() != JsonToken.NUMBER) {
+            reader.skipValue();
+            return fallback;
+        }
+        return reader.nextLong();
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.STRING) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Network and cache collaborators shared by every Mojang-protocol source and every cached version.
+     */
+    record Services(
+        HttpClient httpClient,
+        MetadataHttpCache metadataCache,
+        SegmentedDownloader downloader,
+        ClientJarCache jarCache,
+        Logger logger
+    ) {
+    }
+
+    @FunctionalInterface
+    private interface JsonStreamReader<T> {
+        T read(JsonReader reader) throws IOException;
+    }
+
+    private record VersionMetadata(String assetIndexUrl, ClientDownload client) {
+    }
+
+    private record ClientDownload(String url, String sha1, long size) {
+    }
+}
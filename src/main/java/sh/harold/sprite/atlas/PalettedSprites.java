@@ -0,0 +1,254 @@
+package sh.harold.sprite.atlas;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * The sprites of a {@code paletted_permutations} source that fall in one group: every base texture combined
+ * with every permutation suffix as {@code <base>_<suffix>}. Only the bases, suffixes and their texture paths
+ * are stored; keys are built when read, so the sequence grows with the number of inputs rather than their
+ * product. Keys come out in sorted order; base-major order already is sorted unless one base is a prefix of
+ * another, and only then is an explicit order kept. Equality and hashing look only at the inputs, so a sequence
+ * never equals a plain list of the same keys.
+ */
+final class PalettedSprites extends AbstractList<String> implements RandomAccess {
+    private final String[] bases;
+    private final String[] baseTextures;
+    private final String[] suffixes;
+    private final String[] paletteTextures;
+    private final String paletteKey;
+    private final int[] order;
+    private int hash;
+
+    private PalettedSprites(String[] bases, String[] baseTextures, String[] suffixes, String[] paletteTextures,
+                            String paletteKey, int[] order) {
+        this.bases = bases;
+        this.baseTextures = baseTextures;
+        this.suffixes = suffixes;
+        this.paletteTextures = paletteTextures;
+        this.paletteKey = paletteKey;
+        this.order = order;
+    }
+
+    /**
+     * Builds a sequence from bases and suffixes, each sorted and distinct, with the texture paths they were
+     * read from. Permutations without a palette texture and sources without a palette key use {@code ""}.
+     */
+    static PalettedSprites of(String[] bases, String[] baseTextures, String[] suffixes, String[] paletteTextures,
+                              String paletteKey) {
+        Objects.requireNonNull(paletteKey, "paletteKey");
+        if (bases.length != baseTextures.length || suffixes.length != paletteTextures.length) {
+            throw new IllegalArgumentException("Every base and suffix needs a texture path");
+        }
+        for (int i = 1; i < bases.length; i++) {
+            if (bases[i - 1].compareTo(bases[i]) >= 0) {
+                throw new IllegalArgumentException("Paletted bases are not strictly sorted");
+            }
+        }
+        for (int i = 1; i < suffixes.length; i++) {
+            if (suffixes[i - 1].compareTo(suffixes[i]) >= 0) {
+                throw new IllegalArgumentException("Paletted suffixes are not strictly sorted");
+            }
+        }
+        return new PalettedSprites(bases, baseTextures, suffixes, paletteTextures, paletteKey,
+            sortedOrder(bases, suffixes));
+    }
+
+    // Each base's keys are sorted, and they all come before the next base's unless that base starts with this
+    // one; only then are keys compared, in place, and the bases' runs merged into an explicit order.
+    private static int[] sortedOrder(String[] bases, String[] suffixes) {
+        int last = suffixes.length - 1;
+        boolean sorted = true;
+        for (int b = 1; b < bases.length && sorted && last >= 0; b++) {
+            sorted = !bases[b].startsWith(bases[b - 1])
+                || compare(bases, suffixes, (b - 1) * suffixes.length + last, b * suffixes.length) < 0;
+        }
+        if (sorted) {
+            return null;
+        }
+        int size = bases.length * suffixes.length;
+        int[] order = new int[size];
+        Arrays.setAll(order, i -> i);
+        int[] merged = new int[size];
+        for (int run = suffixes.length; run < size; run *= 2) {
+            for (int low = 0; low < size; low += 2 * run) {
+                int middle = Math.min(low + run, size);
+                int high = Math.min(low + 2 * run, size);
+                int left = low;
+                int right = middle;
+                for (int i = low; i < high; i++) {
+                    boolean takeLeft = right >= high
+                        || (left < middle && compare(bases, suffixes, order[left], order[right]) < 0);
+                    merged[i] = takeLeft ? order[left++] : order[right++];
+                }
+            }
+            int[] swap = order;
+            order = merged;
+            merged = swap;
+        }
+        return order;
+    }
+
+    // Compares the keys at two base-major indices as String.compareTo would, reading their characters in place.
+    private static int compare(String[] bases, String[] suffixes, int a, int b) {
+        String baseA = bases[a / suffixes.length];
+        String suffixA = suffixes[a % suffixes.length];
+        String baseB = bases[b / suffixes.length];
+        String suffixB = suffixes[b % suffixes.length];
+        int lengthA = baseA.length() + 1 + suffixA.length();
+        int lengthB = baseB.length() + 1 + suffixB.length();
+        for (int i = 0, common = Math.min(lengthA, lengthB); i < common; i++) {
+            int difference = charAt(baseA, suffixA, i) - charAt(baseB, suffixB, i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    private static char charAt(String base, String suffix, int index) {
+        if (index < base.length()) {
+            return base.charAt(index);
+        }
+        return index == base.length() ? '_' : suffix.charAt(index - base.length() - 1);
+    }
+
+    private static String key(String[] bases, String[] suffixes, int index) {
+        return bases[index / suffixes.length] + "_" + suffixes[index % suffixes.length];
+    }
+
+    @Override
+    public String get(int index) {
+        Objects.checkIndex(index, size());
+        return key(bases, suffixes, order == null ? index : order[index]);
+    }
+
+    @Override
+    public int size() {
+        return bases.length * suffixes.length;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String key)) {
+            return false;
+        }
+        for (String suffix : suffixes) {
+            int baseLength = key.length() - suffix.length() - 1;
+            if (baseLength > 0 && key.endsWith(suffix) && key.charAt(baseLength) == '_' && hasBase(key, baseLength)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Binary search for the base equal to the first baseLength characters of key, without cutting it out.
+    private boolean hasBase(String key, int baseLength) {
+        int low = 0;
+        int high = bases.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = compareToPrefix(bases[mid], key, baseLength);
+            if (comparison == 0) {
+                return true;
+            }
+            if (comparison < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return false;
+    }
+
+    private static int compareToPrefix(String base, String key, int prefixLength) {
+        int common = Math.min(base.length(), prefixLength);
+        for (int i = 0; i < common; i++) {
+            int difference = base.charAt(i) - key.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return base.length() - prefixLength;
+    }
+
+    List<String> bases() {
+        return List.of(bases);
+    }
+
+    List<String> baseTextures() {
+        return List.of(baseTextures);
+    }
+
+    List<String> suffixes() {
+        return List.of(suffixes);
+    }
+
+    List<String> paletteTextures() {
+        return List.of(paletteTextures);
+    }
+
+    String paletteKey() {
+        return paletteKey;
+    }
+
+    /**
+     * Returns the keys generated from {@code texturePath}, whether it is a base texture, a permutation's
+     * palette or the palette key of the source.
+     */
+    List<String> spritesUsing(String texturePath) {
+        if (paletteKey.equals(texturePath)) {
+            return this;
+        }
+        // Built in base-major order, then sorted, so callers see the same order as the sequence itself.
+        String[] found = new String[0];
+        int count = 0;
+        for (int b = 0; b < bases.length; b++) {
+            for (int s = 0; s < suffixes.length; s++) {
+                if (baseTextures[b].equals(texturePath) || paletteTextures[s].equals(texturePath)) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, Math.max(4, count * 2));
+                    }
+                    found[count++] = bases[b] + "_" + suffixes[s];
+                }
+            }
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return List.of(found);
+    }
+
+    /**
+     * Hashes what {@link #equals(Object)} compares between sequences, without generating any key.
+     */
+    int inputHash() {
+        return Objects.hash(Arrays.hashCode(bases), Arrays.hashCode(baseTextures), Arrays.hashCode(suffixes),
+            Arrays.hashCode(paletteTextures), paletteKey);
+    }
+
+    /**
+     * Compares the inputs, so a sequence only equals another sequence read from the same textures.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PalettedSprites other
+            && Arrays.equals(bases, other.bases)
+            && Arrays.equals(baseTextures, other.baseTextures)
+            && Arrays.equals(suffixes, other.suffixes)
+            && Arrays.equals(paletteTextures, other.paletteTextures)
+            && paletteKey.equals(other.paletteKey);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = inputHash();
+            hash = h;
+        }
+        return h;
+    }
+}
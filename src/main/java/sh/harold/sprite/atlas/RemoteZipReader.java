@@ -0,0 +1,360 @@
+package sh.harold.sprite.atlas;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads individual entries of a remote zip archive through HTTP range requests, fetching the
+ * central directory first and then only the byte ranges of the requested entries.
+ */
+final class RemoteZipReader {
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int EOCD_MIN_LENGTH = 22;
+    private static final int EOCD_MAX_LENGTH = EOCD_MIN_LENGTH + 0xFFFF;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final long COALESCE_GAP_BYTES = 64 * 1024;
+
+    private final HttpClient httpClient;
+    private final URI uri;
+    private final String userAgent;
+    private long[] localHeaderBounds = new long[0];
+
+    RemoteZipReader(HttpClient httpClient, URI uri, String userAgent) {
+        this.httpClient = Objects.requireNonNull(httpClient, "httpClient");
+        this.uri = Objects.requireNonNull(uri, "uri");
+        this.userAgent = Objects.requireNonNull(userAgent, "userAgent");
+    }
+
+    /**
+     * Fetches and parses the central directory.
+     *
+     * @return the archive entries, or {@code null} when the server does not honour range requests
+     * or the archive needs zip64 support
+     */
+    List<Entry> readCentralDirectory() throws IOException, InterruptedException {
+        RangeResponse tail = fetch(Range.suffix(EOCD_MAX_LENGTH));
+        if (tail == null) {
+            return null;
+        }
+
+        ByteBuffer tailBuffer = ByteBuffer.wrap(tail.body()).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = findEndOfCentralDirectory(tailBuffer);
+        if (eocd < 0) {
+            throw new IOException("No end of central directory record found in " + uri);
+        }
+        int entryCount = Short.toUnsignedInt(tailBuffer.getShort(eocd + 10));
+        long directorySize = Integer.toUnsignedLong(tailBuffer.getInt(eocd + 12));
+        long directoryOffset = Integer.toUnsignedLong(tailBuffer.getInt(eocd + 16));
+        if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            return null;
+        }
+
+        byte[] directory;
+        long inTail = directoryOffset - tail.start();
+        if (inTail >= 0 && inTail + directorySize <= tail.body().length) {
+            directory = Arrays.copyOfRange(tail.body(), (int) inTail, (int) (inTail + directorySize));
+        } else {
+            RangeResponse response = fetch(new Range(directoryOffset, directoryOffset + directorySize - 1));
+            if (response == null) {
+                return null;
+            }
+            directory = response.body();
+        }
+
+        List<Entry> entries = parseCentralDirectory(directory, entryCount);
+        long[] bounds = new long[entries.size() + 1];
+        for (int i = 0; i < entries.size(); i++) {
+            bounds[i] = entries.get(i).localHeaderOffset();
+        }
+        bounds[entries.size()] = directoryOffset;
+        Arrays.sort(bounds);
+        localHeaderBounds = bounds;
+        return entries;
+    }
+
+    /**
+     * Fetches and inflates the given entries. Neighbouring entries are coalesced into a single range
+     * request and independent ranges are requested concurrently.
+     *
+     * @return entry contents keyed by entry, or {@code null} when the server stops honouring ranges
+     */
+    Map<Entry, byte[]> readEntries(List<Entry> entries) throws IOException, InterruptedException {
+        if (entries.isEmpty()) {
+            return Map.of();
+        }
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingLong(Entry::localHeaderOffset));
+
+        List<List<Entry>> batches = new ArrayList<>();
+        List<Entry> current = new ArrayList<>();
+        long currentEnd = -1;
+        for (Entry entry : sorted) {
+            if (!current.isEmpty() && entry.localHeaderOffset() - currentEnd > COALESCE_GAP_BYTES) {
+                batches.add(current);
+                current = new ArrayList<>();
+            }
+            current.add(entry);
+            currentEnd = entryEnd(entry);
+        }
+        batches.add(current);
+
+        List<CompletableFuture<RangeResponse>> pending = new ArrayList<>(batches.size());
+        for (List<Entry> batch : batches) {
+            long start = batch.getFirst().localHeaderOffset();
+            long end = entryEnd(batch.getLast()) - 1;
+            pending.add(fetchAsync(new Range(start, end)));
+        }
+
+        Map<Entry, byte[]> contents = new LinkedHashMap<>();
+        for (int i = 0; i < batches.size(); i++) {
+            RangeResponse response = join(pending.get(i));
+            if (response == null) {
+                return null;
+            }
+            for (Entry entry : batches.get(i)) {
+                contents.put(entry, inflate(entry, response));
+            }
+        }
+        return contents;
+    }
+
+    private long entryEnd(Entry entry) {
+        long offset = entry.localHeaderOffset();
+        int next = Arrays.binarySearch(localHeaderBounds, offset);
+        if (next >= 0) {
+            while (next < localHeaderBounds.length && localHeaderBounds[next] == offset) {
+                next++;
+            }
+        }
+        if (next < 0 || next >= localHeaderBounds.length) {
+            // Unknown layout; allow for the local header's name and extra fields on top of the data.
+            return offset + LOCAL_HEADER_LENGTH + 0xFFFF * 2L + entry.compressedSize();
+        }
+        return localHeaderBounds[next];
+    }
+
+    private byte[] inflate(Entry entry, RangeResponse response) throws IOException {
+        long relative = entry.localHeaderOffset() - response.start();
+        byte[] body = response.body();
+        if (relative < 0 || relative + LOCAL_HEADER_LENGTH > body.length) {
+            throw new IOException("Range response did not cover " + entry.name());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+        int header = (int) relative;
+        if (buffer.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Corrupt local header for " + entry.name());
+        }
+        int nameLength = Short.toUnsignedInt(buffer.getShort(header + 26));
+        int extraLength = Short.toUnsignedInt(buffer.getShort(header + 28));
+        int dataStart = header + LOCAL_HEADER_LENGTH + nameLength + extraLength;
+        if (dataStart + entry.compressedSize() > body.length) {
+            throw new IOException("Range response truncated " + entry.name());
+        }
+
+        byte[] data;
+        switch (entry.method()) {
+            case METHOD_STORED -> data = Arrays.copyOfRange(body, dataStart, dataStart + (int) entry.compressedSize());
+            case METHOD_DEFLATED -> data = inflate(body, dataStart, (int) entry.compressedSize(), (int) entry.size(), entry.name());
+            default -> throw new IOException("Unsupported compression method " + entry.method() + " for " + entry.name());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if (data.length != entry.size() || crc.getValue() != entry.crc()) {
+            throw new IOException("CRC mismatch for " + entry.name());
+        }
+        return data;
+    }
+
+    private static byte[] inflate(byte[] input, int offset, int length, int size, String name) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input, offset, length);
+            byte[] output = new byte[size];
+            int written = 0;
+            while (written < size) {
+                int read = inflater.inflate(output, written, size - written);
+                if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                written += read;
+            }
+            return written == size ? output : Arrays.copyOf(output, written);
+        } catch (DataFormatException ex) {
+            throw new IOException("Failed to inflate " + name, ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer buffer) {
+        for (int position = buffer.limit() - EOCD_MIN_LENGTH; position >= 0; position--) {
+            if (buffer.getInt(position) == EOCD_SIGNATURE) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static List<Entry> parseCentralDirectory(byte[] directory, int expectedEntries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(directory).order(ByteOrder.LITTLE_ENDIAN);
+        List<Entry> entries = new ArrayList<>(expectedEntries);
+        int position = 0;
+        while (position + CENTRAL_HEADER_LENGTH <= directory.length) {
+            if (buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Corrupt central directory at offset " + position);
+            }
+            int method = Short.toUnsignedInt(buffer.getShort(position + 10));
+            long crc = Integer.toUnsignedLong(buffer.getInt(position + 16));
+            long compressedSize = Integer.toUnsignedLong(buffer.getInt(position + 20));
+            long size = Integer.toUnsignedLong(buffer.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(buffer.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(buffer.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(buffer.getShort(position + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(position + 42));
+            String name = new String(directory, position + CENTRAL_HEADER_LENGTH, nameLength, StandardCharsets.UTF_8);
+            entries.add(new Entry(name, method, crc, compressedSize, size, localHeaderOffset));
+            position += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private RangeResponse fetch(Range range) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = httpClient.send(rangeRequest(range), BodyHandlers.ofInputStream());
+        return toRangeResponse(range, response);
+    }
+
+    private CompletableFuture<RangeResponse> fetchAsync(Range range) {
+        return httpClient.sendAsync(rangeRequest(range), BodyHandlers.ofInputStream())
+            .thenApply(response -> {
+                try {
+                    return toRangeResponse(range, response);
+                } catch (IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            });
+    }
+
+    private static RangeResponse join(CompletableFuture<RangeResponse> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause() instanceof CompletionException ? ex.getCause().getCause() : ex.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Range request failed", cause);
+        }
+    }
+
+    private HttpRequest rangeRequest(Range range) {
+        return HttpRequest.newBuilder(uri)
+            .timeout(Duration.ofSeconds(60))
+            .header("User-Agent", userAgent)
+            .header("Range", range.header())
+            .GET()
+            .build();
+    }
+
+    /**
+     * Reads a range response only once its status and {@code Content-Range} show it is the requested range. A
+     * server that ignores ranges answers with the whole archive, so that body is closed unread.
+     */
+    private RangeResponse toRangeResponse(Range range, HttpResponse<InputStream> response) throws IOException {
+        try (InputStream body = response.body()) {
+            if (response.statusCode() == 200) {
+                return null;
+            }
+            if (response.statusCode() != 206) {
+                throw new IOException("HTTP " + response.statusCode() + " when requesting range of " + uri);
+            }
+            long[] served = parseContentRange(response.headers().firstValue("Content-Range").orElse(""));
+            if (served == null || !range.isServedBy(served[0], served[1], served[2])) {
+                return null;
+            }
+            int length = Math.toIntExact(served[1] - served[0] + 1);
+            byte[] bytes = body.readNBytes(length);
+            if (bytes.length != length) {
+                throw new IOException("Range response of " + uri + " ended after " + bytes.length + " of " + length + " bytes");
+            }
+            return new RangeResponse(served[0], bytes);
+        }
+    }
+
+    /**
+     * Parses {@code bytes <start>-<end>/<total>} into its three numbers, or returns {@code null} when the header
+     * is missing, malformed or leaves the total unknown.
+     */
+    private static long[] parseContentRange(String contentRange) {
+        int space = contentRange.indexOf(' ');
+        int dash = contentRange.indexOf('-', space + 1);
+        int slash = contentRange.indexOf('/', dash + 1);
+        if (space < 0 || dash < 0 || slash < 0) {
+            return null;
+        }
+        try {
+            long start = Long.parseLong(contentRange.substring(space + 1, dash).trim());
+            long end = Long.parseLong(contentRange.substring(dash + 1, slash).trim());
+            long total = Long.parseLong(contentRange.substring(slash + 1).trim());
+            return start <= end && end < total ? new long[]{start, end, total} : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    record Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    private record RangeResponse(long start, byte[] body) {
+    }
+
+    /**
+     * An inclusive byte range, or the last {@code -first} bytes of the archive when {@code first} is negative.
+     */
+    private record Range(long first, long last) {
+        static Range suffix(long length) {
+            return new Range(-length, -1);
+        }
+
+        String header() {
+            return first < 0 ? "bytes=" + first : "bytes=" + first + "-" + last;
+        }
+
+        boolean isServedBy(long start, long end, long total) {
+            if (first < 0) {
+                return start == Math.max(0, total + first) && end == total - 1;
+            }
+            return start == first && end == Math.min(last, total - 1);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package sh.harold.sprite.atlas;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Downloads a file in parallel ranged segments, hashing the bytes in file order as they arrive and
+ * persisting finished segments so an interrupted download resumes where it stopped.
+ */
+final class SegmentedDownloader {
+    private static final int SEGMENT_SIZE = 2 * 1024 * 1024;
+    private static final int MAX_PARALLEL_SEGMENTS = 4;
+    private static final int READ_AHEAD_SEGMENTS = MAX_PARALLEL_SEGMENTS + 2;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int SEGMENT_ATTEMPTS = 3;
+    private static final ByteBuffer END_OF_SEGMENT = ByteBuffer.allocate(0);
+
+    private final HttpClient httpClient;
+    private final String userAgent;
+    private final Logger logger;
+
+    SegmentedDownloader(HttpClient httpClient, String userAgent, Logger logger) {
+        this.httpClient = Objects.requireNonNull(httpClient, "httpClient");
+        this.userAgent = Objects.requireNonNull(userAgent, "userAgent");
+        this.logger = Objects.requireNonNull(logger, "logger");
+    }
+
+    /**
+     * Downloads {@code uri} into {@code target}, failing if the bytes do not hash to {@code expectedSha1}.
+     * When {@code expectedSize} is unknown ({@code <= 0}) or the server ignores range requests, the file
+     * is streamed sequentially instead, still hashing inline.
+     */
+    void download(URI uri, Path target, String expectedSha1, long expectedSize) throws IOException, InterruptedException {
+        Path partFile = target.resolveSibling(target.getFileName() + ".part");
+        Path stateFile = target.resolveSibling(target.getFileName() + ".part.json");
+        String actualSha1;
+        if (expectedSize <= 0) {
+            actualSha1 = downloadSequential(uri, partFile);
+        } else {
+            try {
+                actualSha1 = downloadSegmented(uri, partFile, stateFile, expectedSha1, expectedSize);
+            } catch (RangeUnsupportedException ex) {
+                logger.info("Client jar host ignored range requests; downloading sequentially.");
+                actualSha1 = downloadSequential(uri, partFile);
+            }
+        }
+
+        if (!expectedSha1.equalsIgnoreCase(actualSha1)) {
+            Files.deleteIfExists(partFile);
+            Files.deleteIfExists(stateFile);
+            throw new IOException("Downloaded jar failed SHA-1 verification.");
+        }
+        Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(stateFile);
+    }
+
+    private String downloadSequential(URI uri, Path partFile) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = httpClient.send(request(uri, null), BodyHandlers.ofInputStream());
+        MessageDigest digest = newDigest();
+        try (InputStream in = response.body();
+             FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode() + " when downloading client jar.");
+            }
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                channel.write(ByteBuffer.wrap(buffer, 0, read));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private String downloadSegmented(URI uri, Path partFile, Path stateFile, String expectedSha1, long size)
+        throws IOException, InterruptedException {
+        int segmentCount = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        BitSet completed = readState(stateFile, partFile, expectedSha1, size, segmentCount);
+        if (completed.isEmpty()) {
+            Files.deleteIfExists(partFile);
+        } else {
+            logger.info("Resuming client jar download (" + completed.cardinality() + "/" + segmentCount + " segments cached).");
+        }
+
+        MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            DownloadState state = new DownloadState(segmentCount, completed);
+            List<Segment> segments = new ArrayList<>(segmentCount);
+            for (int i = 0; i < segmentCount; i++) {
+                long start = (long) i * SEGMENT_SIZE;
+                segments.add(new Segment(i, start, Math.min(size, start + SEGMENT_SIZE)));
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(MAX_PARALLEL_SEGMENTS, runnable -> {
+                Thread thread = new Thread(runnable, "sprite-jar-download");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                for (Segment segment : segments) {
+                    if (!completed.get(segment.index())) {
+                        executor.execute(() -> fetchSegment(uri, channel, segment, state, stateFile, expectedSha1, size));
+                    }
+                }
+                for (Segment segment : segments) {
+                    if (completed.get(segment.index())) {
+                        // Bytes from an earlier run never passed through this process, so they are hashed from disk.
+                        hashFromDisk(channel, segment, digest);
+                    } else {
+                        hashFromQueue(segment, digest);
+                    }
+                    state.advanceFrontier(segment.index() + 1);
+                }
+            } finally {
+                state.abort();
+                executor.shutdownNow();
+            }
+            channel.force(false);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private void fetchSegment(URI uri, FileChannel channel, Segment segment, DownloadState state, Path stateFile,
+                              String expectedSha1, long size) {
+        try {
+            state.awaitWindow(segment.index());
+            for (int attempt = 1; segment.position() < segment.end(); attempt++) {
+                try {
+                    streamRange(uri, channel, segment);
+                } catch (IOException ex) {
+                    if (attempt >= SEGMENT_ATTEMPTS || ex instanceof RangeUnsupportedException) {
+                        throw ex;
+                    }
+                    logger.log(Level.FINE, "Retrying client jar segment " + segment.index(), ex);
+                }
+            }
+            segment.chunks().put(END_OF_SEGMENT);
+            state.markCompleted(segment.index());
+            writeState(stateFile, expectedSha1, size, state.completedSnapshot());
+        } catch (IOException ex) {
+            segment.fail(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            segment.fail(new IOException("Client jar download interrupted", ex));
+        }
+    }
+
+    private void streamRange(URI uri, FileChannel channel, Segment segment) throws IOException, InterruptedException {
+        String range = "bytes=" + segment.position() + "-" + (segment.end() - 1);
+        HttpResponse<InputStream> response = httpClient.send(request(uri, range), BodyHandlers.ofInputStream());
+        try (InputStream in = response.body()) {
+            if (response.statusCode() == 200) {
+                throw new RangeUnsupportedException();
+            }
+            if (response.statusCode() != 206) {
+                throw new IOException("HTTP " + response.statusCode() + " when downloading client jar segment.");
+            }
+            while (segment.position() < segment.end()) {
+                byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE, segment.end() - segment.position())];
+                int read = in.readNBytes(chunk, 0, chunk.length);
+                if (read <= 0) {
+                    throw new IOException("Client jar segment " + segment.index() + " ended early.");
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, read);
+                long position = segment.position();
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                // Chunks are only queued once written, so a retry resumes exactly where hashing left off.
+                segment.chunks().put(ByteBuffer.wrap(chunk, 0, read));
+                segment.advance(read);
+            }
+        }
+    }
+
+    private void hashFromQueue(Segment segment, MessageDigest digest) throws IOException, InterruptedException {
+        while (true) {
+            ByteBuffer chunk = segment.chunks().take();
+            if (chunk == END_OF_SEGMENT) {
+                return;
+            }
+            if (chunk == Segment.FAILED) {
+                IOException failure = segment.failure();
+                if (failure instanceof RangeUnsupportedException rangeUnsupported) {
+                    throw rangeUnsupported;
+                }
+                throw new IOException("Client jar segment " + segment.index() + " failed", failure);
+            }
+            digest.update(chunk);
+        }
+    }
+
+    private void hashFromDisk(FileChannel channel, Segment segment, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        long position = segment.start();
+        while (position < segment.end()) {
+            buffer.clear().limit((int) Math.min(CHUNK_SIZE, segment.end() - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Resumed client jar download is truncated.");
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+    }
+
+    private BitSet readState(Path stateFile, Path partFile, String expectedSha1, long size, int segmentCount) {
+        BitSet completed = new BitSet(segmentCount);
+        if (!Files.exists(stateFile) || !Files.exists(partFile)) {
+            return completed;
+        }
+        try (Reader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+            JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+            boolean matches = expectedSha1.equalsIgnoreCase(json.get("sha1").getAsString())
+                && json.get("size").getAsLong() == size
+                && json.get("segmentSize").getAsInt() == SEGMENT_SIZE;
+            if (!matches) {
+                return completed;
+            }
+            long partSize = Files.size(partFile);
+            for (JsonElement element : json.getAsJsonArray("completed")) {
+                int index = element.getAsInt();
+                long segmentEnd = Math.min(size, (long) (index + 1) * SEGMENT_SIZE);
+                if (index >= 0 && index < segmentCount && segmentEnd <= partSize) {
+                    completed.set(index);
+                }
+            }
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Ignoring unreadable client jar download state; restarting download.", ex);
+            completed.clear();
+        }
+        return completed;
+    }
+
+    private synchronized void writeState(Path stateFile, String expectedSha1, long size, BitSet completed) throws IOException {
+        JsonObject json = new JsonObject();
+        json.addProperty("sha1", expectedSha1);
+        json.addProperty("size", size);
+        json.addProperty("segmentSize", SEGMENT_SIZE);
+        JsonArray indexes = new JsonArray();
+        completed.stream().forEach(indexes::add);
+        json.add("completed", indexes);
+        Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        Files.writeString(temp, json.toString(), StandardCharsets.UTF_8);
+        Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private HttpRequest request(URI uri, String range) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+            .timeout(Duration.ofMinutes(5))
+            .header("User-Agent", userAgent)
+            .GET();
+        if (range != null) {
+            builder.header("Range", range);
+        }
+        return builder.build();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 digest unavailable", ex);
+        }
+    }
+
+    private static final class Segment {
+        private static final ByteBuffer FAILED = ByteBuffer.allocate(0);
+
+        private final int index;
+        private final long start;
+        private final long end;
+        private final LinkedBlockingQueue<ByteBuffer> chunks = new LinkedBlockingQueue<>();
+        private long position;
+        private volatile IOException failure;
+
+        private Segment(int index, long start, long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.position = start;
+        }
+
+        private int index() {
+            return index;
+        }
+
+        private long start() {
+            return start;
+        }
+
+        private long end() {
+            return end;
+        }
+
+        private long position() {
+            return position;
+        }
+
+        private void advance(int bytes) {
+            position += bytes;
+        }
+
+        private LinkedBlockingQueue<ByteBuffer> chunks() {
+            return chunks;
+        }
+
+        private void fail(IOException failure) {
+            this.failure = failure;
+            chunks.add(FAILED);
+        }
+
+        private IOException failure() {
+            return failure;
+        }
+    }
+
+    /**
+     * Tracks finished segments and the hashing frontier. Workers may only run a bounded number of
+     * segments ahead of the frontier so buffered out-of-order chunks stay small.
+     */
+    private static final class DownloadState {
+        private final BitSet completed;
+        private int frontier;
+        private boolean aborted;
+
+        private DownloadState(int segmentCount, BitSet resumed) {
+            this.completed = new BitSet(segmentCount);
+            this.completed.or(resumed);
+        }
+
+        private synchronized void awaitWindow(int segmentIndex) throws InterruptedException {
+            while (!aborted && segmentIndex >= frontier + READ_AHEAD_SEGMENTS) {
+                wait();
+            }
+            if (aborted) {
+                throw new InterruptedException("Download aborted");
+            }
+        }
+
+        private synchronized void advanceFrontier(int frontier) {
+            this.frontier = frontier;
+            notifyAll();
+        }
+
+        private synchronized void abort() {
+            aborted = true;
+            notifyAll();
+        }
+
+        private synchronized void markCompleted(int segmentIndex) {
+            completed.set(segmentIndex);
+        }
+
+        private synchronized BitSet completedSnapshot() {
+            return (BitSet) completed.clone();
+        }
+    }
+
+    private static final class RangeUnsupportedException extends IOException {
+        private RangeUnsupportedException() {
+            super("Server does not honour range requests");
+        }
+    }
+}
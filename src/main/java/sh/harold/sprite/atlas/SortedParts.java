@@ -0,0 +1,144 @@
+package sh.harold.sprite.atlas;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the union of sorted lists that never share a key, in order, by walking the lists side by side. Nothing
+ * the size of the union is built: finding where a position falls takes binary searches over the parts, and
+ * each key after it one comparison per part.
+ */
+final class SortedParts {
+    private SortedParts() {
+    }
+
+    /**
+     * Returns the keys at positions {@code from} (inclusive) to {@code to} (exclusive) of the union.
+     */
+    static List<String> slice(List<? extends List<String>> parts, Comparator<? super String> order, int from,
+                              int to) {
+        Walk walk = new Walk(parts, order, offsets(parts, order, from));
+        String[] keys = new String[to - from];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = walk.next();
+        }
+        return List.of(keys);
+    }
+
+    static Iterator<String> iterator(List<? extends List<String>> parts, Comparator<? super String> order) {
+        return new Walk(parts, order, new int[parts.size()]);
+    }
+
+    /**
+     * Returns the position in the union of {@code key}, which one of the parts holds.
+     */
+    static int positionOf(List<? extends List<String>> parts, Comparator<? super String> order, String key) {
+        int position = 0;
+        for (List<String> part : parts) {
+            position += countBefore(part, order, key);
+        }
+        return position;
+    }
+
+    // For each part, how many of its keys come before the one at position in the union. Only the part holding
+    // that key can place it: at its own offset, exactly position keys of all parts come before it.
+    private static int[] offsets(List<? extends List<String>> parts, Comparator<? super String> order,
+                                 int position) {
+        int[] offsets = new int[parts.size()];
+        for (int p = 0; p < parts.size(); p++) {
+            List<String> part = parts.get(p);
+            int low = 0;
+            int high = part.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                String key = part.get(mid);
+                int before = mid;
+                for (int q = 0; q < parts.size(); q++) {
+                    if (q != p) {
+                        offsets[q] = countBefore(parts.get(q), order, key);
+                        before += offsets[q];
+                    }
+                }
+                if (before == position) {
+                    offsets[p] = mid;
+                    return offsets;
+                }
+                if (before < position) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+        }
+        // Only the end of the union is held by no part.
+        for (int p = 0; p < parts.size(); p++) {
+            offsets[p] = parts.get(p).size();
+        }
+        return offsets;
+    }
+
+    private static int countBefore(List<String> part, Comparator<? super String> order, String key) {
+        int low = 0;
+        int high = part.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (order.compare(part.get(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class Walk implements Iterator<String> {
+        private final List<? extends List<String>> parts;
+        private final Comparator<? super String> order;
+        private final int[] offsets;
+        private final String[] heads;
+
+        private Walk(List<? extends List<String>> parts, Comparator<? super String> order, int[] offsets) {
+            this.parts = parts;
+            this.order = order;
+            this.offsets = offsets;
+            this.heads = new String[parts.size()];
+            for (int p = 0; p < heads.length; p++) {
+                heads[p] = head(p);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            for (String head : heads) {
+                if (head != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String next() {
+            int least = -1;
+            for (int p = 0; p < heads.length; p++) {
+                if (heads[p] != null && (least < 0 || order.compare(heads[p], heads[least]) < 0)) {
+                    least = p;
+                }
+            }
+            if (least < 0) {
+                throw new NoSuchElementException();
+            }
+            String key = heads[least];
+            offsets[least]++;
+            heads[least] = head(least);
+            return key;
+        }
+
+        private String head(int part) {
+            List<String> keys = parts.get(part);
+            return offsets[part] < keys.size() ? keys.get(offsets[part]) : null;
+        }
+    }
+}
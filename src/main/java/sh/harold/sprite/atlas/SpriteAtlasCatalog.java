@@ -3,16 +3,21 @@ package sh.harold.sprite.atlas;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HexFormat;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,7 +26,13 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
@@ -31,18 +42,38 @@ import java.util.stream.Stream;
  * by chat components or GUIs.
  */
 public final class SpriteAtlasCatalog {
-    private static final String ATLAS_TOKEN = "/atlases/";
     private static final String TEXTURE_TOKEN = "/textures/";
     private static final String PNG_SUFFIX = ".png";
     private static final String JSON_SUFFIX = ".json";
     private static final String TEXTURE_INDEX_FILE = "textures.index";
+    private static final String SNAPSHOT_FILE = "catalog.snapshot";
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+    /**
+     * How long a snapshot edited by {@link #rebuildAtlases} waits to be written, so a run of edits is written
+     * once.
+     */
+    static final long SNAPSHOT_WRITE_DELAY_MILLIS = 2_000;
     private final Path cacheRoot;
     private final Logger logger;
+    private final CatalogInterner interner;
     private final AtomicReference<CatalogSnapshot> snapshot;
+    private volatile String snapshotSourceKey;
+    // What the snapshot file holds, as far as this catalog wrote or read it; guarded by the catalog's lock.
+    private CatalogSnapshot persisted;
+    private String persistedSourceKey;
+    private boolean writeScheduled;
+    private volatile Map<String, TexturePrefixIndex> textureIndex;
+    private volatile AssetIndex assetIndex;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
 
     public SpriteAtlasCatalog(Path cacheRoot, Logger logger) {
+        this(cacheRoot, logger, new CatalogInterner());
+    }
+
+    SpriteAtlasCatalog(Path cacheRoot, Logger logger, CatalogInterner interner) {
         this.cacheRoot = Objects.requireNonNull(cacheRoot, "cacheRoot");
         this.logger = Objects.requireNonNull(logger, "logger");
+        this.interner = Objects.requireNonNull(interner, "interner");
         this.snapshot = new AtomicReference<>(CatalogSnapshot.empty());
     }
 
@@ -58,50 +89,267 @@ public final class SpriteAtlasCatalog {
         return snapshot.get();
     }
 
-    public void rebuild(JsonObject assetIndexJson) throws IOException {
-        CatalogSnapshot built = buildSnapshot(assetIndexJson);
-        snapshot.set(built);
+    /**
+     * Registers {@code listener} to be told about every snapshot published from now on whose content differs
+     * from the one it replaces.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(Objects.requireNonNull(listener, "listener"));
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns whether the published snapshot was built from inputs with the given source key.
+     */
+    public boolean isCurrent(String sourceKey) {
+        return sourceKey != null && sourceKey.equals(snapshotSourceKey);
+    }
+
+    /**
+     * Publishes the persisted snapshot if it was written for {@code sourceKey}.
+     *
+     * @return whether a snapshot was restored
+     */
+    public synchronized boolean restoreSnapshot(String sourceKey) {
+        Path snapshotPath = cacheRoot.resolve(SNAPSHOT_FILE);
+        if (sourceKey == null || !Files.exists(snapshotPath)) {
+            return false;
+        }
+        try {
+            CatalogSnapshot restored = CatalogSnapshotCodec.read(snapshotPath, sourceKey, interner);
+            if (restored == null) {
+                return false;
+            }
+            persisted = install(restored);
+            persistedSourceKey = sourceKey;
+            snapshotSourceKey = sourceKey;
+            textureIndex = null;
+            assetIndex = null;
+            logger.info("Restored " + restored.atlases().size() + " atlases with " + restored.totalSprites()
+                + " sprites from catalog snapshot.");
+            return true;
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to read catalog snapshot; rebuilding from cache.", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Rebuilds the catalog and, when {@code sourceKey} is known, persists the result so the next start
+     * can restore it directly.
+     */
+    public synchronized void rebuild(AssetIndex assetIndex, String sourceKey) throws IOException {
+        CatalogSnapshot built = publish(buildSnapshot(assetIndex), sourceKey, false);
         logger.info("Loaded " + built.atlases().size() + " atlases with " + built.totalSprites() + " sprites.");
     }
 
-    private CatalogSnapshot buildSnapshot(JsonObject assetIndexJson) throws IOException {
-        JsonObject objects = assetIndexJson.getAsJsonObject("objects");
-        if (objects == null) {
-            return CatalogSnapshot.empty();
+    /**
+     * Re-expands only the atlases at {@code atlasPaths}, relative to the cache root, and publishes a snapshot
+     * that reuses every other entry. Atlases whose files were removed are dropped; ones that no longer parse
+     * keep their previous entry. Directory sources resolve against the texture index of the last full build,
+     * or the cached {@code textures.index} after a snapshot restore. Texture hashes likewise come from the last
+     * full build's asset index; after a restore, {@code storedAssetIndex} reads the one stored for this catalog's
+     * version when the snapshot is first edited. The edited snapshot is written
+     * {@link #SNAPSHOT_WRITE_DELAY_MILLIS} after the first unwritten edit, or on {@link #flushSnapshot()}.
+     *
+     * @return the number of atlases that were rebuilt or removed
+     */
+    public synchronized int rebuildAtlases(Collection<String> atlasPaths, String sourceKey,
+                                           Supplier<AssetIndex> storedAssetIndex) throws IOException {
+        Map<String, TexturePrefixIndex> texturesByNamespace = textureIndex;
+        if (texturesByNamespace == null) {
+            texturesByNamespace = buildTextureIndex(resolveTexturePaths(List.of()));
+            textureIndex = texturesByNamespace;
+        }
+        AssetIndex hashes = assetIndex;
+        if (hashes == null) {
+            hashes = Objects.requireNonNullElseGet(storedAssetIndex.get(), AssetIndex::empty);
+            assetIndex = hashes;
+        }
+
+        Map<String, AtlasEntry> atlases = new LinkedHashMap<>(snapshot.get().atlasMap());
+        List<AtlasDraft> drafts = new ArrayList<>();
+        int changed = 0;
+        for (String atlasPath : atlasPaths) {
+            String atlasId = atlasIdFromPath(atlasPath);
+            if (!Files.exists(cacheRoot.resolve(atlasPath))) {
+                changed += atlases.remove(atlasId) != null ? 1 : 0;
+                continue;
+            }
+            try {
+                AtlasDraft draft = buildAtlasDraft(atlasPath, texturesByNamespace);
+                atlases.remove(atlasId);
+                if (draft != null) {
+                    drafts.add(draft);
+                }
+                changed++;
+            } catch (JsonParseException | IllegalStateException ex) {
+                logger.warning("Atlas " + atlasId + " could not be parsed; keeping its previous entry. " + ex.getMessage());
+            }
+        }
+        if (changed == 0) {
+            return 0;
+        }
+
+        // Edited atlases bind to the shared table, which only grows when the edit introduced new keys.
+        SpriteSymbolTable symbols = interner.symbolsFor(spriteKeysOf(drafts));
+        for (AtlasDraft draft : drafts) {
+            atlases.put(draft.atlasId(), draft.build(symbols, hashes));
         }
+        publish(snapshot.get().withAtlases(new ArrayList<>(atlases.values())), sourceKey, true);
+        return changed;
+    }
+
+    /**
+     * Installs {@code snapshotToPublish} and persists it for {@code sourceKey}, right away or, with
+     * {@code deferWrite}, after {@link #SNAPSHOT_WRITE_DELAY_MILLIS} together with whatever was published since.
+     */
+    private CatalogSnapshot publish(CatalogSnapshot snapshotToPublish, String sourceKey, boolean deferWrite) {
+        CatalogSnapshot built = install(snapshotToPublish);
+        snapshotSourceKey = sourceKey;
+        if (!deferWrite) {
+            persist();
+        } else if (!writeScheduled) {
+            writeScheduled = true;
+            CompletableFuture.runAsync(this::flushSnapshot,
+                CompletableFuture.delayedExecutor(SNAPSHOT_WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS));
+        }
+        return built;
+    }
 
-        var pathToHash = new LinkedHashMap<String, String>();
-        for (var entry : objects.entrySet()) {
-            var value = entry.getValue().getAsJsonObject();
-            if (value.has("hash")) {
-                pathToHash.put(entry.getKey(), value.get("hash").getAsString());
+    /**
+     * Writes the published snapshot if an edit left it unwritten, without waiting for the scheduled write.
+     */
+    public synchronized void flushSnapshot() {
+        writeScheduled = false;
+        persist();
+    }
+
+    // When the published snapshot is the one already on disk for the same source key, the file is left as it is.
+    private void persist() {
+        CatalogSnapshot current = snapshot.get();
+        String sourceKey = snapshotSourceKey;
+        if (sourceKey == null || (current == persisted && sourceKey.equals(persistedSourceKey))) {
+            return;
+        }
+        try {
+            CatalogSnapshotCodec.write(cacheRoot.resolve(SNAPSHOT_FILE), current, sourceKey);
+            persisted = current;
+            persistedSourceKey = sourceKey;
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to persist catalog snapshot", ex);
+        }
+    }
+
+    /**
+     * Interns and publishes {@code candidate}, stamping it with a new generation and notifying listeners. When
+     * it holds exactly the atlases already published, the published snapshot is kept instead. Callers hold the
+     * catalog's lock, so listeners see generations in order.
+     */
+    private CatalogSnapshot install(CatalogSnapshot candidate) {
+        CatalogSnapshot previous = snapshot.get();
+        CatalogSnapshot interned = interner.intern(candidate);
+        CatalogDiff diff = CatalogDiff.between(previous, interned);
+        if (diff.isEmpty()) {
+            return previous;
+        }
+        CatalogSnapshot published = interned.withGeneration(GENERATIONS.incrementAndGet(), fingerprint(interned.atlases()));
+        snapshot.set(published);
+        for (Listener listener : listeners) {
+            try {
+                listener.catalogChanged(previous, published, diff);
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Catalog listener failed", ex);
             }
         }
+        return published;
+    }
 
-        Collection<String> texturePaths = resolveTexturePaths(pathToHash.keySet());
-        Map<String, List<String>> texturesByNamespace = buildTextureIndex(texturePaths);
+    // Combines the digests each atlas computed when it was built, so publishing reads no sprite key.
+    private static String fingerprint(List<AtlasEntry> atlases) {
+        MessageDigest digest = sha1();
+        for (AtlasEntry atlas : atlases) {
+            digest.update(atlas.digest().getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
 
-        List<AtlasEntry> atlasEntries = new ArrayList<>();
-        for (String path : discoverAtlasPaths()) {
-            AtlasEntry entry = buildAtlasEntry(path, texturesByNamespace);
-            if (entry != null) {
-                atlasEntries.add(entry);
+    // Covers what sprite consumers can observe: the atlas id, group ids, stored sprite keys and, for paletted
+    // sequences, the bases and suffixes their keys are generated from.
+    private static String digest(String atlasId, List<SpriteGroup> groups) {
+        MessageDigest digest = sha1();
+        digest.update(atlasId.getBytes(StandardCharsets.UTF_8));
+        for (SpriteGroup group : groups) {
+            digest.update((byte) 1);
+            digest.update(group.id().getBytes(StandardCharsets.UTF_8));
+            for (String sprite : GroupSprites.plainPart(group.sprites())) {
+                digest.update((byte) 0);
+                digest.update(sprite.getBytes(StandardCharsets.UTF_8));
+            }
+            for (PalettedSprites sequence : GroupSprites.palettedParts(group.sprites())) {
+                digest.update((byte) 2);
+                for (String base : sequence.bases()) {
+                    digest.update((byte) 0);
+                    digest.update(base.getBytes(StandardCharsets.UTF_8));
+                }
+                digest.update((byte) 3);
+                for (String suffix : sequence.suffixes()) {
+                    digest.update((byte) 0);
+                    digest.update(suffix.getBytes(StandardCharsets.UTF_8));
+                }
             }
         }
+        return HexFormat.of().formatHex(digest.digest());
+    }
 
-        atlasEntries.sort(Comparator.comparing(AtlasEntry::atlasId));
-        Map<String, AtlasEntry> atlasById = new LinkedHashMap<>();
-        for (AtlasEntry entry : atlasEntries) {
-            atlasById.put(entry.atlasId(), entry);
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 digest unavailable", ex);
         }
+    }
 
-        int totalSprites = atlasEntries.stream().mapToInt(AtlasEntry::spriteCount).sum();
-        return new CatalogSnapshot(Collections.unmodifiableList(atlasEntries),
-            Collections.unmodifiableMap(atlasById),
-            totalSprites);
+    private CatalogSnapshot buildSnapshot(AssetIndex assetIndex) throws IOException {
+        Collection<String> texturePaths = resolveTexturePaths(assetIndex.paths());
+        Map<String, TexturePrefixIndex> texturesByNamespace = buildTextureIndex(texturePaths);
+        textureIndex = texturesByNamespace;
+        this.assetIndex = assetIndex;
+
+        // Atlases only share the read-only texture index, so each one is parsed and expanded independently;
+        // CatalogSnapshot.of restores atlasId order whatever order they finish in.
+        List<AtlasDraft> drafts;
+        try {
+            drafts = discoverAtlasPaths().parallelStream()
+                .map(path -> buildAtlasDraftUnchecked(path, texturesByNamespace))
+                .filter(Objects::nonNull)
+                .toList();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        SpriteSymbolTable symbols = interner.symbolsFor(spriteKeysOf(drafts));
+        List<AtlasEntry> atlasEntries = drafts.parallelStream()
+            .map(draft -> draft.build(symbols, assetIndex))
+            .toList();
+
+        return CatalogSnapshot.of(atlasEntries);
+    }
+
+    private static List<String> spriteKeysOf(List<AtlasDraft> drafts) {
+        List<String> spriteKeys = new ArrayList<>();
+        for (AtlasDraft draft : drafts) {
+            for (GroupBuilder group : draft.groups()) {
+                spriteKeys.addAll(group.spriteKeys());
+            }
+        }
+        return spriteKeys;
     }
 
-    private Collection<String> resolveTexturePaths(Set<String> assetIndexPaths) {
+    private Collection<String> resolveTexturePaths(List<String> assetIndexPaths) {
         Path textureIndexPath = cacheRoot.resolve(TEXTURE_INDEX_FILE);
         if (Files.exists(textureIndexPath)) {
             try {
@@ -124,8 +372,8 @@ public final class SpriteAtlasCatalog {
         return assetIndexPaths;
     }
 
-    private Map<String, List<String>> buildTextureIndex(Collection<String> paths) {
-        var texturesByNamespace = new LinkedHashMap<String, List<String>>();
+    private Map<String, TexturePrefixIndex> buildTextureIndex(Collection<String> paths) {
+        var pathsByNamespace = new LinkedHashMap<String, List<String>>();
         for (String path : paths) {
             if (!path.contains(TEXTURE_TOKEN) || !path.endsWith(PNG_SUFFIX)) {
                 continue;
@@ -135,20 +383,26 @@ public final class SpriteAtlasCatalog {
                 continue;
             }
             var namespace = path.substring(0, namespaceEnd);
-            texturesByNamespace.computeIfAbsent(namespace, key -> new ArrayList<>()).add(path);
+            pathsByNamespace.computeIfAbsent(namespace, key -> new ArrayList<>()).add(path);
         }
 
-        for (List<String> textures : texturesByNamespace.values()) {
-            textures.sort(String::compareTo);
-        }
+        var texturesByNamespace = new LinkedHashMap<String, TexturePrefixIndex>();
+        pathsByNamespace.forEach((namespace, textures) -> texturesByNamespace.put(namespace, TexturePrefixIndex.of(textures)));
         return texturesByNamespace;
     }
 
-    private AtlasEntry buildAtlasEntry(String atlasPath, Map<String, List<String>> texturesByNamespace) throws IOException {
+    private AtlasDraft buildAtlasDraftUnchecked(String atlasPath, Map<String, TexturePrefixIndex> texturesByNamespace) {
+        try {
+            return buildAtlasDraft(atlasPath, texturesByNamespace);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to build atlas " + atlasPath, ex);
+        }
+    }
+
+    private AtlasDraft buildAtlasDraft(String atlasPath, Map<String, TexturePrefixIndex> texturesByNamespace) throws IOException {
         var namespace = namespaceFromPath(atlasPath);
         var atlasFile = atlasPath.substring(atlasPath.lastIndexOf('/') + 1);
-        var atlasName = atlasFile.substring(0, atlasFile.length() - ".json".length());
-        var atlasId = namespace + ":" + atlasName;
+        var atlasId = atlasIdFromPath(atlasPath);
 
         Path localFile = cacheRoot.resolve(atlasPath);
         if (!Files.exists(localFile)) {
@@ -167,39 +421,25 @@ public final class SpriteAtlasCatalog {
         }
 
         var groups = new TreeMap<String, GroupBuilder>();
-        List<String> textures = texturesByNamespace.getOrDefault(namespace, List.of());
+        var uses = new AtlasTextures.Builder();
+        TexturePrefixIndex textures = texturesByNamespace.getOrDefault(namespace, TexturePrefixIndex.EMPTY);
 
         for (JsonElement sourceElement : sourcesElement.getAsJsonArray()) {
             var source = sourceElement.getAsJsonObject();
             var type = source.get("type").getAsString();
             switch (type) {
                 case String t when t.endsWith(":directory") ->
-                    expandDirectorySource(namespace, source, textures, groups);
+                    expandDirectorySource(namespace, source, textures, groups, uses);
                 case String t when t.endsWith(":single") ->
-                    expandSingleSource(source, groups);
+                    expandSingleSource(source, groups, uses);
                 case String t when t.endsWith(":paletted_permutations") ->
-                    expandPalettedSource(source, groups);
+                    expandPalettedSource(source, groups, uses);
                 default ->
                     logger.fine(() -> "Ignoring unsupported atlas source type " + type + " in " + atlasId);
             }
         }
 
-        List<SpriteGroup> spriteGroups = new ArrayList<>();
-        for (GroupBuilder builder : groups.values()) {
-            spriteGroups.add(builder.build());
-        }
-        spriteGroups.sort(Comparator.comparing(SpriteGroup::id));
-
-        Map<String, SpriteGroup> groupMap = new LinkedHashMap<>();
-        for (SpriteGroup group : spriteGroups) {
-            groupMap.put(group.id(), group);
-        }
-
-        int spriteCount = spriteGroups.stream().mapToInt(SpriteGroup::size).sum();
-        return new AtlasEntry(atlasId, namespace, atlasFile,
-            Collections.unmodifiableList(spriteGroups),
-            Collections.unmodifiableMap(groupMap),
-            spriteCount);
+        return new AtlasDraft(atlasId, namespace, atlasFile, List.copyOf(groups.values()), uses);
     }
 
     private List<String> discoverAtlasPaths() throws IOException {
@@ -212,7 +452,7 @@ public final class SpriteAtlasCatalog {
                 .map(cacheRoot::relativize)
                 .map(Path::toString)
                 .map(path -> path.replace('\\', '/'))
-                .filter(path -> path.contains(ATLAS_TOKEN) && path.endsWith(JSON_SUFFIX))
+                .filter(AtlasCacheStore::isCachedAtlasPath)
                 .sorted()
                 .toList();
         }
@@ -221,68 +461,97 @@ public final class SpriteAtlasCatalog {
     private void expandDirectorySource(
         String namespace,
         JsonObject source,
-        List<String> textures,
-        Map<String, GroupBuilder> groups
+        TexturePrefixIndex textures,
+        Map<String, GroupBuilder> groups,
+        AtlasTextures.Builder uses
     ) {
         String prefix = source.has("prefix") ? source.get("prefix").getAsString() : "";
         String folder = source.get("source").getAsString();
         String folderPath = normalizeTexturesPath(namespace, folder);
 
-        for (String texturePath : textures) {
-            if (!texturePath.startsWith(folderPath)) {
-                continue;
-            }
+        for (String texturePath : textures.withPrefix(folderPath)) {
             String relativeToFolder = texturePath.substring(folderPath.length());
             if (!relativeToFolder.endsWith(PNG_SUFFIX)) {
                 continue;
             }
             String spriteKey = prefix + relativeToFolder.substring(0, relativeToFolder.length() - PNG_SUFFIX.length());
-            addSprite(groups, spriteKey);
+            uses.add(texturePath, addSprite(groups, spriteKey), false);
         }
     }
 
-    private void expandSingleSource(JsonObject source, Map<String, GroupBuilder> groups) {
+    private void expandSingleSource(JsonObject source, Map<String, GroupBuilder> groups, AtlasTextures.Builder uses) {
         String resource = source.get("resource").getAsString();
         String spriteKey = stripNamespace(resource);
-        addSprite(groups, spriteKey);
+        uses.add(SpriteReverseIndex.texturePath(resource), addSprite(groups, spriteKey), false);
     }
 
-    private void expandPalettedSource(JsonObject source, Map<String, GroupBuilder> groups) {
+    private void expandPalettedSource(JsonObject source, Map<String, GroupBuilder> groups, AtlasTextures.Builder uses) {
         JsonObject permutations = source.getAsJsonObject("permutations");
         JsonArray textures = source.getAsJsonArray("textures");
         if (permutations == null || permutations.entrySet().isEmpty() || textures == null) {
             return;
         }
 
-        List<String> suffixes = new ArrayList<>();
+        // Suffix to palette texture, in suffix order.
+        var palettes = new TreeMap<String, String>();
         for (Map.Entry<String, JsonElement> entry : permutations.entrySet()) {
             String name = entry.getKey();
             if (name == null || (name = name.trim()).isEmpty()) {
                 continue;
             }
-            suffixes.add(name);
+            JsonElement palette = entry.getValue();
+            palettes.putIfAbsent(name.replace('\\', '/'),
+                palette.isJsonPrimitive() ? SpriteReverseIndex.texturePath(palette.getAsString()) : "");
         }
-        if (suffixes.isEmpty()) {
+        if (palettes.isEmpty()) {
             return;
         }
+        JsonElement paletteKey = source.get("palette_key");
+        String paletteKeyPath = paletteKey != null && paletteKey.isJsonPrimitive()
+            ? SpriteReverseIndex.texturePath(paletteKey.getAsString())
+            : "";
 
+        // Base key to base texture, split by the group each base falls in.
+        var basesByGroup = new TreeMap<String, TreeMap<String, String>>();
         for (JsonElement textureEl : textures) {
-            String base = stripNamespace(textureEl.getAsString());
-            for (String suffix : suffixes) {
-                addSprite(groups, base + "_" + suffix, base);
+            String base = stripNamespace(textureEl.getAsString()).replace('\\', '/');
+            basesByGroup.computeIfAbsent(deriveGroupKey(base), key -> new TreeMap<>())
+                .putIfAbsent(base, SpriteReverseIndex.texturePath(textureEl.getAsString()));
+        }
+
+        String[] suffixes = palettes.keySet().toArray(String[]::new);
+        String[] paletteTextures = palettes.values().toArray(String[]::new);
+        basesByGroup.forEach((groupKey, bases) -> {
+            PalettedSprites sequence = PalettedSprites.of(bases.keySet().toArray(String[]::new),
+                bases.values().toArray(String[]::new), suffixes, paletteTextures, paletteKeyPath);
+            if (groups.computeIfAbsent(groupKey, GroupBuilder::new).addPaletted(sequence)) {
+                return;
             }
-        }
+            // Another source already generates some of these keys, so list them one by one instead.
+            bases.forEach((base, basePath) -> palettes.forEach((suffix, palettePath) -> {
+                String spriteKey = addSprite(groups, base + "_" + suffix, base);
+                for (String texturePath : List.of(basePath, palettePath, paletteKeyPath)) {
+                    if (!texturePath.isEmpty()) {
+                        uses.add(texturePath, spriteKey, true);
+                    }
+                }
+            }));
+        });
     }
 
-    private void addSprite(Map<String, GroupBuilder> groups, String spriteKey) {
-        addSprite(groups, spriteKey, null);
+    private String addSprite(Map<String, GroupBuilder> groups, String spriteKey) {
+        return addSprite(groups, spriteKey, null);
     }
 
-    private void addSprite(Map<String, GroupBuilder> groups, String spriteKey, String groupOverride) {
+    /**
+     * @return the key as stored, with backslashes turned into slashes
+     */
+    private String addSprite(Map<String, GroupBuilder> groups, String spriteKey, String groupOverride) {
         String cleanedKey = spriteKey.replace('\\', '/');
         String groupKeySource = groupOverride != null ? groupOverride : cleanedKey;
         String groupKey = deriveGroupKey(groupKeySource);
         groups.computeIfAbsent(groupKey, GroupBuilder::new).add(cleanedKey);
+        return cleanedKey;
     }
 
     private String deriveGroupKey(String spriteKey) {
@@ -313,6 +582,11 @@ public final class SpriteAtlasCatalog {
         return value;
     }
 
+    private String atlasIdFromPath(String atlasPath) {
+        var atlasFile = atlasPath.substring(atlasPath.lastIndexOf('/') + 1);
+        return namespaceFromPath(atlasPath) + ":" + atlasFile.substring(0, atlasFile.length() - JSON_SUFFIX.length());
+    }
+
     private String namespaceFromPath(String path) {
         int slash = path.indexOf('/');
         if (slash <= 0) {
@@ -321,9 +595,86 @@ public final class SpriteAtlasCatalog {
         return path.substring(0, slash);
     }
 
-    public record CatalogSnapshot(List<AtlasEntry> atlases, Map<String, AtlasEntry> atlasMap, int totalSprites) {
+    /**
+     * Told when a catalog publishes a snapshot with different content, on the thread that published it.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void catalogChanged(CatalogSnapshot previous, CatalogSnapshot current, CatalogDiff diff);
+    }
+
+    /**
+     * One published version of the catalog. The search and reverse indexes are built with the snapshot, so
+     * lookups always see exactly the atlases they are published with.
+     *
+     * @param generation  increases every time any catalog publishes different content, so it identifies a
+     *                    snapshot across versions; {@code 0} for snapshots that were never published
+     * @param fingerprint SHA-1 over the atlases' {@link AtlasEntry#digest() digests}, stable across restarts;
+     *                    empty for snapshots that were never published
+     */
+    public record CatalogSnapshot(
+        List<AtlasEntry> atlases,
+        Map<String, AtlasEntry> atlasMap,
+        int totalSprites,
+        SpriteSearchIndex searchIndex,
+        SpriteReverseIndex reverseIndex,
+        long generation,
+        String fingerprint
+    ) {
         public static CatalogSnapshot empty() {
-            return new CatalogSnapshot(List.of(), Map.of(), 0);
+            return new CatalogSnapshot(List.of(), Map.of(), 0, SpriteSearchIndex.EMPTY, SpriteReverseIndex.EMPTY, 0, "");
+        }
+
+        public static CatalogSnapshot of(List<AtlasEntry> atlases) {
+            List<AtlasEntry> sorted = new ArrayList<>(atlases);
+            sorted.sort(Comparator.comparing(AtlasEntry::atlasId));
+            return of(sorted, SpriteSearchIndex.build(sorted));
+        }
+
+        /**
+         * Builds a snapshot around a search index already built for equal atlases.
+         */
+        static CatalogSnapshot of(List<AtlasEntry> atlases, SpriteSearchIndex searchIndex) {
+            return of(atlases, searchIndex, null);
+        }
+
+        /**
+         * Builds a snapshot around search and reverse indexes already built for equal atlases, in order of id.
+         */
+        static CatalogSnapshot of(List<AtlasEntry> atlases, SpriteSearchIndex searchIndex,
+                                  SpriteReverseIndex reverseIndex) {
+            List<AtlasEntry> sorted = new ArrayList<>(atlases);
+            sorted.sort(Comparator.comparing(AtlasEntry::atlasId));
+            Map<String, AtlasEntry> atlasById = new LinkedHashMap<>();
+            for (AtlasEntry entry : sorted) {
+                atlasById.put(entry.atlasId(), entry);
+            }
+
+            int totalSprites = sorted.stream().mapToInt(AtlasEntry::spriteCount).sum();
+            List<AtlasEntry> unmodifiableAtlases = Collections.unmodifiableList(sorted);
+            return new CatalogSnapshot(unmodifiableAtlases,
+                Collections.unmodifiableMap(atlasById),
+                totalSprites,
+                searchIndex,
+                reverseIndex == null
+                    ? SpriteReverseIndex.build(unmodifiableAtlases)
+                    : reverseIndex.withAtlases(unmodifiableAtlases),
+                0,
+                "");
+        }
+
+        /**
+         * Builds a snapshot of {@code atlases} whose search index reuses this snapshot's parts for every atlas
+         * that is unchanged, so an edit only indexes the atlases it touched.
+         */
+        CatalogSnapshot withAtlases(List<AtlasEntry> atlases) {
+            List<AtlasEntry> sorted = new ArrayList<>(atlases);
+            sorted.sort(Comparator.comparing(AtlasEntry::atlasId));
+            return of(sorted, SpriteSearchIndex.build(sorted, searchIndex));
+        }
+
+        CatalogSnapshot withGeneration(long generation, String fingerprint) {
+            return new CatalogSnapshot(atlases, atlasMap, totalSprites, searchIndex, reverseIndex, generation, fingerprint);
         }
 
         public AtlasEntry atlas(String atlasId) {
@@ -341,14 +692,80 @@ public final class SpriteAtlasCatalog {
         }
     }
 
+    /**
+     * One atlas and its sprite groups. {@link #sprites()} lists every sprite of the atlas in case-insensitive
+     * order and answers {@code contains} without decoding the list (see {@link AtlasSpriteIndex}); it is derived
+     * from the groups, so equality only considers the atlas identity, its groups and the {@link AtlasTextures}
+     * they were built from.
+     *
+     * @param digest SHA-1 over the atlas id, group ids and sprite keys, computed once when the atlas is built;
+     *               paletted sequences contribute their inputs rather than every generated key
+     */
     public record AtlasEntry(
         String atlasId,
         String namespace,
         String fileName,
         List<SpriteGroup> groups,
         Map<String, SpriteGroup> groupMap,
-        int spriteCount
+        List<String> sprites,
+        int spriteCount,
+        AtlasTextures textures,
+        String digest
     ) {
+        public static AtlasEntry of(String atlasId, String namespace, String fileName, List<SpriteGroup> groups) {
+            return of(atlasId, namespace, fileName, groups, sprites -> AtlasTextures.EMPTY);
+        }
+
+        /**
+         * Builds an atlas whose texture index refers to sprite positions, so it is created from the sorted sprites.
+         */
+        static AtlasEntry of(String atlasId, String namespace, String fileName, List<SpriteGroup> groups,
+                             Function<AtlasSpriteIndex, AtlasTextures> textures) {
+            List<SpriteGroup> sorted = new ArrayList<>(groups);
+            sorted.sort(Comparator.comparing(SpriteGroup::id));
+            Map<String, SpriteGroup> groupMap = new LinkedHashMap<>();
+            for (SpriteGroup group : sorted) {
+                groupMap.put(group.id(), group);
+            }
+
+            List<SpriteGroup> unmodifiableGroups = Collections.unmodifiableList(sorted);
+            int spriteCount = sorted.stream().mapToInt(SpriteGroup::size).sum();
+            AtlasSpriteIndex sprites = AtlasSpriteIndex.of(unmodifiableGroups);
+            return new AtlasEntry(atlasId, namespace, fileName,
+                unmodifiableGroups,
+                Collections.unmodifiableMap(groupMap),
+                sprites,
+                spriteCount,
+                textures.apply(sprites),
+                SpriteAtlasCatalog.digest(atlasId, unmodifiableGroups));
+        }
+
+        public boolean containsSprite(String spriteKey) {
+            return sprites.contains(spriteKey);
+        }
+
+        /**
+         * Returns the sprite at {@code position} among the atlas's stored sprites, as texture uses address them.
+         */
+        String storedSprite(int position) {
+            return sprites instanceof AtlasSpriteIndex index ? index.stored(position) : sprites.get(position);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof AtlasEntry other
+                && atlasId.equals(other.atlasId)
+                && namespace.equals(other.namespace)
+                && fileName.equals(other.fileName)
+                && groups.equals(other.groups)
+                && textures.equals(other.textures);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(atlasId, namespace, fileName, groups, textures);
+        }
+
         public String displayName() {
             return isMinecraft() ? simpleName() : atlasId;
         }
@@ -369,23 +786,73 @@ public final class SpriteAtlasCatalog {
         }
     }
 
+    /**
+     * A group of sprite keys in sorted order. Groups built by the catalog keep their keys as ids into the
+     * {@link SpriteSymbolTable} shared by every version and decode them lazily through {@link #sprites()};
+     * paletted permutations are generated from their inputs as they are read.
+     */
     public record SpriteGroup(String id, List<String> sprites) {
         public int size() {
             return sprites.size();
         }
     }
 
-    private record GroupBuilder(String key, Set<String> spriteKeys) {
+    /**
+     * A group being expanded: keys listed by directory and single sources, plus paletted sequences whose keys
+     * are never listed. A key a sequence generates is not listed again.
+     */
+    private record GroupBuilder(String key, Set<String> spriteKeys, List<PalettedSprites> paletted) {
         private GroupBuilder(String key) {
-            this(key, new TreeSet<>());
+            this(key, new TreeSet<>(), new ArrayList<>());
         }
 
         private void add(String spriteKey) {
+            for (PalettedSprites sequence : paletted) {
+                if (sequence.contains(spriteKey)) {
+                    return;
+                }
+            }
             spriteKeys.add(spriteKey);
         }
 
-        private SpriteGroup build() {
-            return new SpriteGroup(key, List.copyOf(spriteKeys));
+        /**
+         * @return whether the sequence was added; it is not when it shares a key with another sequence
+         */
+        private boolean addPaletted(PalettedSprites sequence) {
+            for (PalettedSprites existing : paletted) {
+                for (String spriteKey : sequence) {
+                    if (existing.contains(spriteKey)) {
+                        return false;
+                    }
+                }
+            }
+            paletted.add(sequence);
+            spriteKeys.removeIf(sequence::contains);
+            return true;
+        }
+
+        private SpriteGroup build(SpriteSymbolTable symbols) {
+            int[] ids = new int[spriteKeys.size()];
+            int index = 0;
+            for (String spriteKey : spriteKeys) {
+                ids[index++] = symbols.id(spriteKey);
+            }
+            return new SpriteGroup(key, GroupSprites.of(symbols.slice(ids), paletted));
+        }
+    }
+
+    /**
+     * An atlas whose sources have been expanded but whose sprite keys are not yet bound to a symbol table, which
+     * is only extended once every atlas is known.
+     */
+    private record AtlasDraft(String atlasId, String namespace, String fileName, List<GroupBuilder> groups,
+                              AtlasTextures.Builder textures) {
+        private AtlasEntry build(SpriteSymbolTable symbols, AssetIndex assetIndex) {
+            List<SpriteGroup> spriteGroups = new ArrayList<>(groups.size());
+            for (GroupBuilder builder : groups) {
+                spriteGroups.add(builder.build(symbols));
+            }
+            return AtlasEntry.of(atlasId, namespace, fileName, spriteGroups, sprites -> textures.build(sprites, assetIndex));
         }
     }
 }
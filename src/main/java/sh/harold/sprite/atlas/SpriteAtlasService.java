@@ -1,6 +1,5 @@
 package sh.harold.sprite.atlas;
 
-import com.google.gson.JsonObject;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Bukkit;
@@ -9,43 +8,60 @@ import org.bukkit.plugin.java.JavaPlugin;
 import sh.harold.sprite.config.SpriteConfig;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Coordinates atlas downloads with the in-memory sprite catalog.
+ * Coordinates atlas downloads with the in-memory sprite catalogs of every loaded version.
  */
 public final class SpriteAtlasService {
     private final JavaPlugin plugin;
     private final AtlasCacheService cacheService;
-    private final SpriteAtlasCatalog catalog;
-    private final String serverVersion;
+    private final SpriteCatalogRegistry catalogs;
     private final SpriteConfig config;
     private final AtomicBoolean refreshInProgress = new AtomicBoolean(false);
+    private final List<AtlasCacheWatcher> watchers = new ArrayList<>();
     private final Logger logger;
 
     public SpriteAtlasService(
         JavaPlugin plugin,
         AtlasCacheService cacheService,
-        SpriteAtlasCatalog catalog,
-        String serverVersion,
+        SpriteCatalogRegistry catalogs,
         SpriteConfig config
     ) {
         this.plugin = Objects.requireNonNull(plugin, "plugin");
         this.cacheService = Objects.requireNonNull(cacheService, "cacheService");
-        this.catalog = Objects.requireNonNull(catalog, "catalog");
-        this.serverVersion = Objects.requireNonNull(serverVersion, "serverVersion");
+        this.catalogs = Objects.requireNonNull(catalogs, "catalogs");
         this.config = Objects.requireNonNull(config, "config");
         this.logger = plugin.getLogger();
+        for (String version : catalogs.versions()) {
+            catalogs.catalog(version).addListener((previous, current, diff) ->
+                callRefreshedEvent(version, previous, current, diff));
+        }
     }
 
-    public SpriteAtlasCatalog catalog() {
-        return catalog;
+    public SpriteCatalogRegistry catalogs() {
+        return catalogs;
     }
 
     public void refresh(CommandSender initiator) {
+        refresh(initiator, false);
+    }
+
+    /**
+     * Refreshes the atlas cache of every loaded version asynchronously and rebuilds each catalog whose
+     * inputs changed.
+     *
+     * @param verifyJar whether to fully rehash and re-extract the client jar instead of trusting the cache
+     */
+    public void refresh(CommandSender initiator, boolean verifyJar) {
         if (!refreshInProgress.compareAndSet(false, true)) {
             if (initiator != null) {
                 initiator.sendMessage(Component.text("Atlas refresh already running.", NamedTextColor.YELLOW));
@@ -54,50 +70,133 @@ public final class SpriteAtlasService {
         }
 
         if (initiator != null) {
-            initiator.sendMessage(Component.text("Refreshing sprite atlases...", NamedTextColor.GRAY));
+            initiator.sendMessage(Component.text(verifyJar
+                ? "Verifying client jar and refreshing sprite atlases..."
+                : "Refreshing sprite atlases...", NamedTextColor.GRAY));
         }
         logger.info("Starting sprite atlas refresh.");
 
         Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
             try {
-                JsonObject assetIndex = cacheService.refreshAtlases(serverVersion, config);
-                if (assetIndex == null) {
-                    notifyFailure(initiator, "Unable to resolve asset index for " + serverVersion + ".");
+                List<String> failed = new ArrayList<>();
+                for (String version : catalogs.versions()) {
+                    if (!refreshVersion(version, verifyJar)) {
+                        failed.add(version);
+                    }
+                }
+                if (failed.size() == catalogs.versions().size()) {
+                    notifyFailure(initiator, "Unable to resolve asset index for " + String.join(", ", failed) + ".");
                     return;
                 }
-
-                catalog.rebuild(assetIndex);
-                SpriteAtlasCatalog.CatalogSnapshot snapshot = catalog.snapshotOrEmpty();
-                notifySuccess(initiator, snapshot);
-            } catch (IOException ex) {
-                logger.log(Level.SEVERE, "Failed to rebuild sprite atlas catalog", ex);
-                notifyFailure(initiator, "Failed to rebuild atlas catalog. Check logs for details.");
+                notifySuccess(initiator, failed);
             } finally {
                 refreshInProgress.set(false);
             }
         });
     }
 
-    public void bootstrapFromCache() {
-        JsonObject cachedIndex = cacheService.readStoredAssetIndex();
-        if (cachedIndex == null) {
-            return;
+    private boolean refreshVersion(String version, boolean verifyJar) {
+        SpriteAtlasCatalog catalog = catalogs.catalog(version);
+        AssetIndex assetIndex = cacheService.refreshAtlases(version, config, verifyJar);
+        if (assetIndex == null) {
+            logger.warning("Unable to resolve asset index for " + version + ".");
+            return false;
         }
         try {
-            catalog.rebuild(cachedIndex);
-            logger.info("Loaded sprite catalog from cached asset index.");
+            String sourceKey = cacheService.cacheFingerprint(version);
+            if (catalog.isCurrent(sourceKey)) {
+                logger.info("Sprite catalog for " + version + " already matches the atlas cache; skipping rebuild.");
+            } else {
+                catalog.rebuild(assetIndex, sourceKey);
+            }
+            return true;
         } catch (IOException ex) {
-            logger.log(Level.WARNING, "Failed to rebuild catalog from cached asset index", ex);
+            logger.log(Level.SEVERE, "Failed to rebuild sprite atlas catalog for " + version, ex);
+            return false;
+        }
+    }
+
+    public void bootstrapFromCache() {
+        for (String version : catalogs.versions()) {
+            SpriteAtlasCatalog catalog = catalogs.catalog(version);
+            String sourceKey = cacheService.cacheFingerprint(version);
+            if (catalog.restoreSnapshot(sourceKey)) {
+                continue;
+            }
+            AssetIndex cachedIndex = cacheService.readStoredAssetIndex(version);
+            if (cachedIndex == null) {
+                continue;
+            }
+            try {
+                catalog.rebuild(cachedIndex, sourceKey);
+                logger.info("Loaded sprite catalog for " + version + " from cached asset index.");
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Failed to rebuild catalog for " + version + " from cached asset index", ex);
+            }
+        }
+    }
+
+    /**
+     * Starts watching each version's atlas cache when enabled in the config, so edited atlas files are
+     * rebuilt incrementally without a reload.
+     */
+    public void startWatching() {
+        if (!config.watchCache()) {
+            return;
+        }
+        for (String version : catalogs.versions()) {
+            Path root = cacheService.cacheDirFor(version);
+            try {
+                watchers.add(AtlasCacheWatcher.start(root, new CatalogUpdater(version), logger));
+                logger.info("Watching " + root.toAbsolutePath() + " for atlas changes.");
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Failed to watch atlas cache for " + version, ex);
+            }
+        }
+    }
+
+    public void shutdown() {
+        for (AtlasCacheWatcher watcher : watchers) {
+            try {
+                watcher.close();
+            } catch (IOException ex) {
+                logger.log(Level.FINE, "Failed to stop atlas cache watcher", ex);
+            }
+        }
+        watchers.clear();
+        // Edits still waiting to be written would otherwise make the next start rebuild from the cache.
+        for (String version : catalogs.versions()) {
+            catalogs.catalog(version).flushSnapshot();
+        }
+    }
+
+    private void callRefreshedEvent(String version, SpriteAtlasCatalog.CatalogSnapshot previous,
+                                    SpriteAtlasCatalog.CatalogSnapshot current, CatalogDiff diff) {
+        if (!plugin.isEnabled()) {
+            return;
         }
+        SpriteCatalogRefreshedEvent event = new SpriteCatalogRefreshedEvent(version, previous, current, diff);
+        Bukkit.getScheduler().runTask(plugin, () -> Bukkit.getPluginManager().callEvent(event));
     }
 
-    private void notifySuccess(CommandSender initiator, SpriteAtlasCatalog.CatalogSnapshot snapshot) {
+    private void notifySuccess(CommandSender initiator, List<String> failedVersions) {
+        SpriteAtlasCatalog.CatalogSnapshot snapshot = catalogs.primary().snapshotOrEmpty();
+        String summary = "Sprite atlas refresh complete (" + snapshot.atlases().size() + " atlases, "
+            + snapshot.totalSprites() + " sprites"
+            + (catalogs.versions().size() > 1 ? " for " + catalogs.primaryVersion() + "; "
+                + catalogs.versions().size() + " versions loaded" : "")
+            + ").";
         Bukkit.getScheduler().runTask(plugin, () -> {
-            logger.info("Sprite atlas refresh complete (" + snapshot.atlases().size() + " atlases, " + snapshot.totalSprites() + " sprites).");
+            logger.info(summary);
             if (initiator != null) {
-                initiator.sendMessage(Component.text(
-                    "Sprite atlas refresh complete (" + snapshot.atlases().size() + " atlases, " + snapshot.totalSprites() + " sprites).",
-                    NamedTextColor.GREEN));
+                initiator.sendMessage(Component.text(summary, NamedTextColor.GREEN));
+            }
+            if (!failedVersions.isEmpty()) {
+                String failure = "Failed to refresh " + String.join(", ", failedVersions) + ". Check logs for details.";
+                logger.warning(failure);
+                if (initiator != null) {
+                    initiator.sendMessage(Component.text(failure, NamedTextColor.RED));
+                }
             }
         });
     }
@@ -110,4 +209,50 @@ public final class SpriteAtlasService {
             }
         });
     }
+
+    /**
+     * Applies watched cache changes to one version's catalog on the watcher thread.
+     */
+    private final class CatalogUpdater implements AtlasCacheWatcher.Listener {
+        private final String version;
+
+        private CatalogUpdater(String version) {
+            this.version = version;
+        }
+
+        @Override
+        public void atlasesChanged(Set<String> atlasPaths) {
+            long started = System.nanoTime();
+            try {
+                int rebuilt = catalogs.catalog(version).rebuildAtlases(atlasPaths,
+                    cacheService.cacheFingerprint(version, atlasPaths),
+                    () -> cacheService.readStoredAssetIndex(version));
+                if (rebuilt > 0) {
+                    logger.info("Rebuilt " + rebuilt + " atlas" + (rebuilt == 1 ? "" : "es") + " for " + version + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms.");
+                }
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Failed to rebuild changed atlases for " + version, ex);
+            }
+        }
+
+        @Override
+        public void rescanRequired() {
+            // A refresh rewrites the shared indexes itself and has already rebuilt against the result.
+            SpriteAtlasCatalog catalog = catalogs.catalog(version);
+            String sourceKey = cacheService.cacheFingerprint(version);
+            if (catalog.isCurrent(sourceKey)) {
+                return;
+            }
+            AssetIndex assetIndex = cacheService.readStoredAssetIndex(version);
+            if (assetIndex == null) {
+                return;
+            }
+            try {
+                catalog.rebuild(assetIndex, sourceKey);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Failed to rebuild sprite catalog for " + version, ex);
+            }
+        }
+    }
 }
@@ -0,0 +1,62 @@
+package sh.harold.sprite.atlas;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+import java.util.Objects;
+
+/**
+ * Called on the main thread after a version's sprite catalog published different content, whether from a
+ * refresh, a snapshot restore or a watched cache edit. Events for one version arrive in generation order.
+ */
+public final class SpriteCatalogRefreshedEvent extends Event {
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final String version;
+    private final SpriteAtlasCatalog.CatalogSnapshot previous;
+    private final SpriteAtlasCatalog.CatalogSnapshot snapshot;
+    private final CatalogDiff diff;
+
+    public SpriteCatalogRefreshedEvent(
+        String version,
+        SpriteAtlasCatalog.CatalogSnapshot previous,
+        SpriteAtlasCatalog.CatalogSnapshot snapshot,
+        CatalogDiff diff
+    ) {
+        this.version = Objects.requireNonNull(version, "version");
+        this.previous = Objects.requireNonNull(previous, "previous");
+        this.snapshot = Objects.requireNonNull(snapshot, "snapshot");
+        this.diff = Objects.requireNonNull(diff, "diff");
+    }
+
+    /**
+     * The Minecraft version whose catalog changed.
+     */
+    public String version() {
+        return version;
+    }
+
+    public SpriteAtlasCatalog.CatalogSnapshot previous() {
+        return previous;
+    }
+
+    /**
+     * The snapshot that was published. The catalog may have moved on by the time the event is called.
+     */
+    public SpriteAtlasCatalog.CatalogSnapshot snapshot() {
+        return snapshot;
+    }
+
+    public CatalogDiff diff() {
+        return diff;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,60 @@
+package sh.harold.sprite.atlas;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Holds one {@link SpriteAtlasCatalog} per loaded Minecraft version: the server's own version first,
+ * followed by any additional versions served to clients behind protocol translation. The catalogs share a
+ * {@link CatalogInterner} so content common to several versions is stored once.
+ */
+public final class SpriteCatalogRegistry {
+    private final String primaryVersion;
+    private final Map<String, SpriteAtlasCatalog> catalogs;
+
+    public SpriteCatalogRegistry(AtlasCacheService cacheService, List<String> additionalVersions, Logger logger) {
+        Objects.requireNonNull(cacheService, "cacheService");
+        Objects.requireNonNull(logger, "logger");
+        this.primaryVersion = cacheService.primaryVersion();
+
+        CatalogInterner interner = new CatalogInterner();
+        Map<String, SpriteAtlasCatalog> byVersion = new LinkedHashMap<>();
+        byVersion.put(primaryVersion, new SpriteAtlasCatalog(cacheService.cacheDirFor(primaryVersion), logger, interner));
+        for (String version : additionalVersions) {
+            byVersion.putIfAbsent(version, new SpriteAtlasCatalog(cacheService.cacheDirFor(version), logger, interner));
+        }
+        this.catalogs = Collections.unmodifiableMap(byVersion);
+    }
+
+    public String primaryVersion() {
+        return primaryVersion;
+    }
+
+    public SpriteAtlasCatalog primary() {
+        return catalogs.get(primaryVersion);
+    }
+
+    /**
+     * Returns the catalog for {@code version}, the primary catalog when {@code version} is {@code null},
+     * or {@code null} when the version is not loaded.
+     */
+    public SpriteAtlasCatalog catalog(String version) {
+        return version == null ? primary() : catalogs.get(version);
+    }
+
+    /**
+     * Loaded versions, the server's own version first.
+     */
+    public List<String> versions() {
+        return new ArrayList<>(catalogs.keySet());
+    }
+
+    public boolean isPrimary(String version) {
+        return version == null || primaryVersion.equals(version);
+    }
+}
@@ -0,0 +1,251 @@
+package sh.harold.sprite.atlas;
+
+import net.kyori.adventure.key.Key;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.object.ObjectContents;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sprite lookups for other plugins, registered in Bukkit's {@code ServicesManager} for the server's own
+ * version. Answers come from the catalog's published snapshot. Each sprite resolves to one shared
+ * {@link SpriteHandle} carrying a ready-made sprite component, and handles are kept until their atlas changes,
+ * so looking the same sprite up again allocates nothing. Safe to call from any thread.
+ */
+public final class SpriteQueryService {
+    private final SpriteAtlasCatalog catalog;
+    private final Map<String, SpriteQueryService> versions;
+    private volatile View view = View.EMPTY;
+
+    public SpriteQueryService(SpriteCatalogRegistry catalogs) {
+        Objects.requireNonNull(catalogs, "catalogs");
+        this.catalog = catalogs.primary();
+        this.versions = new LinkedHashMap<>();
+        for (String version : catalogs.versions()) {
+            versions.put(version, catalogs.isPrimary(version)
+                ? this
+                : new SpriteQueryService(catalogs.catalog(version), versions));
+        }
+    }
+
+    private SpriteQueryService(SpriteAtlasCatalog catalog, Map<String, SpriteQueryService> versions) {
+        this.catalog = catalog;
+        this.versions = versions;
+    }
+
+    /**
+     * Returns the service answering for another loaded version, or {@code null} when it is not loaded.
+     */
+    public SpriteQueryService forVersion(String version) {
+        return versions.get(version);
+    }
+
+    /**
+     * The generation of the snapshot lookups are currently answered from.
+     */
+    public long generation() {
+        return view().generation();
+    }
+
+    /**
+     * Returns the handle of {@code spriteKey} in {@code atlasId}, or {@code null} when the atlas has no such
+     * sprite or its ids cannot form a sprite component. Atlases of the {@code minecraft} namespace may be named
+     * without it.
+     */
+    public SpriteHandle sprite(String atlasId, String spriteKey) {
+        AtlasHandles atlas = atlas(atlasId);
+        if (atlas == null || spriteKey == null) {
+            return null;
+        }
+        return atlas.lookup(spriteKey) instanceof SpriteHandle handle ? handle : null;
+    }
+
+    /**
+     * Returns whether the catalog lists {@code spriteKey} in {@code atlasId}. This is catalog membership: a
+     * listed sprite whose key is not a valid resource location exists, but {@link #sprite} returns {@code null}
+     * for it because it cannot be rendered.
+     */
+    public boolean exists(String atlasId, String spriteKey) {
+        AtlasHandles atlas = atlas(atlasId);
+        return atlas != null && spriteKey != null && atlas.lookup(spriteKey) != Lookup.ABSENT;
+    }
+
+    /**
+     * Returns the shared sprite component of {@code spriteKey} in {@code atlasId}, or {@code null} when the atlas
+     * has no such sprite.
+     */
+    public Component component(String atlasId, String spriteKey) {
+        SpriteHandle handle = sprite(atlasId, spriteKey);
+        return handle == null ? null : handle.component();
+    }
+
+    /**
+     * The groups of {@code atlasId} in sorted order, empty when the atlas is unknown. The list is the snapshot's
+     * own and is not copied.
+     */
+    public List<SpriteAtlasCatalog.SpriteGroup> groups(String atlasId) {
+        AtlasHandles atlas = atlas(atlasId);
+        return atlas == null ? List.of() : atlas.entry.groups();
+    }
+
+    /**
+     * The sorted sprite keys of one group, empty when the atlas or group is unknown.
+     */
+    public List<String> groupSprites(String atlasId, String groupId) {
+        AtlasHandles atlas = atlas(atlasId);
+        SpriteAtlasCatalog.SpriteGroup group = atlas == null ? null : atlas.entry.group(groupId);
+        return group == null ? List.of() : group.sprites();
+    }
+
+    private AtlasHandles atlas(String atlasId) {
+        return atlasId == null ? null : view().atlases().get(atlasId);
+    }
+
+    private View view() {
+        View current = view;
+        SpriteAtlasCatalog.CatalogSnapshot snapshot = catalog.snapshotOrEmpty();
+        if (current.generation() == snapshot.generation()) {
+            return current;
+        }
+        synchronized (this) {
+            current = view;
+            if (current.generation() == snapshot.generation()) {
+                return current;
+            }
+            View next = View.of(snapshot, current);
+            view = next;
+            return next;
+        }
+    }
+
+    /**
+     * One sprite of an atlas together with its sprite component. The component is immutable and shared, so it
+     * can be appended anywhere without copying.
+     */
+    public static final class SpriteHandle {
+        private final AtlasHandles owner;
+        private final String spriteKey;
+        private final Component component;
+
+        private SpriteHandle(AtlasHandles owner, String spriteKey) {
+            this.owner = owner;
+            this.spriteKey = spriteKey;
+            this.component = Component.object(ObjectContents.sprite(owner.atlasKey, Key.key(spriteKey)));
+        }
+
+        public String atlasId() {
+            return owner.entry.atlasId();
+        }
+
+        public String spriteKey() {
+            return spriteKey;
+        }
+
+        public Component component() {
+            return component;
+        }
+
+        /**
+         * Returns whether the handle still belongs to the published catalog. Handles of an atlas that changed
+         * or was removed are left behind, and looking the sprite up again returns a fresh handle.
+         */
+        public boolean isCurrent() {
+            return !owner.retired;
+        }
+
+        @Override
+        public String toString() {
+            return atlasId() + " " + spriteKey;
+        }
+    }
+
+    private record View(long generation, Map<String, AtlasHandles> atlases) {
+        static final View EMPTY = new View(0, Map.of());
+
+        /**
+         * Maps every atlas of {@code snapshot} by id and, within the {@code minecraft} namespace, by simple name,
+         * reusing the handles of atlases the snapshot shares with {@code previous}.
+         */
+        static View of(SpriteAtlasCatalog.CatalogSnapshot snapshot, View previous) {
+            Map<SpriteAtlasCatalog.AtlasEntry, AtlasHandles> reusable = new IdentityHashMap<>();
+            for (AtlasHandles handles : previous.atlases().values()) {
+                reusable.put(handles.entry, handles);
+            }
+            Map<String, AtlasHandles> atlases = new HashMap<>();
+            for (SpriteAtlasCatalog.AtlasEntry entry : snapshot.atlases()) {
+                AtlasHandles handles = reusable.remove(entry);
+                if (handles == null) {
+                    handles = new AtlasHandles(entry);
+                }
+                atlases.put(entry.atlasId(), handles);
+                if (entry.isMinecraft()) {
+                    atlases.putIfAbsent(entry.simpleName(), handles);
+                }
+            }
+            for (AtlasHandles stale : reusable.values()) {
+                stale.retired = true;
+            }
+            return new View(snapshot.generation(), Map.copyOf(atlases));
+        }
+    }
+
+    /**
+     * What a lookup of a key that has no handle found out.
+     */
+    private enum Lookup {
+        ABSENT,
+        UNRENDERABLE
+    }
+
+    /**
+     * The lookups of one atlas entry: a {@link SpriteHandle} per renderable sprite, and a {@link Lookup} per key
+     * that has none. Entries are immutable, so every answer stays valid for as long as the entry is published.
+     */
+    private static final class AtlasHandles {
+        // Unknown keys come from callers, so only this many misses are remembered per atlas.
+        private static final int MAX_MISSES = 4096;
+
+        private final SpriteAtlasCatalog.AtlasEntry entry;
+        private final Key atlasKey;
+        private final Map<String, Object> lookups = new ConcurrentHashMap<>();
+        private final AtomicInteger misses = new AtomicInteger();
+        private volatile boolean retired;
+
+        private AtlasHandles(SpriteAtlasCatalog.AtlasEntry entry) {
+            this.entry = entry;
+            this.atlasKey = Key.parseable(entry.atlasId()) ? Key.key(entry.atlasId()) : null;
+        }
+
+        /**
+         * Returns the sprite's handle, or the {@link Lookup} explaining why it has none.
+         */
+        Object lookup(String spriteKey) {
+            Object found = lookups.get(spriteKey);
+            if (found != null) {
+                return found;
+            }
+            if (!entry.containsSprite(spriteKey)) {
+                return remember(spriteKey, Lookup.ABSENT);
+            }
+            // Keys a sprite component cannot carry get no handle rather than failing once rendered.
+            if (atlasKey == null || !Key.parseable(spriteKey)) {
+                return remember(spriteKey, Lookup.UNRENDERABLE);
+            }
+            return lookups.computeIfAbsent(spriteKey, key -> new SpriteHandle(this, key));
+        }
+
+        private Lookup remember(String spriteKey, Lookup miss) {
+            if (misses.get() < MAX_MISSES && lookups.putIfAbsent(spriteKey, miss) == null) {
+                misses.incrementAndGet();
+            }
+            return miss;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package sh.harold.sprite.atlas;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers which sprites a texture ends up in, across every atlas of a
+ * {@link SpriteAtlasCatalog.CatalogSnapshot}. Lookups by texture path go through each atlas's
+ * {@link AtlasTextures} and paletted sequences. Sprites sharing a content hash are grouped the first time
+ * {@link #duplicates()} is called, so publishing a snapshot after an edit does not walk every atlas's textures;
+ * an index restored from a catalog snapshot reads the grouping the snapshot stored instead.
+ */
+public final class SpriteReverseIndex {
+    static final SpriteReverseIndex EMPTY = new SpriteReverseIndex(List.of(), null);
+    private static final String TEXTURE_TOKEN = "/textures/";
+    private static final String TEXTURES_PREFIX = "textures/";
+    private static final String PNG_SUFFIX = ".png";
+
+    private final List<SpriteAtlasCatalog.AtlasEntry> atlases;
+    private final byte[] encoded;
+    private volatile List<RefSet> refSets;
+    private volatile List<DuplicateSet> duplicates;
+
+    private SpriteReverseIndex(List<SpriteAtlasCatalog.AtlasEntry> atlases, byte[] encoded) {
+        this.atlases = atlases;
+        this.encoded = encoded;
+    }
+
+    static SpriteReverseIndex build(List<SpriteAtlasCatalog.AtlasEntry> atlases) {
+        return new SpriteReverseIndex(atlases, null);
+    }
+
+    /**
+     * Restores the index of {@code atlases} around duplicate sets {@link #encodedDuplicates()} wrote for the
+     * same atlases, in the same order. Nothing is decoded until the sets are first read.
+     */
+    static SpriteReverseIndex fromEncoded(List<SpriteAtlasCatalog.AtlasEntry> atlases, byte[] encodedDuplicates) {
+        return new SpriteReverseIndex(atlases, encodedDuplicates);
+    }
+
+    /**
+     * Returns this index over {@code equalAtlases}, which equal its own atlases in the same order, keeping the
+     * duplicate sets already grouped or restored.
+     */
+    SpriteReverseIndex withAtlases(List<SpriteAtlasCatalog.AtlasEntry> equalAtlases) {
+        SpriteReverseIndex index = new SpriteReverseIndex(equalAtlases, encoded);
+        index.refSets = refSets;
+        index.duplicates = duplicates;
+        return index;
+    }
+
+    /**
+     * Encodes the duplicate sets as {@code setCount} and per set its 20-byte hash and {@code useCount}, with each
+     * use as its atlas's position in the snapshot, its texture id and its sprite's stored position.
+     */
+    byte[] encodedDuplicates() throws IOException {
+        if (encoded != null) {
+            return encoded;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        List<RefSet> sets = refSets();
+        BinaryIO.writeVarInt(out, sets.size());
+        for (RefSet set : sets) {
+            out.write(HexFormat.of().parseHex(set.hash()));
+            BinaryIO.writeVarInt(out, set.refs().size());
+            for (SpriteRef ref : set.refs()) {
+                BinaryIO.writeVarInt(out, ref.atlas());
+                BinaryIO.writeVarInt(out, ref.texture());
+                BinaryIO.writeVarInt(out, ref.position());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Lists every sprite built from {@code texture}, atlas by atlas: copies in sprite order, then paletted
+     * permutations sequence by sequence. The texture may be given as an asset path
+     * ({@code minecraft/textures/block/stone.png}) or a resource location ({@code minecraft:block/stone},
+     * {@code block/stone}).
+     */
+    public List<SpriteUse> where(String texture) {
+        String path = texturePath(texture);
+        List<SpriteUse> found = new ArrayList<>();
+        for (SpriteAtlasCatalog.AtlasEntry atlas : atlases) {
+            int id = atlas.textures().find(path);
+            if (id >= 0) {
+                for (int use : atlas.textures().uses(id)) {
+                    String spriteKey = atlas.storedSprite(AtlasTextures.position(use));
+                    found.add(new SpriteUse(atlas.atlasId(), spriteKey, path, AtlasTextures.isPaletted(use)));
+                }
+            }
+            for (SpriteAtlasCatalog.SpriteGroup group : atlas.groups()) {
+                for (PalettedSprites sequence : GroupSprites.palettedParts(group.sprites())) {
+                    for (String spriteKey : sequence.spritesUsing(path)) {
+                        found.add(new SpriteUse(atlas.atlasId(), spriteKey, path, true));
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the sets of two or more sprites copied from textures with identical content, largest first.
+     * Only textures listed in the asset index carry a hash, so sprites from the client jar never appear here.
+     */
+    public List<DuplicateSet> duplicates() {
+        List<DuplicateSet> sets = duplicates;
+        if (sets == null) {
+            sets = groupDuplicates();
+            duplicates = sets;
+        }
+        return sets;
+    }
+
+    private List<DuplicateSet> groupDuplicates() {
+        List<DuplicateSet> sets = new ArrayList<>();
+        for (RefSet set : refSets()) {
+            List<SpriteUse> uses = new ArrayList<>(set.refs().size());
+            for (SpriteRef ref : set.refs()) {
+                SpriteAtlasCatalog.AtlasEntry atlas = atlases.get(ref.atlas());
+                uses.add(new SpriteUse(atlas.atlasId(), atlas.storedSprite(ref.position()),
+                    atlas.textures().path(ref.texture()), false));
+            }
+            sets.add(new DuplicateSet(set.hash(), List.copyOf(uses)));
+        }
+        return List.copyOf(sets);
+    }
+
+    private List<RefSet> refSets() {
+        List<RefSet> sets = refSets;
+        if (sets == null) {
+            sets = encoded == null ? groupRefs() : decodeRefs();
+            refSets = sets;
+        }
+        return sets;
+    }
+
+    private List<RefSet> groupRefs() {
+        HexFormat hex = HexFormat.of();
+        Map<String, List<SpriteRef>> byHash = new HashMap<>();
+        for (int a = 0; a < atlases.size(); a++) {
+            AtlasTextures textures = atlases.get(a).textures();
+            for (int i = 0; i < textures.hashedCount(); i++) {
+                int texture = textures.hashedTexture(i);
+                for (int use : textures.uses(texture)) {
+                    if (!AtlasTextures.isPaletted(use)) {
+                        byHash.computeIfAbsent(hex.formatHex(textures.hash(i)), key -> new ArrayList<>())
+                            .add(new SpriteRef(a, texture, AtlasTextures.position(use)));
+                    }
+                }
+            }
+        }
+
+        List<RefSet> sets = new ArrayList<>();
+        byHash.forEach((hash, refs) -> {
+            if (refs.size() > 1) {
+                sets.add(new RefSet(hash, List.copyOf(refs)));
+            }
+        });
+        sets.sort(Comparator.comparingInt((RefSet set) -> set.refs().size()).reversed()
+            .thenComparing(RefSet::hash));
+        return List.copyOf(sets);
+    }
+
+    private List<RefSet> decodeRefs() {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        try {
+            int setCount = BinaryIO.readVarInt(buffer);
+            List<RefSet> sets = new ArrayList<>(Math.min(setCount, buffer.remaining()));
+            byte[] hash = new byte[AssetIndex.HASH_LENGTH];
+            for (int s = 0; s < setCount; s++) {
+                buffer.get(hash);
+                int useCount = BinaryIO.readVarInt(buffer);
+                List<SpriteRef> refs = new ArrayList<>(Math.min(useCount, buffer.remaining()));
+                for (int u = 0; u < useCount; u++) {
+                    SpriteRef ref = new SpriteRef(BinaryIO.readVarInt(buffer), BinaryIO.readVarInt(buffer),
+                        BinaryIO.readVarInt(buffer));
+                    if (ref.atlas() < 0 || ref.atlas() >= atlases.size()
+                        || ref.texture() < 0 || ref.texture() >= atlases.get(ref.atlas()).textures().size()) {
+                        throw new IOException("Duplicate set refers to a missing texture");
+                    }
+                    refs.add(ref);
+                }
+                sets.add(new RefSet(HexFormat.of().formatHex(hash), List.copyOf(refs)));
+            }
+            return List.copyOf(sets);
+        } catch (IOException | BufferUnderflowException ex) {
+            // The snapshot's checksum covered these bytes, so only a bug in the codec ends up here.
+            throw new IllegalStateException("Corrupt duplicate sets in catalog snapshot", ex);
+        }
+    }
+
+    /**
+     * Resolves a resource location or asset path to the asset path of its texture,
+     * {@code <namespace>/textures/<path>.png}. Unqualified locations are in the {@code minecraft} namespace.
+     */
+    public static String texturePath(String texture) {
+        String value = texture == null ? "" : texture.trim().replace('\\', '/');
+        if (value.startsWith(AtlasCacheStore.ASSETS_PREFIX)) {
+            value = value.substring(AtlasCacheStore.ASSETS_PREFIX.length());
+        }
+        String namespace = "minecraft";
+        int colon = value.indexOf(':');
+        int token = value.indexOf(TEXTURE_TOKEN);
+        if (colon >= 0) {
+            namespace = value.substring(0, colon);
+            value = value.substring(colon + 1);
+        } else if (token > 0) {
+            namespace = value.substring(0, token);
+            value = value.substring(token + TEXTURE_TOKEN.length());
+        }
+        if (value.startsWith(TEXTURES_PREFIX)) {
+            value = value.substring(TEXTURES_PREFIX.length());
+        }
+        if (value.endsWith(PNG_SUFFIX)) {
+            value = value.substring(0, value.length() - PNG_SUFFIX.length());
+        }
+        return namespace + TEXTURE_TOKEN + value + PNG_SUFFIX;
+    }
+
+    /**
+     * One sprite built from {@code texturePath}. Paletted sprites recolor the texture instead of copying it.
+     */
+    public record SpriteUse(String atlasId, String spriteKey, String texturePath, boolean paletted) {
+    }
+
+    /**
+     * Sprites whose textures share the SHA-1 content hash {@code hash}, in hex.
+     */
+    public record DuplicateSet(String hash, List<SpriteUse> sprites) {
+    }
+
+    private record SpriteRef(int atlas, int texture, int position) {
+    }
+
+    private record RefSet(String hash, List<SpriteRef> refs) {
+    }
+}
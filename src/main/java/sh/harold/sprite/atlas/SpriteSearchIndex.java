@@ -0,0 +1,695 @@
+package sh.harold.sprite.atlas;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Case-insensitive substring search over every sprite of a {@link SpriteAtlasCatalog.CatalogSnapshot}.
+ * Each (atlas, sprite) pair is an entry. Every atlas has its own part of the index: its keys joined in one
+ * string, and a trigram index mapping every three-character window to the ascending entries containing it.
+ * A query of three or more characters only verifies the entries of its rarest trigram, so lookups stay well
+ * under a millisecond even with tens of thousands of sprites. Paletted permutations are not indexed one by
+ * one: a second trigram index covers their bases and suffixes, and only the permutations whose base or
+ * suffix contains the query, or that it spans across the joining {@code _}, are generated and checked.
+ * Entries are numbered atlas by atlas, permutations after every indexed entry, sequence by sequence in
+ * base-major order. A part only depends on its atlas, so rebuilding the index after an edit reuses the parts
+ * of every atlas whose {@link SpriteAtlasCatalog.AtlasEntry#digest() digest} is unchanged. Parts restored
+ * from a catalog snapshot keep their encoded form and are only decoded the first time their atlas is searched.
+ */
+public final class SpriteSearchIndex {
+    static final SpriteSearchIndex EMPTY = new SpriteSearchIndex(new LazyPart[0], new int[1], new int[1]);
+    private static final int[] NO_ENTRIES = new int[0];
+
+    private final LazyPart[] parts;
+    private final int[] atlasStarts;
+    private final int[] permutationStarts;
+
+    private SpriteSearchIndex(LazyPart[] parts, int[] atlasStarts, int[] permutationStarts) {
+        this.parts = parts;
+        this.atlasStarts = atlasStarts;
+        this.permutationStarts = permutationStarts;
+    }
+
+    static SpriteSearchIndex build(List<SpriteAtlasCatalog.AtlasEntry> atlases) {
+        return build(atlases, EMPTY);
+    }
+
+    /**
+     * Indexes {@code atlases}, taking the part of every atlas that {@code previous} indexed with the same
+     * digest from it instead of indexing the atlas again.
+     */
+    static SpriteSearchIndex build(List<SpriteAtlasCatalog.AtlasEntry> atlases, SpriteSearchIndex previous) {
+        Map<String, LazyPart> reusable = new HashMap<>();
+        for (LazyPart part : previous.parts) {
+            reusable.put(part.atlasId, part);
+        }
+        LazyPart[] parts = new LazyPart[atlases.size()];
+        for (int a = 0; a < atlases.size(); a++) {
+            SpriteAtlasCatalog.AtlasEntry atlas = atlases.get(a);
+            LazyPart part = reusable.get(atlas.atlasId());
+            if (part == null || !part.digest.equals(atlas.digest())) {
+                part = new LazyPart(atlas, AtlasPart.of(atlas));
+            }
+            parts[a] = part;
+        }
+        return of(parts);
+    }
+
+    /**
+     * Restores the index of {@code atlases} from the parts {@link #encodedPart(int)} wrote for the same atlases,
+     * in the same order. Only each part's counts are read here.
+     */
+    static SpriteSearchIndex fromEncoded(List<SpriteAtlasCatalog.AtlasEntry> atlases, List<byte[]> encodedParts)
+        throws IOException {
+        if (atlases.size() != encodedParts.size()) {
+            throw new IOException("Search index parts do not match the atlases");
+        }
+        LazyPart[] parts = new LazyPart[atlases.size()];
+        for (int a = 0; a < parts.length; a++) {
+            parts[a] = new LazyPart(atlases.get(a), encodedParts.get(a));
+        }
+        return of(parts);
+    }
+
+    private static SpriteSearchIndex of(LazyPart[] parts) {
+        int[] atlasStarts = new int[parts.length + 1];
+        int[] permutationStarts = new int[parts.length + 1];
+        for (int a = 0; a < parts.length; a++) {
+            atlasStarts[a + 1] = atlasStarts[a] + parts[a].entryCount;
+            permutationStarts[a + 1] = permutationStarts[a] + parts[a].permutationCount;
+        }
+        for (int a = 0; a <= parts.length; a++) {
+            permutationStarts[a] += atlasStarts[parts.length];
+        }
+        return new SpriteSearchIndex(parts, atlasStarts, permutationStarts);
+    }
+
+    /**
+     * Encodes the part of the atlas at {@code atlas}, in snapshot order, for {@link #fromEncoded}.
+     */
+    byte[] encodedPart(int atlas) throws IOException {
+        return parts[atlas].encoded();
+    }
+
+    private static void index(Map<Long, PostingList> building, String value, int id) {
+        for (int i = 0; i + 3 <= value.length(); i++) {
+            building.computeIfAbsent(trigram(value, i), key -> new PostingList()).add(id);
+        }
+    }
+
+    private static Map<Long, int[]> toPostings(Map<Long, PostingList> building) {
+        Map<Long, int[]> postings = new HashMap<>(building.size() * 2);
+        building.forEach((trigram, list) -> postings.put(trigram, list.toArray()));
+        return postings;
+    }
+
+    /**
+     * Finds sprites whose key contains {@code query}, ignoring case. Hits are ranked exact key first, then
+     * exact file name, file name prefix, key prefix, a match at a word boundary ({@code /}, {@code _},
+     * {@code -} or {@code .}) and finally any other match; shorter keys win ties, then catalog order. Paletted
+     * permutations are ranked like any other sprite and only come after indexed sprites of the same rank and
+     * key length.
+     *
+     * @param atlasId restricts hits to one atlas, or {@code null} to search all of them
+     * @return the ranked hits, decoded lazily as they are read
+     */
+    public List<Hit> search(String query, String atlasId) {
+        String needle = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (needle.isEmpty()) {
+            return List.of();
+        }
+        int from = 0;
+        int to = parts.length;
+        if (atlasId != null) {
+            from = indexOfAtlas(atlasId);
+            if (from < 0) {
+                return List.of();
+            }
+            to = from + 1;
+        }
+
+        // Sort keys pack rank, key length and entry so ranking is a single primitive sort.
+        long[] ranked = new long[16];
+        int count = 0;
+        for (int a = from; a < to; a++) {
+            AtlasPart part = parts[a].part();
+            int[] entries = needle.length() < 3 ? null : rarestPosting(needle, part.postings);
+            int candidateCount = entries == null ? part.entryCount() : entries.length;
+            int[] permutations = part.permutationCandidates(needle);
+            int capacity = count + candidateCount + permutations.length;
+            if (capacity > ranked.length) {
+                ranked = Arrays.copyOf(ranked, Math.max(ranked.length * 2, capacity));
+            }
+            for (int i = 0; i < candidateCount; i++) {
+                int entry = entries == null ? i : entries[i];
+                long sortKey = sortKey(part.text, part.keyStarts[entry], part.keyStarts[entry + 1],
+                    atlasStarts[a] + entry, needle);
+                if (sortKey >= 0) {
+                    ranked[count++] = sortKey;
+                }
+            }
+            for (int permutation : permutations) {
+                String key = part.permutationKey(permutation);
+                long sortKey = sortKey(key, 0, key.length(), permutationStarts[a] + permutation, needle);
+                if (sortKey >= 0) {
+                    ranked[count++] = sortKey;
+                }
+            }
+        }
+        Arrays.sort(ranked, 0, count);
+        return new Hits(ranked, count);
+    }
+
+    private int indexOfAtlas(String atlasId) {
+        for (int a = 0; a < parts.length; a++) {
+            if (parts[a].atlasId.equals(atlasId)) {
+                return a;
+            }
+        }
+        return -1;
+    }
+
+    private static long sortKey(String source, int keyStart, int keyEnd, int entry, String needle) {
+        int rank = rank(source, keyStart, keyEnd, needle);
+        if (rank < 0) {
+            return -1;
+        }
+        long length = Math.min(keyEnd - keyStart, 0xFFFF);
+        return ((long) rank << 48) | (length << 32) | entry;
+    }
+
+    private static int rank(String text, int keyStart, int keyEnd, String needle) {
+        int first = indexOfIgnoreCase(text, keyEnd, needle, keyStart);
+        if (first < 0) {
+            return -1;
+        }
+        if (first == keyStart && keyEnd - keyStart == needle.length()) {
+            return 0;
+        }
+        int nameStart = Math.max(keyStart, text.lastIndexOf('/', keyEnd - 1) + 1);
+        if (text.regionMatches(true, nameStart, needle, 0, needle.length())) {
+            return keyEnd - nameStart == needle.length() ? 1 : 2;
+        }
+        if (first == keyStart) {
+            return 3;
+        }
+        for (int at = first; at >= 0; at = indexOfIgnoreCase(text, keyEnd, needle, at + 1)) {
+            if ("/_-.".indexOf(text.charAt(at - 1)) >= 0) {
+                return 4;
+            }
+        }
+        return 5;
+    }
+
+    private static int indexOfIgnoreCase(String text, int keyEnd, String needle, int from) {
+        for (int i = from; i + needle.length() <= keyEnd; i++) {
+            if (text.regionMatches(true, i, needle, 0, needle.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] rarestPosting(String needle, Map<Long, int[]> postings) {
+        int[] rarest = null;
+        for (int i = 0; i + 3 <= needle.length(); i++) {
+            int[] posting = postings.getOrDefault(trigram(needle, i), NO_ENTRIES);
+            if (rarest == null || posting.length < rarest.length) {
+                rarest = posting;
+            }
+        }
+        return rarest;
+    }
+
+    /**
+     * Returns the run of {@code starts} that {@code value} falls in; empty runs share a start with the run
+     * after them.
+     */
+    private static int runOf(int[] starts, int value) {
+        int index = Arrays.binarySearch(starts, value);
+        if (index < 0) {
+            return -index - 2;
+        }
+        while (starts[index + 1] == value) {
+            index++;
+        }
+        return index;
+    }
+
+    private static long trigram(String value, int offset) {
+        return ((long) Character.toLowerCase(value.charAt(offset)) << 32)
+            | ((long) Character.toLowerCase(value.charAt(offset + 1)) << 16)
+            | Character.toLowerCase(value.charAt(offset + 2));
+    }
+
+    private static int lowerBound(int[] sorted, int value) {
+        int index = Arrays.binarySearch(sorted, value);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    /**
+     * The index of one atlas: its stored keys, numbered from zero, and its paletted sequences' bases and
+     * suffixes, whose permutations are numbered from zero sequence by sequence.
+     */
+    private static final class AtlasPart {
+        private final String text;
+        private final int[] keyStarts;
+        private final Map<Long, int[]> postings;
+        private final String[] bases;
+        private final int[] baseStarts;
+        private final Map<Long, int[]> basePostings;
+        private final String[] suffixes;
+        private final int[] suffixStarts;
+        private final Map<Long, int[]> suffixPostings;
+        private final int[] sequenceStarts;
+
+        private AtlasPart(String text, int[] keyStarts, Map<Long, int[]> postings, String[] bases, int[] baseStarts,
+                          Map<Long, int[]> basePostings, String[] suffixes, int[] suffixStarts,
+                          Map<Long, int[]> suffixPostings, int[] sequenceStarts) {
+            this.text = text;
+            this.keyStarts = keyStarts;
+            this.postings = postings;
+            this.bases = bases;
+            this.baseStarts = baseStarts;
+            this.basePostings = basePostings;
+            this.suffixes = suffixes;
+            this.suffixStarts = suffixStarts;
+            this.suffixPostings = suffixPostings;
+            this.sequenceStarts = sequenceStarts;
+        }
+
+        static AtlasPart of(SpriteAtlasCatalog.AtlasEntry atlas) {
+            int keyCount = 0;
+            for (SpriteAtlasCatalog.SpriteGroup group : atlas.groups()) {
+                keyCount += GroupSprites.plainPart(group.sprites()).size();
+            }
+            StringBuilder text = new StringBuilder(keyCount * 24);
+            int[] keyStarts = new int[keyCount + 1];
+            Map<Long, PostingList> building = new HashMap<>();
+            List<PalettedSprites> sequences = new ArrayList<>();
+            int entry = 0;
+            for (SpriteAtlasCatalog.SpriteGroup group : atlas.groups()) {
+                for (String sprite : GroupSprites.plainPart(group.sprites())) {
+                    keyStarts[entry] = text.length();
+                    text.append(sprite);
+                    index(building, sprite, entry);
+                    entry++;
+                }
+                sequences.addAll(GroupSprites.palettedParts(group.sprites()));
+            }
+            keyStarts[entry] = text.length();
+
+            List<String> bases = new ArrayList<>();
+            List<String> suffixes = new ArrayList<>();
+            int[] baseStarts = new int[sequences.size() + 1];
+            int[] suffixStarts = new int[sequences.size() + 1];
+            int[] sequenceStarts = new int[sequences.size() + 1];
+            Map<Long, PostingList> buildingBases = new HashMap<>();
+            Map<Long, PostingList> buildingSuffixes = new HashMap<>();
+            for (int i = 0; i < sequences.size(); i++) {
+                PalettedSprites sequence = sequences.get(i);
+                baseStarts[i] = bases.size();
+                for (String base : sequence.bases()) {
+                    index(buildingBases, base, bases.size());
+                    bases.add(base);
+                }
+                suffixStarts[i] = suffixes.size();
+                for (String suffix : sequence.suffixes()) {
+                    index(buildingSuffixes, suffix, suffixes.size());
+                    suffixes.add(suffix);
+                }
+                sequenceStarts[i + 1] = sequenceStarts[i] + sequence.size();
+            }
+            baseStarts[sequences.size()] = bases.size();
+            suffixStarts[sequences.size()] = suffixes.size();
+
+            return new AtlasPart(text.toString(), keyStarts, toPostings(building), bases.toArray(String[]::new),
+                baseStarts, toPostings(buildingBases), suffixes.toArray(String[]::new), suffixStarts,
+                toPostings(buildingSuffixes), sequenceStarts);
+        }
+
+        /**
+         * Writes {@code entryCount, permutationCount}, the joined keys and their starts, then the bases and the
+         * suffixes with their starts; each trigram index follows what it covers. Starts are varint deltas, and
+         * each trigram index is {@code trigramCount} and per trigram, ascending, its three characters and its
+         * entries as {@code count} and varint deltas.
+         */
+        void write(DataOutputStream out) throws IOException {
+            BinaryIO.writeVarInt(out, entryCount());
+            BinaryIO.writeVarInt(out, permutationCount());
+            BinaryIO.writeString(out, text);
+            writeAscending(out, keyStarts);
+            writePostings(out, postings);
+            writeStrings(out, bases);
+            writeAscending(out, baseStarts);
+            writePostings(out, basePostings);
+            writeStrings(out, suffixes);
+            writeAscending(out, suffixStarts);
+            writePostings(out, suffixPostings);
+            writeAscending(out, sequenceStarts);
+        }
+
+        static AtlasPart read(ByteBuffer buffer) throws IOException {
+            int entryCount = BinaryIO.readVarInt(buffer);
+            int permutationCount = BinaryIO.readVarInt(buffer);
+            String text = BinaryIO.readString(buffer);
+            int[] keyStarts = readAscending(buffer);
+            Map<Long, int[]> postings = readPostings(buffer);
+            String[] bases = readStrings(buffer);
+            int[] baseStarts = readAscending(buffer);
+            Map<Long, int[]> basePostings = readPostings(buffer);
+            String[] suffixes = readStrings(buffer);
+            int[] suffixStarts = readAscending(buffer);
+            Map<Long, int[]> suffixPostings = readPostings(buffer);
+            int[] sequenceStarts = readAscending(buffer);
+            if (keyStarts.length != entryCount + 1 || keyStarts[entryCount] != text.length()
+                || sequenceStarts[sequenceStarts.length - 1] != permutationCount
+                || baseStarts.length != sequenceStarts.length || suffixStarts.length != sequenceStarts.length
+                || baseStarts[baseStarts.length - 1] != bases.length
+                || suffixStarts[suffixStarts.length - 1] != suffixes.length) {
+                throw new IOException("Search index part is inconsistent");
+            }
+            return new AtlasPart(text, keyStarts, postings, bases, baseStarts, basePostings, suffixes, suffixStarts,
+                suffixPostings, sequenceStarts);
+        }
+
+        private static void writeAscending(DataOutputStream out, int[] values) throws IOException {
+            BinaryIO.writeVarInt(out, values.length);
+            int previous = 0;
+            for (int value : values) {
+                BinaryIO.writeVarInt(out, value - previous);
+                previous = value;
+            }
+        }
+
+        private static int[] readAscending(ByteBuffer buffer) throws IOException {
+            int count = BinaryIO.readVarInt(buffer);
+            if (count < 1 || count > buffer.remaining()) {
+                throw new IOException("Search index part has an invalid run length");
+            }
+            int[] values = new int[count];
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                int delta = BinaryIO.readVarInt(buffer);
+                if (delta < 0) {
+                    throw new IOException("Search index part is not ascending");
+                }
+                previous += delta;
+                values[i] = previous;
+            }
+            return values;
+        }
+
+        private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+            BinaryIO.writeVarInt(out, values.length);
+            for (String value : values) {
+                BinaryIO.writeString(out, value);
+            }
+        }
+
+        private static String[] readStrings(ByteBuffer buffer) throws IOException {
+            int count = BinaryIO.readVarInt(buffer);
+            if (count > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            String[] values = new String[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = BinaryIO.readString(buffer);
+            }
+            return values;
+        }
+
+        private static void writePostings(DataOutputStream out, Map<Long, int[]> postings) throws IOException {
+            long[] trigrams = new long[postings.size()];
+            int count = 0;
+            for (long trigram : postings.keySet()) {
+                trigrams[count++] = trigram;
+            }
+            Arrays.sort(trigrams);
+            BinaryIO.writeVarInt(out, trigrams.length);
+            for (long trigram : trigrams) {
+                out.writeChar((int) (trigram >>> 32));
+                out.writeChar((int) (trigram >>> 16));
+                out.writeChar((int) trigram);
+                int[] entries = postings.get(trigram);
+                BinaryIO.writeVarInt(out, entries.length);
+                int previous = 0;
+                for (int entry : entries) {
+                    BinaryIO.writeVarInt(out, entry - previous);
+                    previous = entry;
+                }
+            }
+        }
+
+        private static Map<Long, int[]> readPostings(ByteBuffer buffer) throws IOException {
+            int count = BinaryIO.readVarInt(buffer);
+            if (count > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            Map<Long, int[]> postings = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                long trigram = ((long) buffer.getChar() << 32) | ((long) buffer.getChar() << 16) | buffer.getChar();
+                int length = BinaryIO.readVarInt(buffer);
+                if (length > buffer.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                int[] entries = new int[length];
+                int previous = 0;
+                for (int e = 0; e < length; e++) {
+                    previous += BinaryIO.readVarInt(buffer);
+                    entries[e] = previous;
+                }
+                postings.put(trigram, entries);
+            }
+            return postings;
+        }
+
+        int entryCount() {
+            return keyStarts.length - 1;
+        }
+
+        int permutationCount() {
+            return sequenceStarts[sequenceStarts.length - 1];
+        }
+
+        /**
+         * Returns the distinct permutations of this atlas whose key contains {@code needle}, ascending. Only keys whose
+         * base or suffix contains the needle, or whose base ends and suffix starts with the parts of the needle
+         * around one of its underscores, can contain it, so no other permutation is looked at.
+         */
+        private int[] permutationCandidates(String needle) {
+            PostingList found = new PostingList();
+            for (int base : matching(needle, bases, basePostings)) {
+                int sequence = runOf(baseStarts, base);
+                int width = suffixStarts[sequence + 1] - suffixStarts[sequence];
+                int first = sequenceStarts[sequence] + (base - baseStarts[sequence]) * width;
+                for (int suffix = 0; suffix < width; suffix++) {
+                    found.add(first + suffix);
+                }
+            }
+            for (int suffix : matching(needle, suffixes, suffixPostings)) {
+                int sequence = runOf(suffixStarts, suffix);
+                int width = suffixStarts[sequence + 1] - suffixStarts[sequence];
+                int baseCount = baseStarts[sequence + 1] - baseStarts[sequence];
+                for (int base = 0; base < baseCount; base++) {
+                    found.add(sequenceStarts[sequence] + base * width + suffix - suffixStarts[sequence]);
+                }
+            }
+            for (int at = needle.indexOf('_'); at >= 0; at = needle.indexOf('_', at + 1)) {
+                String head = needle.substring(0, at);
+                String tail = needle.substring(at + 1);
+                int[] tails = startingWith(tail);
+                for (int base : endingWith(head)) {
+                    int sequence = runOf(baseStarts, base);
+                    int width = suffixStarts[sequence + 1] - suffixStarts[sequence];
+                    int first = sequenceStarts[sequence] + (base - baseStarts[sequence]) * width;
+                    int end = suffixStarts[sequence + 1];
+                    for (int i = lowerBound(tails, suffixStarts[sequence]); i < tails.length && tails[i] < end; i++) {
+                        found.add(first + tails[i] - suffixStarts[sequence]);
+                    }
+                }
+            }
+            int[] entries = found.toArray();
+            Arrays.sort(entries);
+            int distinct = 0;
+            for (int i = 0; i < entries.length; i++) {
+                if (i == 0 || entries[i] != entries[i - 1]) {
+                    entries[distinct++] = entries[i];
+                }
+            }
+            return Arrays.copyOf(entries, distinct);
+        }
+
+        private static int[] matching(String needle, String[] values, Map<Long, int[]> postings) {
+            PostingList found = new PostingList();
+            for (int id : candidates(needle, values.length, postings)) {
+                if (indexOfIgnoreCase(values[id], values[id].length(), needle, 0) >= 0) {
+                    found.add(id);
+                }
+            }
+            return found.toArray();
+        }
+
+        private int[] endingWith(String head) {
+            PostingList found = new PostingList();
+            for (int id : candidates(head, bases.length, basePostings)) {
+                String base = bases[id];
+                if (base.length() >= head.length()
+                    && base.regionMatches(true, base.length() - head.length(), head, 0, head.length())) {
+                    found.add(id);
+                }
+            }
+            return found.toArray();
+        }
+
+        private int[] startingWith(String tail) {
+            PostingList found = new PostingList();
+            for (int id : candidates(tail, suffixes.length, suffixPostings)) {
+                if (suffixes[id].regionMatches(true, 0, tail, 0, tail.length())) {
+                    found.add(id);
+                }
+            }
+            return found.toArray();
+        }
+
+        // Every value may match a part shorter than a trigram; longer parts only match values sharing all its trigrams.
+        private static int[] candidates(String part, int count, Map<Long, int[]> postings) {
+            if (part.length() >= 3) {
+                return rarestPosting(part, postings);
+            }
+            int[] all = new int[count];
+            Arrays.setAll(all, id -> id);
+            return all;
+        }
+
+        private String permutationKey(int entry) {
+            int sequence = runOf(sequenceStarts, entry);
+            int width = suffixStarts[sequence + 1] - suffixStarts[sequence];
+            int pair = entry - sequenceStarts[sequence];
+            return bases[baseStarts[sequence] + pair / width] + "_" + suffixes[suffixStarts[sequence] + pair % width];
+        }
+    }
+
+    /**
+     * An atlas's part, built in memory or still encoded as a snapshot stored it, with the counts that number
+     * entries either way. A restored part keeps its encoding, so writing the next snapshot does not re-encode
+     * an atlas that was never searched or edited.
+     */
+    private static final class LazyPart {
+        private final String atlasId;
+        private final String digest;
+        private final int entryCount;
+        private final int permutationCount;
+        private final byte[] encoded;
+        private volatile AtlasPart part;
+
+        private LazyPart(SpriteAtlasCatalog.AtlasEntry atlas, AtlasPart part) {
+            this.atlasId = atlas.atlasId();
+            this.digest = atlas.digest();
+            this.entryCount = part.entryCount();
+            this.permutationCount = part.permutationCount();
+            this.encoded = null;
+            this.part = part;
+        }
+
+        private LazyPart(SpriteAtlasCatalog.AtlasEntry atlas, byte[] encoded) throws IOException {
+            ByteBuffer header = ByteBuffer.wrap(encoded);
+            this.atlasId = atlas.atlasId();
+            this.digest = atlas.digest();
+            this.entryCount = BinaryIO.readVarInt(header);
+            this.permutationCount = BinaryIO.readVarInt(header);
+            this.encoded = encoded;
+        }
+
+        AtlasPart part() {
+            AtlasPart decoded = part;
+            if (decoded == null) {
+                try {
+                    decoded = AtlasPart.read(ByteBuffer.wrap(encoded));
+                } catch (IOException | BufferUnderflowException ex) {
+                    // The snapshot's checksum covered these bytes, so only a bug in the codec ends up here.
+                    throw new IllegalStateException("Corrupt search index part for atlas " + atlasId, ex);
+                }
+                part = decoded;
+            }
+            return decoded;
+        }
+
+        byte[] encoded() throws IOException {
+            if (encoded != null) {
+                return encoded;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            part().write(new DataOutputStream(bytes));
+            return bytes.toByteArray();
+        }
+    }
+
+    public record Hit(String atlasId, String spriteKey) {
+    }
+
+    private final class Hits extends AbstractList<Hit> implements RandomAccess {
+        private final long[] ranked;
+        private final int size;
+
+        private Hits(long[] ranked, int size) {
+            this.ranked = ranked;
+            this.size = size;
+        }
+
+        @Override
+        public Hit get(int index) {
+            Objects.checkIndex(index, size);
+            int entry = (int) ranked[index];
+            if (entry >= permutationStarts[0]) {
+                int atlas = runOf(permutationStarts, entry);
+                String key = parts[atlas].part().permutationKey(entry - permutationStarts[atlas]);
+                return new Hit(parts[atlas].atlasId, key);
+            }
+            int atlas = runOf(atlasStarts, entry);
+            AtlasPart part = parts[atlas].part();
+            int local = entry - atlasStarts[atlas];
+            return new Hit(parts[atlas].atlasId, part.text.substring(part.keyStarts[local], part.keyStarts[local + 1]));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Ids in the order they were added; postings add them in ascending order.
+     */
+    private static final class PostingList {
+        private int[] entries = new int[4];
+        private int size;
+
+        void add(int entry) {
+            // A key repeating a trigram only needs to be listed once.
+            if (size > 0 && entries[size - 1] == entry) {
+                return;
+            }
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = entry;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(entries, size);
+        }
+    }
+}
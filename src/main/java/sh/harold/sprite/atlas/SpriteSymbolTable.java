@@ -0,0 +1,535 @@
+package sh.harold.sprite.atlas;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.TreeSet;
+
+/**
+ * Table of sprite keys, shared by the catalogs of every loaded version. Keys are added in segments holding the
+ * keys that were new at the time, each sorted and front-coded in one byte array that restarts every
+ * {@value #BLOCK_SIZE} entries, so any id decodes in a bounded number of steps. A key's id is its segment's
+ * first id plus its rank within the segment: ids never change as segments are added, and a table agrees on
+ * every id with the tables it grew from. Sprite groups hold id arrays in key order and expose them as lazily
+ * decoded lists.
+ */
+final class SpriteSymbolTable {
+    static final int BLOCK_SIZE = 16;
+    static final SpriteSymbolTable EMPTY = new SpriteSymbolTable(new Segment[0], new int[1]);
+
+    private final Segment[] segments;
+    private final int[] segmentStarts;
+
+    private SpriteSymbolTable(Segment[] segments, int[] segmentStarts) {
+        this.segments = segments;
+        this.segmentStarts = segmentStarts;
+    }
+
+    static SpriteSymbolTable of(Collection<String> keys) {
+        return EMPTY.with(keys);
+    }
+
+    /**
+     * Adopts front-coded bytes produced by {@link #encoded()}, validating them in a single pass.
+     */
+    static SpriteSymbolTable fromEncoded(int size, byte[] data) throws IOException {
+        Segment segment = Segment.fromEncoded(size, data);
+        return size == 0 ? EMPTY : new SpriteSymbolTable(new Segment[]{segment}, new int[]{0, size});
+    }
+
+    /**
+     * Returns a table holding {@code keys} as well, with the ones this table lacks added as a new segment;
+     * this table itself when it already holds all of them.
+     */
+    SpriteSymbolTable with(Collection<String> keys) {
+        TreeSet<String> missing = new TreeSet<>();
+        for (String key : keys) {
+            if (id(key) < 0) {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return this;
+        }
+        Segment[] grown = Arrays.copyOf(segments, segments.length + 1);
+        grown[segments.length] = Segment.of(missing.toArray(String[]::new));
+        int[] starts = Arrays.copyOf(segmentStarts, segmentStarts.length + 1);
+        starts[segments.length + 1] = size() + missing.size();
+        return new SpriteSymbolTable(grown, starts);
+    }
+
+    /**
+     * Returns whether every id both tables hold names the same key in each, which is the case when one of
+     * them grew from the other.
+     */
+    boolean agreesWith(SpriteSymbolTable other) {
+        int common = Math.min(segments.length, other.segments.length);
+        for (int i = 0; i < common; i++) {
+            if (segments[i] != other.segments[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int size() {
+        return segmentStarts[segments.length];
+    }
+
+    /**
+     * Returns the front-coded bytes of a table built in one piece, where ids are ranks in sorted order.
+     */
+    byte[] encoded() {
+        return switch (segments.length) {
+            case 0 -> new byte[0];
+            case 1 -> segments[0].data;
+            default -> throw new IllegalStateException("A table grown in segments has no single encoding");
+        };
+    }
+
+    String key(int id) {
+        int segment = segmentOf(id);
+        return segments[segment].key(id - segmentStarts[segment]);
+    }
+
+    /**
+     * Compares the key with the given id to {@code key} in {@link String#compareTo} order, without decoding it
+     * when {@code key} is ASCII, as sprite keys are.
+     *
+     * @return a negative number, zero or a positive number as the stored key sorts before, equals or sorts after
+     */
+    int compare(int id, String key) {
+        int segment = segmentOf(id);
+        return segments[segment].compare(id - segmentStarts[segment], key);
+    }
+
+    /**
+     * Returns the id of {@code key}, or {@code -1} when the table does not contain it.
+     */
+    int id(String key) {
+        for (int s = 0; s < segments.length; s++) {
+            int rank = segments[s].rank(key);
+            if (rank >= 0) {
+                return segmentStarts[s] + rank;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns every key in id order as a lazily decoded list.
+     */
+    List<String> keys() {
+        int[] ids = new int[size()];
+        Arrays.setAll(ids, id -> id);
+        return slice(ids);
+    }
+
+    /**
+     * Returns a read-only list view decoding the keys with the given ids on demand. The ids must be listed in
+     * ascending key order.
+     */
+    List<String> slice(int[] ids) {
+        return new Keys(this, ids);
+    }
+
+    /**
+     * Returns a hash of {@code keys} that, for lists sliced from tables that agree, depends only on the ids
+     * and so never decodes a key. Equal lists from agreeing tables hash the same.
+     */
+    static int idHash(List<String> keys) {
+        return keys instanceof Keys slice ? Arrays.hashCode(slice.ids) : keys.hashCode();
+    }
+
+    /**
+     * Returns whether {@code keys.get(index)} equals {@code key}, comparing against the table's bytes when the
+     * list is a slice of one.
+     */
+    static boolean matches(List<String> keys, int index, String key) {
+        if (keys instanceof Keys slice) {
+            return slice.table.compare(slice.ids[index], key) == 0;
+        }
+        return keys.get(index).equals(key);
+    }
+
+    private int segmentOf(int id) {
+        Objects.checkIndex(id, size());
+        int segment = Arrays.binarySearch(segmentStarts, id);
+        // Segments are never empty, so each start belongs to exactly one of them.
+        return segment >= 0 ? segment : -segment - 2;
+    }
+
+    /**
+     * Decodes keys across segments, keeping one position per segment.
+     */
+    private final class Cursor {
+        private final Segment.Cursor[] cursors = new Segment.Cursor[segments.length];
+
+        String key(int id) {
+            int segment = segmentOf(id);
+            Segment.Cursor cursor = cursors[segment];
+            if (cursor == null) {
+                cursor = segments[segment].new Cursor();
+                cursors[segment] = cursor;
+            }
+            return cursor.key(id - segmentStarts[segment]);
+        }
+    }
+
+    /**
+     * A run of distinct keys in sorted order; a key's rank is its position in the run.
+     */
+    private static final class Segment {
+        private final int size;
+        private final byte[] data;
+        private final int[] blockOffsets;
+
+        private Segment(int size, byte[] data, int[] blockOffsets) {
+            this.size = size;
+            this.data = data;
+            this.blockOffsets = blockOffsets;
+        }
+
+        static Segment of(String[] sorted) {
+            var bytes = new ByteArrayOutputStream(sorted.length * 8);
+            var out = new DataOutputStream(bytes);
+            int[] blockOffsets = new int[blockCount(sorted.length)];
+            try {
+                BinaryIO.FrontCodedWriter writer = null;
+                for (int i = 0; i < sorted.length; i++) {
+                    if (i % BLOCK_SIZE == 0) {
+                        blockOffsets[i / BLOCK_SIZE] = out.size();
+                        writer = new BinaryIO.FrontCodedWriter(out);
+                    }
+                    writer.write(sorted[i]);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return new Segment(sorted.length, bytes.toByteArray(), blockOffsets);
+        }
+
+        static Segment fromEncoded(int size, byte[] data) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            int[] blockOffsets = new int[blockCount(size)];
+            BinaryIO.FrontCodedReader reader = null;
+            String previous = null;
+            for (int i = 0; i < size; i++) {
+                if (i % BLOCK_SIZE == 0) {
+                    blockOffsets[i / BLOCK_SIZE] = buffer.position();
+                    reader = new BinaryIO.FrontCodedReader(buffer);
+                }
+                String key = reader.read();
+                if (previous != null && previous.compareTo(key) >= 0) {
+                    throw new IOException("Sprite symbol table is not strictly sorted");
+                }
+                previous = key;
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Sprite symbol table has trailing bytes");
+            }
+            return new Segment(size, data, blockOffsets);
+        }
+
+        private static int blockCount(int size) {
+            return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        }
+
+        /**
+         * Finds the block whose first key is the last one not after {@code key}, comparing block heads only,
+         * then walks that block once.
+         */
+        int rank(String key) {
+            boolean ascii = isAscii(key);
+            Cursor cursor = ascii ? null : new Cursor();
+            int low = 0;
+            int high = blockOffsets.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int head = mid * BLOCK_SIZE;
+                int comparison = ascii ? walk(mid, head, key, false) : cursor.key(head).compareTo(key);
+                if (comparison == 0) {
+                    return mid * BLOCK_SIZE;
+                }
+                if (comparison < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (high < 0) {
+                return -1;
+            }
+            int first = high * BLOCK_SIZE;
+            int last = Math.min(size, first + BLOCK_SIZE) - 1;
+            if (!ascii) {
+                for (int r = first; r <= last; r++) {
+                    int comparison = cursor.key(r).compareTo(key);
+                    if (comparison >= 0) {
+                        return comparison == 0 ? r : -1;
+                    }
+                }
+                return -1;
+            }
+            return walk(high, last, key, true);
+        }
+
+        /**
+         * Decodes the key at {@code rank} into a buffer of exactly its length: a first walk through the block
+         * finds the length, a second copies each entry's bytes in turn, the last write to a byte being the key's.
+         */
+        String key(int rank) {
+            Objects.checkIndex(rank, size);
+            int start = blockOffsets[rank / BLOCK_SIZE];
+            int first = (rank / BLOCK_SIZE) * BLOCK_SIZE;
+            int position = start;
+            int length = 0;
+            for (int r = first; r <= rank; r++) {
+                long shared = varInt(position);
+                long suffixLength = varInt((int) shared);
+                length = (int) (shared >>> 32) + (int) (suffixLength >>> 32);
+                position = (int) suffixLength + (int) (suffixLength >>> 32);
+            }
+            byte[] bytes = new byte[length];
+            position = start;
+            for (int r = first; r <= rank; r++) {
+                long shared = varInt(position);
+                long suffixLength = varInt((int) shared);
+                int offset = (int) (shared >>> 32);
+                int count = (int) (suffixLength >>> 32);
+                position = (int) suffixLength;
+                if (offset < length) {
+                    System.arraycopy(data, position, bytes, offset, Math.min(count, length - offset));
+                }
+                position += count;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Compares the key at {@code rank} to {@code key}; only the sign of the result is meaningful.
+         */
+        int compare(int rank, String key) {
+            Objects.checkIndex(rank, size);
+            if (!isAscii(key)) {
+                return new Cursor().key(rank).compareTo(key);
+            }
+            return walk(rank / BLOCK_SIZE, rank, key, false);
+        }
+
+        /**
+         * Walks {@code block} up to rank {@code last}, comparing each entry to an ASCII {@code key} byte by byte.
+         * It tracks how many leading bytes the current entry shares with {@code key}: an entry sharing more with
+         * its predecessor than that compares just like its predecessor, and otherwise only its own suffix needs
+         * comparing. Entries are sorted, so the walk stops at the first one not before {@code key}. For an ASCII
+         * key, byte order agrees with {@link String#compareTo} whatever the stored key holds.
+         *
+         * @param find whether to return the rank equal to {@code key}, or {@code -1}, rather than how the entry at
+         *             {@code last} compares to it
+         */
+        private int walk(int block, int last, String key, boolean find) {
+            int position = blockOffsets[block];
+            int matched = 0;
+            int comparison = 0;
+            for (int r = block * BLOCK_SIZE; r <= last; r++) {
+                long shared = varInt(position);
+                long suffixLength = varInt((int) shared);
+                int offset = (int) (shared >>> 32);
+                int count = (int) (suffixLength >>> 32);
+                position = (int) suffixLength;
+                if (offset <= matched) {
+                    matched = offset;
+                    int i = 0;
+                    while (i < count && matched < key.length() && data[position + i] == (byte) key.charAt(matched)) {
+                        i++;
+                        matched++;
+                    }
+                    if (i < count) {
+                        comparison = matched < key.length() ? (data[position + i] & 0xFF) - key.charAt(matched) : 1;
+                    } else {
+                        comparison = matched < key.length() ? -1 : 0;
+                    }
+                }
+                if (comparison >= 0) {
+                    if (find) {
+                        return comparison == 0 ? r : -1;
+                    }
+                    return r == last ? comparison : 1;
+                }
+                position += count;
+            }
+            return find ? -1 : comparison;
+        }
+
+        private static boolean isAscii(String key) {
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) >= 0x80) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Returns the varint's value in the high half and the position after it in the low half.
+        private long varInt(int position) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return ((long) value << 32) | position;
+                }
+            }
+        }
+
+        /**
+         * Decodes forward from the last position, seeking to a block start only when asked for an earlier rank
+         * or one past the current block, so ascending lookups cost one decode step each.
+         */
+        private final class Cursor {
+            private int position;
+            private int nextRank;
+            private byte[] current = new byte[64];
+            private int length;
+
+            String key(int rank) {
+                Objects.checkIndex(rank, size);
+                if (rank < nextRank - 1 || nextRank == 0 || rank / BLOCK_SIZE > nextRank / BLOCK_SIZE) {
+                    position = blockOffsets[rank / BLOCK_SIZE];
+                    nextRank = (rank / BLOCK_SIZE) * BLOCK_SIZE;
+                }
+                while (nextRank <= rank) {
+                    advance();
+                }
+                return new String(current, 0, length, StandardCharsets.UTF_8);
+            }
+
+            private void advance() {
+                int shared = readVarInt();
+                int suffixLength = readVarInt();
+                int total = shared + suffixLength;
+                if (total > current.length) {
+                    current = Arrays.copyOf(current, Math.max(total, current.length * 2));
+                }
+                System.arraycopy(data, position, current, shared, suffixLength);
+                position += suffixLength;
+                length = total;
+                nextRank++;
+            }
+
+            private int readVarInt() {
+                int value = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[position++];
+                    value |= (b & 0x7F) << shift;
+                    if ((b & 0x80) == 0) {
+                        return value;
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Keys extends AbstractList<String> implements RandomAccess {
+        private final SpriteSymbolTable table;
+        private final int[] ids;
+        private int hash;
+
+        private Keys(SpriteSymbolTable table, int[] ids) {
+            this.table = table;
+            this.ids = ids;
+        }
+
+        @Override
+        public String get(int index) {
+            return table.key(ids[index]);
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<>() {
+                private final Cursor cursor = table.new Cursor();
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < ids.length;
+                }
+
+                @Override
+                public String next() {
+                    if (index >= ids.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return cursor.key(ids[index++]);
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            if (!(o instanceof String key)) {
+                return -1;
+            }
+            int low = 0;
+            int high = ids.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int comparison = table.compare(ids[mid], key);
+                if (comparison == 0) {
+                    return mid;
+                }
+                if (comparison < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return indexOf(o);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Keys other && other.table.agreesWith(table)) {
+                return Arrays.equals(ids, other.ids);
+            }
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = hash;
+            if (h == 0) {
+                h = super.hashCode();
+                hash = h;
+            }
+            return h;
+        }
+    }
+}
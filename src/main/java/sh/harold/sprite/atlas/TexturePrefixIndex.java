@@ -0,0 +1,63 @@
+package sh.harold.sprite.atlas;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sorted texture paths of one namespace. Paths sharing a prefix form a contiguous run of the array, so
+ * a directory source resolves to that run with two binary searches instead of a scan of every texture.
+ */
+final class TexturePrefixIndex {
+    static final TexturePrefixIndex EMPTY = new TexturePrefixIndex(new String[0]);
+
+    private final String[] paths;
+
+    private TexturePrefixIndex(String[] paths) {
+        this.paths = paths;
+    }
+
+    static TexturePrefixIndex of(Collection<String> paths) {
+        String[] sorted = paths.toArray(String[]::new);
+        Arrays.sort(sorted);
+        return new TexturePrefixIndex(sorted);
+    }
+
+    /**
+     * Returns every path starting with {@code prefix}, in sorted order, as a view over the index.
+     */
+    List<String> withPrefix(String prefix) {
+        int from = lowerBound(prefix);
+        int to = prefixEnd(prefix, from);
+        return Arrays.asList(paths).subList(from, to);
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = paths.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (paths[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Every path at or after the lower bound that starts with the prefix comes before every one that does not.
+    private int prefixEnd(String prefix, int from) {
+        int low = from;
+        int high = paths.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (paths[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
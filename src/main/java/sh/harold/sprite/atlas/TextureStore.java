@@ -0,0 +1,132 @@
+package sh.harold.sprite.atlas;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the compact on-disk form of an {@link AssetIndex}.
+ *
+ * <p>Layout: {@code magic:int, version:short, hashLength:byte, minecraftVersion:string, count:int}, then per
+ * entry a front-coded path ({@code sharedPrefix:varint, suffixLength:varint, suffix:utf8}) followed by the raw
+ * hash bytes, and finally a CRC-32 of everything before it. Paths are stored in sorted order. Format 1 had no
+ * Minecraft version and is still read, as untagged.</p>
+ */
+final class TextureStore {
+    private static final int MAGIC = 0x53505458; // "SPTX"
+    private static final short FORMAT_VERSION = 2;
+    private static final short UNTAGGED_FORMAT_VERSION = 1;
+    private static final int TRAILER_LENGTH = Long.BYTES;
+
+    private TextureStore() {
+    }
+
+    static void write(Path path, String minecraftVersion, AssetIndex index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(1024, index.size() * 48));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeByte(AssetIndex.HASH_LENGTH);
+            BinaryIO.writeString(out, minecraftVersion);
+            out.writeInt(index.size());
+
+            byte[] hashes = index.rawHashes();
+            BinaryIO.FrontCodedWriter paths = new BinaryIO.FrontCodedWriter(out);
+            for (int i = 0; i < index.size(); i++) {
+                paths.write(index.path(i));
+                out.write(hashes, i * AssetIndex.HASH_LENGTH, AssetIndex.HASH_LENGTH);
+            }
+        }
+
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            out.write(payload);
+            out.write(ByteBuffer.allocate(TRAILER_LENGTH).putLong(crc.getValue()).array());
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads only the CRC-32 trailer of a store, which changes whenever its contents do, without reading the
+     * entries.
+     */
+    static long storedChecksum(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            long position = channel.size() - TRAILER_LENGTH;
+            if (position < 0) {
+                throw new IOException("Texture store " + path + " is truncated");
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer, position + trailer.position()) < 0) {
+                    throw new IOException("Texture store " + path + " is truncated");
+                }
+            }
+            return trailer.flip().getLong();
+        }
+    }
+
+    static Tagged read(Path path) throws IOException {
+        byte[] data = Files.readAllBytes(path);
+        if (data.length < TRAILER_LENGTH) {
+            throw new IOException("Texture store " + path + " is truncated");
+        }
+        int payloadLength = data.length - TRAILER_LENGTH;
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, payloadLength);
+        if (crc.getValue() != ByteBuffer.wrap(data, payloadLength, TRAILER_LENGTH).getLong()) {
+            throw new IOException("Texture store " + path + " failed checksum validation");
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data, 0, payloadLength);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Texture store " + path + " has an unknown header");
+            }
+            short version = buffer.getShort();
+            if (version != FORMAT_VERSION && version != UNTAGGED_FORMAT_VERSION) {
+                throw new IOException("Texture store " + path + " uses unsupported format version " + version);
+            }
+            int hashLength = buffer.get();
+            if (hashLength != AssetIndex.HASH_LENGTH) {
+                throw new IOException("Texture store " + path + " uses unexpected hash length " + hashLength);
+            }
+            String minecraftVersion = version == FORMAT_VERSION ? BinaryIO.readString(buffer) : null;
+            int count = buffer.getInt();
+            if (count < 0) {
+                throw new IOException("Texture store " + path + " has a negative entry count");
+            }
+
+            String[] paths = new String[count];
+            byte[] hashes = new byte[count * hashLength];
+            BinaryIO.FrontCodedReader pathReader = new BinaryIO.FrontCodedReader(buffer);
+            for (int i = 0; i < count; i++) {
+                paths[i] = pathReader.read();
+                buffer.get(hashes, i * hashLength, hashLength);
+            }
+            return new Tagged(minecraftVersion, new AssetIndex(paths, hashes));
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Texture store " + path + " is truncated", ex);
+        }
+    }
+
+    /**
+     * A stored asset index and the Minecraft version it was written for, {@code null} for format 1 files.
+     */
+    record Tagged(String minecraftVersion, AssetIndex index) {
+    }
+}
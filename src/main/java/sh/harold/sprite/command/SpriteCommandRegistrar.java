@@ -40,14 +40,18 @@ public record SpriteCommandRegistrar(
             .then(buildRootPaginationLiteral())
             .then(buildReloadLiteral())
             .then(buildViewLiteral())
-            .then(buildPreviewLiteral());
+            .then(buildPreviewLiteral())
+            .then(buildSearchLiteral())
+            .then(buildWhereLiteral())
+            .then(buildDuplicatesLiteral());
     }
 
     private LiteralArgumentBuilder<CommandSourceStack> buildReloadLiteral() {
         return LiteralArgumentBuilder.<CommandSourceStack>literal("reload")
             .executes(refreshHandler::handleRefresh)
             .then(Commands.literal("all").executes(refreshHandler::handleRefresh))
-            .then(Commands.literal("atlascache").executes(refreshHandler::handleRefresh));
+            .then(Commands.literal("atlascache").executes(refreshHandler::handleRefresh))
+            .then(Commands.literal("verify").executes(refreshHandler::handleVerify));
     }
 
     private LiteralArgumentBuilder<CommandSourceStack> buildRootPaginationLiteral() {
@@ -60,6 +64,7 @@ public record SpriteCommandRegistrar(
         return LiteralArgumentBuilder.<CommandSourceStack>literal("view")
             .executes(ctx -> viewHandler.handleRootView(ctx, 1))
             .then(buildRootPaginationLiteral())
+            .then(buildVersionedViewLiteral())
             .then(RequiredArgumentBuilder.<CommandSourceStack, String>argument("atlasCategory", StringArgumentType.string())
                 .suggests(this::suggestAtlasCategories)
                 .executes(ctx -> viewHandler.handleAtlasCategory(ctx,
@@ -71,8 +76,37 @@ public record SpriteCommandRegistrar(
                             IntegerArgumentType.getInteger(ctx, "atlasPage"))))));
     }
 
+    private LiteralArgumentBuilder<CommandSourceStack> buildVersionedViewLiteral() {
+        return LiteralArgumentBuilder.<CommandSourceStack>literal("version")
+            .then(RequiredArgumentBuilder.<CommandSourceStack, String>argument("version", StringArgumentType.string())
+                .suggests(this::suggestVersions)
+                .executes(ctx -> viewHandler.handleRootView(ctx, StringArgumentType.getString(ctx, "version"), 1))
+                .then(LiteralArgumentBuilder.<CommandSourceStack>literal("page")
+                    .then(RequiredArgumentBuilder.<CommandSourceStack, Integer>argument("rootPage", IntegerArgumentType.integer(1))
+                        .executes(ctx -> viewHandler.handleRootView(ctx, StringArgumentType.getString(ctx, "version"),
+                            IntegerArgumentType.getInteger(ctx, "rootPage")))))
+                .then(RequiredArgumentBuilder.<CommandSourceStack, String>argument("atlasCategory", StringArgumentType.string())
+                    .suggests(this::suggestVersionedAtlasCategories)
+                    .executes(ctx -> viewHandler.handleAtlasCategory(ctx, StringArgumentType.getString(ctx, "version"),
+                        StringArgumentType.getString(ctx, "atlasCategory"), 1))
+                    .then(LiteralArgumentBuilder.<CommandSourceStack>literal("page")
+                        .then(RequiredArgumentBuilder.<CommandSourceStack, Integer>argument("atlasPage", IntegerArgumentType.integer(1))
+                            .executes(ctx -> viewHandler.handleAtlasCategory(ctx, StringArgumentType.getString(ctx, "version"),
+                                StringArgumentType.getString(ctx, "atlasCategory"),
+                                IntegerArgumentType.getInteger(ctx, "atlasPage")))))));
+    }
+
     private LiteralArgumentBuilder<CommandSourceStack> buildPreviewLiteral() {
         return LiteralArgumentBuilder.<CommandSourceStack>literal("preview")
+            .then(LiteralArgumentBuilder.<CommandSourceStack>literal("version")
+                .then(RequiredArgumentBuilder.<CommandSourceStack, String>argument("version", StringArgumentType.string())
+                    .suggests(this::suggestVersions)
+                    .then(RequiredArgumentBuilder.<CommandSourceStack, String>argument("atlasCategory", StringArgumentType.string())
+                        .suggests(this::suggestVersionedAtlasCategories)
+                        .then(RequiredArgumentBuilder.<CommandSourceStack, String>argument("spriteId", StringArgumentType.greedyString())
+                            .executes(ctx -> viewHandler.handlePreview(ctx, StringArgumentType.getString(ctx, "version"),
+                                StringArgumentType.getString(ctx, "atlasCategory"),
+                                StringArgumentType.getString(ctx, "spriteId")))))))
             .then(RequiredArgumentBuilder.<CommandSourceStack, String>argument("atlasCategory", StringArgumentType.string())
                 .suggests(this::suggestAtlasCategories)
                 .then(RequiredArgumentBuilder.<CommandSourceStack, String>argument("spriteId", StringArgumentType.greedyString())
@@ -81,8 +115,67 @@ public record SpriteCommandRegistrar(
                         StringArgumentType.getString(ctx, "spriteId")))));
     }
 
+    private LiteralArgumentBuilder<CommandSourceStack> buildSearchLiteral() {
+        return LiteralArgumentBuilder.<CommandSourceStack>literal("search")
+            .then(RequiredArgumentBuilder.<CommandSourceStack, String>argument("query", StringArgumentType.string())
+                .executes(ctx -> viewHandler.handleSearch(ctx, StringArgumentType.getString(ctx, "query"), null, 1))
+                .then(LiteralArgumentBuilder.<CommandSourceStack>literal("page")
+                    .then(RequiredArgumentBuilder.<CommandSourceStack, Integer>argument("searchPage", IntegerArgumentType.integer(1))
+                        .executes(ctx -> viewHandler.handleSearch(ctx, StringArgumentType.getString(ctx, "query"), null,
+                            IntegerArgumentType.getInteger(ctx, "searchPage")))))
+                .then(RequiredArgumentBuilder.<CommandSourceStack, String>argument("atlasCategory", StringArgumentType.string())
+                    .suggests(this::suggestAtlasCategories)
+                    .executes(ctx -> viewHandler.handleSearch(ctx, StringArgumentType.getString(ctx, "query"),
+                        StringArgumentType.getString(ctx, "atlasCategory"), 1))
+                    .then(LiteralArgumentBuilder.<CommandSourceStack>literal("page")
+                        .then(RequiredArgumentBuilder.<CommandSourceStack, Integer>argument("searchPage", IntegerArgumentType.integer(1))
+                            .executes(ctx -> viewHandler.handleSearch(ctx, StringArgumentType.getString(ctx, "query"),
+                                StringArgumentType.getString(ctx, "atlasCategory"),
+                                IntegerArgumentType.getInteger(ctx, "searchPage")))))));
+    }
+
+    private LiteralArgumentBuilder<CommandSourceStack> buildWhereLiteral() {
+        return LiteralArgumentBuilder.<CommandSourceStack>literal("where")
+            .then(LiteralArgumentBuilder.<CommandSourceStack>literal("page")
+                .then(RequiredArgumentBuilder.<CommandSourceStack, Integer>argument("wherePage", IntegerArgumentType.integer(1))
+                    .then(RequiredArgumentBuilder.<CommandSourceStack, String>argument("texture", StringArgumentType.greedyString())
+                        .executes(ctx -> viewHandler.handleWhere(ctx, StringArgumentType.getString(ctx, "texture"),
+                            IntegerArgumentType.getInteger(ctx, "wherePage"))))))
+            .then(RequiredArgumentBuilder.<CommandSourceStack, String>argument("texture", StringArgumentType.greedyString())
+                .executes(ctx -> viewHandler.handleWhere(ctx, StringArgumentType.getString(ctx, "texture"), 1)));
+    }
+
+    private LiteralArgumentBuilder<CommandSourceStack> buildDuplicatesLiteral() {
+        return LiteralArgumentBuilder.<CommandSourceStack>literal("duplicates")
+            .executes(ctx -> viewHandler.handleDuplicates(ctx, 1))
+            .then(LiteralArgumentBuilder.<CommandSourceStack>literal("page")
+                .then(RequiredArgumentBuilder.<CommandSourceStack, Integer>argument("duplicatesPage", IntegerArgumentType.integer(1))
+                    .executes(ctx -> viewHandler.handleDuplicates(ctx,
+                        IntegerArgumentType.getInteger(ctx, "duplicatesPage")))));
+    }
+
+    private CompletableFuture<Suggestions> suggestVersions(CommandContext<CommandSourceStack> context, SuggestionsBuilder builder) {
+        String remaining = builder.getRemaining();
+        for (String version : viewHandler.catalogs().versions()) {
+            if (startsWithIgnoreCase(version, remaining)) {
+                builder.suggest(version);
+            }
+        }
+        return builder.buildFuture();
+    }
+
     private CompletableFuture<Suggestions> suggestAtlasCategories(CommandContext<CommandSourceStack> context, SuggestionsBuilder builder) {
-        return viewHandler.catalog().currentSnapshot()
+        return suggestAtlasCategories(viewHandler.catalogs().primary(), builder);
+    }
+
+    private CompletableFuture<Suggestions> suggestVersionedAtlasCategories(CommandContext<CommandSourceStack> context,
+                                                                           SuggestionsBuilder builder) {
+        SpriteAtlasCatalog catalog = viewHandler.catalogs().catalog(StringArgumentType.getString(context, "version"));
+        return catalog == null ? builder.buildFuture() : suggestAtlasCategories(catalog, builder);
+    }
+
+    private CompletableFuture<Suggestions> suggestAtlasCategories(SpriteAtlasCatalog catalog, SuggestionsBuilder builder) {
+        return catalog.currentSnapshot()
             .map(snapshot -> {
                 String remaining = builder.getRemaining();
                 for (SpriteAtlasCatalog.AtlasEntry atlas : snapshot.atlases()) {
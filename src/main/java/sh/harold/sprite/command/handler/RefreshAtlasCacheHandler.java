@@ -10,4 +10,9 @@ public record RefreshAtlasCacheHandler(SpriteAtlasService atlasService) {
         atlasService.refresh(context.getSource().getSender());
         return Command.SINGLE_SUCCESS;
     }
+
+    public int handleVerify(CommandContext<CommandSourceStack> context) {
+        atlasService.refresh(context.getSource().getSender(), true);
+        return Command.SINGLE_SUCCESS;
+    }
 }
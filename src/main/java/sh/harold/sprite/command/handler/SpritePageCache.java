@@ -0,0 +1,152 @@
+package sh.harold.sprite.command.handler;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.event.HoverEvent;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Rendered chat pages keyed by catalog generation, atlas and page number. The cache is bounded by the number of
+ * components its pages hold and drops the least recently used page first. It also counts how often each page
+ * is opened, so the most visited pages can be rendered ahead of time once the catalog changes.
+ */
+public final class SpritePageCache {
+    /**
+     * Stands in for the atlas id of the root atlas list.
+     */
+    static final String ROOT = "";
+
+    private final long maxComponents;
+    private final LinkedHashMap<PageKey, CachedPage> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Visit, LongAdder> visits = new ConcurrentHashMap<>();
+    private long components;
+
+    public SpritePageCache(int maxComponents) {
+        this.maxComponents = Math.max(0, maxComponents);
+    }
+
+    long capacity() {
+        return maxComponents;
+    }
+
+    /**
+     * Returns the cached page, rendering and caching it on a miss, and counts the visit.
+     */
+    List<Component> page(String version, long generation, String atlasId, int page, Supplier<List<Component>> render) {
+        visits.computeIfAbsent(new Visit(version, atlasId, page), key -> new LongAdder()).increment();
+        List<Component> cached = cached(generation, atlasId, page);
+        if (cached != null) {
+            return cached;
+        }
+        // Rendered outside the lock; two players missing the same page at once just render it twice.
+        List<Component> rendered = List.copyOf(render.get());
+        put(generation, atlasId, page, rendered);
+        return rendered;
+    }
+
+    synchronized List<Component> cached(long generation, String atlasId, int page) {
+        CachedPage cached = pages.get(new PageKey(generation, atlasId, page));
+        return cached == null ? null : cached.lines();
+    }
+
+    /**
+     * Caches a rendered page, evicting the least recently used pages to stay within bounds.
+     *
+     * @return the number of components the page holds
+     */
+    synchronized int put(long generation, String atlasId, int page, List<Component> lines) {
+        int weight = weigh(lines);
+        if (weight > maxComponents) {
+            return weight;
+        }
+        CachedPage replaced = pages.put(new PageKey(generation, atlasId, page), new CachedPage(List.copyOf(lines), weight));
+        components += weight - (replaced == null ? 0 : replaced.weight());
+        Iterator<CachedPage> eldest = pages.values().iterator();
+        while (components > maxComponents && eldest.hasNext()) {
+            components -= eldest.next().weight();
+            eldest.remove();
+        }
+        return weight;
+    }
+
+    /**
+     * Carries the pages of atlases {@code keep} accepts from {@code previousGeneration} over to
+     * {@code generation}, and drops every other page of {@code previousGeneration}.
+     */
+    synchronized void advance(long previousGeneration, long generation, Predicate<String> keep) {
+        Map<PageKey, CachedPage> carried = new LinkedHashMap<>();
+        Iterator<Map.Entry<PageKey, CachedPage>> entries = pages.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<PageKey, CachedPage> entry = entries.next();
+            PageKey key = entry.getKey();
+            if (key.generation() != previousGeneration) {
+                continue;
+            }
+            entries.remove();
+            if (keep.test(key.atlasId())) {
+                carried.put(new PageKey(generation, key.atlasId(), key.page()), entry.getValue());
+            } else {
+                components -= entry.getValue().weight();
+            }
+        }
+        carried.forEach((key, page) -> {
+            CachedPage replaced = pages.put(key, page);
+            components -= replaced == null ? 0 : replaced.weight();
+        });
+    }
+
+    /**
+     * The pages of {@code version} that were opened so far, most visited first.
+     */
+    List<Visit> mostVisited(String version) {
+        List<Map.Entry<Visit, Long>> counted = new ArrayList<>();
+        visits.forEach((visit, count) -> {
+            if (visit.version().equals(version)) {
+                counted.add(Map.entry(visit, count.sum()));
+            }
+        });
+        counted.sort(Map.Entry.<Visit, Long>comparingByValue(Comparator.reverseOrder()));
+        return counted.stream().map(Map.Entry::getKey).toList();
+    }
+
+    private static int weigh(List<Component> lines) {
+        int weight = 0;
+        for (Component line : lines) {
+            weight += weigh(line);
+        }
+        return weight;
+    }
+
+    private static int weigh(Component component) {
+        int weight = 1;
+        HoverEvent<?> hover = component.hoverEvent();
+        if (hover != null && hover.value() instanceof Component text) {
+            weight += weigh(text);
+        }
+        for (Component child : component.children()) {
+            weight += weigh(child);
+        }
+        return weight;
+    }
+
+    /**
+     * A page players opened, independent of the generation it was rendered for.
+     */
+    record Visit(String version, String atlasId, int page) {
+    }
+
+    private record PageKey(long generation, String atlasId, int page) {
+    }
+
+    private record CachedPage(List<Component> lines, int weight) {
+    }
+}
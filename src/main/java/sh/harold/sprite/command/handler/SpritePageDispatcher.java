@@ -0,0 +1,77 @@
+package sh.harold.sprite.command.handler;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Builds command replies on virtual threads and delivers them on the main thread. Replies to one sender are
+ * built one after another and delivered in the order they were submitted, so quick clicks through a menu
+ * never arrive out of order; replies to different senders are built concurrently.
+ */
+public final class SpritePageDispatcher implements AutoCloseable {
+    private final Plugin plugin;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<CommandSender, CompletableFuture<Void>> queues = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public SpritePageDispatcher(Plugin plugin) {
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+    }
+
+    /**
+     * Queues {@code reply} for {@code sender}. The reply is built off the main thread and must only read
+     * immutable state, such as a catalog snapshot taken beforehand; what it returns runs on the main thread.
+     */
+    void submit(CommandSender sender, Supplier<Consumer<CommandSender>> reply) {
+        if (closed) {
+            return;
+        }
+        CompletableFuture<Void> queued = queues.compute(sender, (key, tail) ->
+            (tail == null ? CompletableFuture.<Void>completedFuture(null) : tail)
+                .thenApplyAsync(ignored -> reply.get(), workers)
+                .thenAccept(delivery -> deliver(sender, delivery))
+                .exceptionally(ex -> {
+                    if (!isShutdown(ex)) {
+                        plugin.getLogger().log(Level.WARNING, "Failed to build reply for " + sender.getName(), ex);
+                    }
+                    return null;
+                }));
+        queued.whenComplete((ignored, ex) -> queues.remove(sender, queued));
+    }
+
+    // The scheduler runs tasks in the order they were added, which keeps each sender's replies in order.
+    private void deliver(CommandSender sender, Consumer<CommandSender> delivery) {
+        if (plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, () -> delivery.accept(sender));
+        }
+    }
+
+    // Replies still queued when the plugin disables are dropped without a warning.
+    private boolean isShutdown(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return closed && (cause instanceof RejectedExecutionException || cause instanceof CancellationException
+            || cause instanceof InterruptedException);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        queues.values().forEach(queued -> queued.cancel(false));
+        queues.clear();
+        workers.shutdownNow();
+    }
+}
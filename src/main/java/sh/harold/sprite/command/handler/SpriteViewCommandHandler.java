@@ -1,15 +1,24 @@
 package sh.harold.sprite.command.handler;
 
 import com.mojang.brigadier.Command;
+import com.mojang.brigadier.StringReader;
 import com.mojang.brigadier.context.CommandContext;
 import io.papermc.paper.command.brigadier.CommandSourceStack;
+import net.kyori.adventure.key.Key;
 import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.JoinConfiguration;
 import net.kyori.adventure.text.event.ClickEvent;
 import net.kyori.adventure.text.format.NamedTextColor;
-import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.format.TextDecoration;
+import net.kyori.adventure.text.object.ObjectContents;
 import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 import net.kyori.adventure.title.Title;
+import org.bukkit.command.CommandSender;
+import sh.harold.sprite.atlas.CatalogDiff;
 import sh.harold.sprite.atlas.SpriteAtlasCatalog;
+import sh.harold.sprite.atlas.SpriteCatalogRegistry;
+import sh.harold.sprite.atlas.SpriteReverseIndex;
+import sh.harold.sprite.atlas.SpriteSearchIndex;
 import sh.harold.sprite.core.Pagination;
 
 import java.time.Duration;
@@ -18,131 +27,326 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
-
-public record SpriteViewCommandHandler(SpriteAtlasCatalog catalog, Duration titleDisplayDuration) {
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public record SpriteViewCommandHandler(
+    SpriteCatalogRegistry catalogs,
+    Duration titleDisplayDuration,
+    SpritePageCache pageCache,
+    SpritePageDispatcher dispatcher
+) {
     private static final int ROOT_PAGE_SIZE = 6;
     private static final int MENU_PAGE_SIZE = 16;
-    private static final MiniMessage MINI = MiniMessage.miniMessage();
     private static final int CHAT_WIDTH_CHARACTERS = 53; // 320px chat width / 6px glyph width
-    private static final Component PAGE_RULE = MINI.deserialize(
-        "<blue><strikethrough>" + "-".repeat(CHAT_WIDTH_CHARACTERS) + "</strikethrough></blue>");
+    private static final Component PAGE_RULE = Component.text("-".repeat(CHAT_WIDTH_CHARACTERS),
+        NamedTextColor.BLUE, TextDecoration.STRIKETHROUGH);
     private static final Component NAVBAR_SPACER = Component.text(" ");
     private static final String HEADER_BADGE_MENU = "MENU";
     private static final String HEADER_BADGE_ATLAS = "ATLAS";
+    private static final String HEADER_BADGE_SEARCH = "SEARCH";
+    private static final String HEADER_BADGE_WHERE = "WHERE";
+    private static final String HEADER_BADGE_DUPLICATES = "DUPLICATES";
     private static final NamedTextColor BREADCRUMB_COLOR = NamedTextColor.GOLD;
-    private static final Component BREADCRUMB_TOOLTIP = MINI.deserialize("<yellow><bold>CLICK </bold></yellow><gray>to return to previous menu!</gray>");
+    private static final Component BREADCRUMB_TOOLTIP = Component.textOfChildren(
+        Component.text("CLICK ", NamedTextColor.YELLOW, TextDecoration.BOLD),
+        Component.text("to return to previous menu!", NamedTextColor.GRAY));
+    private static final Component MISSING_SPRITE = Component.text("?", NamedTextColor.RED);
     private static final PlainTextComponentSerializer PLAIN = PlainTextComponentSerializer.plainText();
 
     public SpriteViewCommandHandler {
-        catalog = Objects.requireNonNull(catalog, "catalog");
+        catalogs = Objects.requireNonNull(catalogs, "catalogs");
         Duration sanitized = Objects.requireNonNull(titleDisplayDuration, "titleDisplayDuration");
         titleDisplayDuration = sanitized.isNegative() ? Duration.ZERO : sanitized;
+        pageCache = Objects.requireNonNull(pageCache, "pageCache");
+        dispatcher = Objects.requireNonNull(dispatcher, "dispatcher");
     }
 
     public int handleRootView(CommandContext<CommandSourceStack> context, int page) {
-        Optional<SpriteAtlasCatalog.CatalogSnapshot> snapshot = catalog.currentSnapshot();
-        if (snapshot.isEmpty()) {
-            sendNotReady(context);
-            return Command.SINGLE_SUCCESS;
-        }
+        return handleRootView(context, null, page);
+    }
 
-        Pagination.Page<SpriteAtlasCatalog.AtlasEntry> slice = Pagination.slice(snapshot.get().atlases(), page, ROOT_PAGE_SIZE);
-        sendPageRule(context);
-        sendHeader(context, "Sprite Atlases", HEADER_BADGE_MENU, slice, false, null,
-            slice.hasPrevious() ? command("sprite", "page", Integer.toString(slice.page() - 1)) : null,
-            slice.hasNext() ? command("sprite", "page", Integer.toString(slice.page() + 1)) : null);
-        sendNavbarSpacer(context);
+    /**
+     * Lists the atlases of {@code version}, or of the server's own version when {@code version} is {@code null}.
+     */
+    public int handleRootView(CommandContext<CommandSourceStack> context, String version, int page) {
+        return respond(context, version, snapshot -> rootView(snapshot, version, page));
+    }
+
+    private Consumer<CommandSender> rootView(SpriteAtlasCatalog.CatalogSnapshot snapshot, String version, int page) {
+        int pageNumber = Pagination.pageNumber(snapshot.atlases().size(), page, ROOT_PAGE_SIZE);
+        return pageMessage(pageCache.page(catalogVersion(version), snapshot.generation(), SpritePageCache.ROOT,
+            pageNumber, () -> renderRootPage(snapshot, version, pageNumber)));
+    }
+
+    private List<Component> renderRootPage(SpriteAtlasCatalog.CatalogSnapshot snapshot, String version, int page) {
+        Pagination.Page<SpriteAtlasCatalog.AtlasEntry> slice = Pagination.slice(snapshot.atlases(), page, ROOT_PAGE_SIZE);
+        List<Component> lines = new ArrayList<>();
+        lines.add(PAGE_RULE);
+        lines.add(header(rootTitle(version), HEADER_BADGE_MENU, null, slice, false, null,
+            slice.hasPrevious() ? rootPageCommand(version, slice.page() - 1) : null,
+            slice.hasNext() ? rootPageCommand(version, slice.page() + 1) : null));
+        lines.add(NAVBAR_SPACER);
 
         if (slice.items().isEmpty()) {
-            sendLine(context, Component.text("No atlases found.", NamedTextColor.GRAY));
-            sendPageRule(context);
-            return Command.SINGLE_SUCCESS;
+            lines.add(Component.text("No atlases found.", NamedTextColor.GRAY));
+            lines.add(PAGE_RULE);
+            return lines;
         }
 
         for (SpriteAtlasCatalog.AtlasEntry atlas : slice.items()) {
             Component line = Component.text(atlas.displayName(), NamedTextColor.YELLOW)
                 .append(Component.text(" - ", NamedTextColor.DARK_GRAY))
                 .append(button("[CLICK TO VIEW]", NamedTextColor.GREEN,
-                    command("sprite", "view", atlasCommandArgument(atlas)),
+                    viewCommand(version, atlasCommandArgument(atlas)),
                     "Browse " + atlas.spriteCount() + " sprites"))
                 .append(Component.text(" (" + atlas.spriteCount() + " sprites)", NamedTextColor.GRAY));
-            sendLine(context, line);
+            lines.add(line);
         }
 
-        sendPageRule(context);
-        return Command.SINGLE_SUCCESS;
+        lines.add(PAGE_RULE);
+        return lines;
     }
 
     public int handleAtlasCategory(CommandContext<CommandSourceStack> context, String atlasId, int page) {
-        Optional<SpriteAtlasCatalog.CatalogSnapshot> snapshot = catalog.currentSnapshot();
-        if (snapshot.isEmpty()) {
-            sendNotReady(context);
-            return Command.SINGLE_SUCCESS;
-        }
+        return handleAtlasCategory(context, null, atlasId, page);
+    }
+
+    public int handleAtlasCategory(CommandContext<CommandSourceStack> context, String version, String atlasId, int page) {
+        return respond(context, version, snapshot -> atlasView(snapshot, version, atlasId, page));
+    }
 
-        SpriteAtlasCatalog.AtlasEntry atlas = snapshot.get().atlas(atlasId);
+    private Consumer<CommandSender> atlasView(SpriteAtlasCatalog.CatalogSnapshot snapshot, String version, String atlasId,
+                                              int page) {
+        SpriteAtlasCatalog.AtlasEntry atlas = snapshot.atlas(atlasId);
         if (atlas == null) {
-            sendLine(context, Component.text("Unknown atlas: " + atlasId, NamedTextColor.RED));
-            return Command.SINGLE_SUCCESS;
+            return message(Component.text("Unknown atlas: " + atlasId, NamedTextColor.RED));
         }
-        String atlasCommand = atlasCommandArgument(atlas);
 
-        List<String> sprites = atlasSpriteKeys(atlas);
-        Pagination.Page<String> slice = Pagination.slice(sprites, page, MENU_PAGE_SIZE);
-        sendPageRule(context);
-        sendHeader(context, atlas.atlasId(), HEADER_BADGE_ATLAS, slice, true, command("sprite"),
-            slice.hasPrevious() ? command("sprite", "view", atlasCommand, "page", Integer.toString(slice.page() - 1)) : null,
-            slice.hasNext() ? command("sprite", "view", atlasCommand, "page", Integer.toString(slice.page() + 1)) : null);
-        sendNavbarSpacer(context);
+        int pageNumber = Pagination.pageNumber(atlas.spriteCount(), page, MENU_PAGE_SIZE);
+        return pageMessage(pageCache.page(catalogVersion(version), snapshot.generation(), atlas.atlasId(),
+            pageNumber, () -> renderAtlasPage(version, atlas, pageNumber)));
+    }
+
+    private List<Component> renderAtlasPage(String version, SpriteAtlasCatalog.AtlasEntry atlas, int page) {
+        String atlasCommand = atlasCommandArgument(atlas);
+        Pagination.Page<String> slice = Pagination.slice(atlas.sprites(), page, MENU_PAGE_SIZE);
+        List<Component> lines = new ArrayList<>();
+        lines.add(PAGE_RULE);
+        lines.add(header(atlas.atlasId(), HEADER_BADGE_ATLAS, scopedVersion(version), slice, true, viewCommand(version),
+            slice.hasPrevious() ? viewCommand(version, atlasCommand, "page", Integer.toString(slice.page() - 1)) : null,
+            slice.hasNext() ? viewCommand(version, atlasCommand, "page", Integer.toString(slice.page() + 1)) : null));
+        lines.add(NAVBAR_SPACER);
 
         if (slice.items().isEmpty()) {
-            sendLine(context, Component.text("This atlas has no sprites.", NamedTextColor.GRAY));
-            sendPageRule(context);
-            return Command.SINGLE_SUCCESS;
+            lines.add(Component.text("This atlas has no sprites.", NamedTextColor.GRAY));
+            lines.add(PAGE_RULE);
+            return lines;
         }
 
         for (String sprite : slice.items()) {
-            sendLine(context, buildSpriteLine(atlas, sprite));
+            lines.add(buildSpriteLine(version, atlas, sprite));
         }
         int remainingSlots = MENU_PAGE_SIZE - slice.items().size();
         for (int i = 0; i < remainingSlots; i++) {
-            sendLine(context, Component.text(" "));
+            lines.add(Component.text(" "));
+        }
+
+        lines.add(PAGE_RULE);
+        return lines;
+    }
+
+    /**
+     * Moves cached pages of atlases the change left alone over to the new snapshot, then renders the pages
+     * players visit most until the cache is full. Run off the main thread after {@code version}'s catalog
+     * changed; stops early once a newer snapshot is published.
+     */
+    public void warmPages(String version, SpriteAtlasCatalog.CatalogSnapshot previous,
+                          SpriteAtlasCatalog.CatalogSnapshot current, CatalogDiff diff) {
+        pageCache.advance(previous.generation(), current.generation(),
+            atlasId -> !SpritePageCache.ROOT.equals(atlasId) && !diff.affects(atlasId));
+        SpriteAtlasCatalog catalog = catalogs.catalog(version);
+        long warmed = 0;
+        for (SpritePageCache.Visit visit : pageCache.mostVisited(version)) {
+            if (warmed >= pageCache.capacity() || catalog.snapshotOrEmpty() != current) {
+                return;
+            }
+            boolean root = SpritePageCache.ROOT.equals(visit.atlasId());
+            SpriteAtlasCatalog.AtlasEntry atlas = root ? null : current.atlas(visit.atlasId());
+            if (!root && atlas == null) {
+                continue;
+            }
+            int page = root
+                ? Pagination.pageNumber(current.atlases().size(), visit.page(), ROOT_PAGE_SIZE)
+                : Pagination.pageNumber(atlas.spriteCount(), visit.page(), MENU_PAGE_SIZE);
+            if (pageCache.cached(current.generation(), visit.atlasId(), page) == null) {
+                List<Component> lines = root ? renderRootPage(current, version, page) : renderAtlasPage(version, atlas, page);
+                warmed += pageCache.put(current.generation(), visit.atlasId(), page, lines);
+            }
         }
-
-        sendPageRule(context);
-        return Command.SINGLE_SUCCESS;
     }
 
     public int handlePreview(CommandContext<CommandSourceStack> context, String atlasId, String spriteKey) {
-        Optional<SpriteAtlasCatalog.CatalogSnapshot> snapshot = catalog.currentSnapshot();
-        if (snapshot.isEmpty()) {
-            sendNotReady(context);
-            return Command.SINGLE_SUCCESS;
-        }
+        return handlePreview(context, null, atlasId, spriteKey);
+    }
+
+    public int handlePreview(CommandContext<CommandSourceStack> context, String version, String atlasId, String spriteKey) {
+        return respond(context, version, snapshot -> preview(snapshot, atlasId, spriteKey));
+    }
 
-        SpriteAtlasCatalog.AtlasEntry atlas = snapshot.get().atlas(atlasId);
+    private Consumer<CommandSender> preview(SpriteAtlasCatalog.CatalogSnapshot snapshot, String atlasId, String spriteKey) {
+        SpriteAtlasCatalog.AtlasEntry atlas = snapshot.atlas(atlasId);
         if (atlas == null) {
-            sendLine(context, Component.text("Unknown atlas: " + atlasId, NamedTextColor.RED));
-            return Command.SINGLE_SUCCESS;
+            return message(Component.text("Unknown atlas: " + atlasId, NamedTextColor.RED));
         }
 
         String normalizedSprite = normalizeSpriteArgument(spriteKey);
-        if (!atlasContainsSprite(atlas, normalizedSprite)) {
-            sendLine(context, Component.text("Unknown sprite: " + normalizedSprite, NamedTextColor.RED));
-            return Command.SINGLE_SUCCESS;
+        if (!atlas.containsSprite(normalizedSprite)) {
+            return message(Component.text("Unknown sprite: " + normalizedSprite, NamedTextColor.RED));
         }
 
-        showSpritePreview(context, atlas.atlasId(), normalizedSprite);
-        return Command.SINGLE_SUCCESS;
+        return showSpritePreview(atlas.atlasId(), normalizedSprite);
+    }
+
+    /**
+     * Lists ranked sprites whose key contains {@code query}, across every atlas or only {@code atlasId}'s.
+     */
+    public int handleSearch(CommandContext<CommandSourceStack> context, String query, String atlasId, int page) {
+        return respond(context, null, snapshot -> searchView(snapshot, query, atlasId, page));
+    }
+
+    private Consumer<CommandSender> searchView(SpriteAtlasCatalog.CatalogSnapshot snapshot, String query, String atlasId,
+                                               int page) {
+        SpriteAtlasCatalog.AtlasEntry scope = null;
+        if (atlasId != null) {
+            scope = snapshot.atlas(atlasId);
+            if (scope == null) {
+                return message(Component.text("Unknown atlas: " + atlasId, NamedTextColor.RED));
+            }
+        }
+        String scopeCommand = scope == null ? null : atlasCommandArgument(scope);
+
+        List<SpriteSearchIndex.Hit> hits = snapshot.searchIndex().search(query, scope == null ? null : scope.atlasId());
+        Pagination.Page<SpriteSearchIndex.Hit> slice = Pagination.slice(hits, page, MENU_PAGE_SIZE);
+        String title = scope == null ? "Search: " + query : "Search: " + query + " in " + scope.displayName();
+        List<Component> lines = new ArrayList<>();
+        lines.add(PAGE_RULE);
+        lines.add(header(title, HEADER_BADGE_SEARCH, null, slice, true, command("sprite"),
+            slice.hasPrevious() ? command("sprite", "search", query, scopeCommand, "page", Integer.toString(slice.page() - 1)) : null,
+            slice.hasNext() ? command("sprite", "search", query, scopeCommand, "page", Integer.toString(slice.page() + 1)) : null));
+        lines.add(NAVBAR_SPACER);
+
+        if (slice.items().isEmpty()) {
+            lines.add(Component.text("No sprites match \"" + query + "\".", NamedTextColor.GRAY));
+            lines.add(PAGE_RULE);
+            return pageMessage(lines);
+        }
+
+        for (SpriteSearchIndex.Hit hit : slice.items()) {
+            SpriteAtlasCatalog.AtlasEntry atlas = snapshot.atlas(hit.atlasId());
+            Component line = buildSpriteLine(null, atlas, hit.spriteKey());
+            if (scope == null) {
+                line = line.append(Component.text(" (" + atlas.displayName() + ")", NamedTextColor.DARK_GRAY));
+            }
+            lines.add(line);
+        }
+
+        lines.add(PAGE_RULE);
+        return pageMessage(lines);
+    }
+
+    /**
+     * Lists every sprite built from {@code texture}, given as a resource location or asset path.
+     */
+    public int handleWhere(CommandContext<CommandSourceStack> context, String texture, int page) {
+        return respond(context, null, snapshot -> whereView(snapshot, texture, page));
+    }
+
+    private Consumer<CommandSender> whereView(SpriteAtlasCatalog.CatalogSnapshot snapshot, String texture, int page) {
+        String texturePath = SpriteReverseIndex.texturePath(normalizeSpriteArgument(texture));
+        List<SpriteReverseIndex.SpriteUse> uses = snapshot.reverseIndex().where(texturePath);
+        Pagination.Page<SpriteReverseIndex.SpriteUse> slice = Pagination.slice(uses, page, MENU_PAGE_SIZE);
+        List<Component> lines = new ArrayList<>();
+        lines.add(PAGE_RULE);
+        lines.add(header("Where: " + texturePath, HEADER_BADGE_WHERE, null, slice, true, command("sprite"),
+            slice.hasPrevious() ? command("sprite", "where", "page", Integer.toString(slice.page() - 1), texturePath) : null,
+            slice.hasNext() ? command("sprite", "where", "page", Integer.toString(slice.page() + 1), texturePath) : null));
+        lines.add(NAVBAR_SPACER);
+
+        if (slice.items().isEmpty()) {
+            lines.add(Component.text("No atlas uses " + texturePath + ".", NamedTextColor.GRAY));
+            lines.add(PAGE_RULE);
+            return pageMessage(lines);
+        }
+
+        for (SpriteReverseIndex.SpriteUse use : slice.items()) {
+            SpriteAtlasCatalog.AtlasEntry atlas = snapshot.atlas(use.atlasId());
+            Component line = buildSpriteLine(null, atlas, use.spriteKey())
+                .append(Component.text(" (" + atlas.displayName() + (use.paletted() ? ", paletted" : "") + ")",
+                    NamedTextColor.DARK_GRAY));
+            lines.add(line);
+        }
+
+        lines.add(PAGE_RULE);
+        return pageMessage(lines);
+    }
+
+    /**
+     * Lists sprites whose textures have identical content, one numbered set after another.
+     */
+    public int handleDuplicates(CommandContext<CommandSourceStack> context, int page) {
+        return respond(context, null, snapshot -> duplicatesView(snapshot, page));
+    }
+
+    private Consumer<CommandSender> duplicatesView(SpriteAtlasCatalog.CatalogSnapshot snapshot, int page) {
+        List<DuplicateRow> rows = new ArrayList<>();
+        List<SpriteReverseIndex.DuplicateSet> sets = snapshot.reverseIndex().duplicates();
+        for (int i = 0; i < sets.size(); i++) {
+            for (SpriteReverseIndex.SpriteUse use : sets.get(i).sprites()) {
+                rows.add(new DuplicateRow(i + 1, sets.get(i).hash(), use));
+            }
+        }
+        Pagination.Page<DuplicateRow> slice = Pagination.slice(rows, page, MENU_PAGE_SIZE);
+        List<Component> lines = new ArrayList<>();
+        lines.add(PAGE_RULE);
+        lines.add(header("Duplicate Sprites", HEADER_BADGE_DUPLICATES, null, slice, true, command("sprite"),
+            slice.hasPrevious() ? command("sprite", "duplicates", "page", Integer.toString(slice.page() - 1)) : null,
+            slice.hasNext() ? command("sprite", "duplicates", "page", Integer.toString(slice.page() + 1)) : null));
+        lines.add(NAVBAR_SPACER);
+
+        if (slice.items().isEmpty()) {
+            lines.add(Component.text("No sprites share identical textures.", NamedTextColor.GRAY));
+            lines.add(PAGE_RULE);
+            return pageMessage(lines);
+        }
+
+        for (DuplicateRow row : slice.items()) {
+            SpriteAtlasCatalog.AtlasEntry atlas = snapshot.atlas(row.sprite().atlasId());
+            Component setLabel = Component.text("#" + row.set(), NamedTextColor.GOLD)
+                .hoverEvent(Component.text(row.sprite().texturePath() + "\nSHA-1 " + row.hash(), NamedTextColor.GRAY));
+            Component line = setLabel
+                .append(Component.text(" "))
+                .append(buildSpriteLine(null, atlas, row.sprite().spriteKey()))
+                .append(Component.text(" (" + atlas.displayName() + ")", NamedTextColor.DARK_GRAY));
+            lines.add(line);
+        }
+
+        lines.add(PAGE_RULE);
+        return pageMessage(lines);
+    }
+
+    private Component buildSpriteLine(String version, SpriteAtlasCatalog.AtlasEntry atlas, String spriteKey) {
+        return spriteLine(atlas.atlasId(), spriteKey, previewCommand(version, atlasCommandArgument(atlas), spriteKey));
     }
 
-    private Component buildSpriteLine(SpriteAtlasCatalog.AtlasEntry atlas, String spriteKey) {
-        String atlasId = atlas.atlasId();
-        String atlasCommandId = atlasCommandArgument(atlas);
-        String miniMessageTag = buildMiniMessageSpriteTag(atlasId, spriteKey);
-        String miniMessagePayload = "<" + miniMessageTag + ">";
+    /**
+     * Renders one sprite row: the truncated key, the framed sprite that runs {@code previewCommand}, and the
+     * copy buttons. Needs no handler state, so the row benchmark renders exactly what players are sent.
+     */
+    static Component spriteLine(String atlasId, String spriteKey, String previewCommand) {
+        String miniMessagePayload = "<" + buildMiniMessageSpriteTag(atlasId, spriteKey) + ">";
         Component name = buildSpriteName(spriteKey);
-        Component icon = buildSpriteIcon(atlasCommandId, spriteKey, miniMessageTag);
+        Component icon = buildSpriteIcon(atlasId, spriteKey, previewCommand);
         Component miniMessageButton = copyButton("[MM]", NamedTextColor.LIGHT_PURPLE, miniMessagePayload,
             "Copy MiniMessage tag");
         String jsonPayload = buildAtlasJsonPayload(atlasId, spriteKey);
@@ -159,16 +363,16 @@ public record SpriteViewCommandHandler(SpriteAtlasCatalog catalog, Duration titl
             .append(jsonButton);
     }
 
-    private Component buildSpriteName(String spriteKey) {
+    private static Component buildSpriteName(String spriteKey) {
         String truncated = truncateSpriteKey(spriteKey);
         return Component.text(truncated, NamedTextColor.YELLOW)
             .clickEvent(ClickEvent.copyToClipboard(spriteKey))
             .hoverEvent(Component.text("Copy full path: " + spriteKey, NamedTextColor.GRAY));
     }
 
-    private Component buildSpriteIcon(String atlasCommandId, String spriteKey, String miniMessageTag) {
-        String previewCommand = previewCommand(atlasCommandId, spriteKey);
-        Component icon = MINI.deserialize("<reset><white><" + miniMessageTag + ">");
+    private static Component buildSpriteIcon(String atlasId, String spriteKey, String previewCommand) {
+        // White, so the sprite is not tinted by the gray frame it sits in.
+        Component icon = spriteComponent(atlasId, spriteKey).color(NamedTextColor.WHITE);
         Component framed = Component.text("[ ", NamedTextColor.GRAY)
             .append(icon)
             .append(Component.text(" ]", NamedTextColor.GRAY));
@@ -176,7 +380,7 @@ public record SpriteViewCommandHandler(SpriteAtlasCatalog catalog, Duration titl
             .hoverEvent(Component.text("Click to preview in title", NamedTextColor.YELLOW));
     }
 
-    private String truncateSpriteKey(String spriteKey) {
+    private static String truncateSpriteKey(String spriteKey) {
         int lastSlash = spriteKey.lastIndexOf('/');
         if (lastSlash == -1 || lastSlash == spriteKey.length() - 1) {
             return spriteKey;
@@ -184,25 +388,25 @@ public record SpriteViewCommandHandler(SpriteAtlasCatalog catalog, Duration titl
         return spriteKey.substring(lastSlash + 1);
     }
 
-    private void sendHeader(CommandContext<CommandSourceStack> context, String title, String badge,
-                            Pagination.Page<?> slice, boolean showPageIndicator, String breadcrumbCommand,
-                            String prevCommand, String nextCommand) {
+    private Component header(String title, String badge, String version, Pagination.Page<?> slice,
+                             boolean showPageIndicator, String breadcrumbCommand, String prevCommand, String nextCommand) {
         Component header = Component.empty()
             .append(navButton("«", prevCommand, "Previous page"))
             .append(Component.text(" "))
-            .append(buildHeaderLabel(title, badge, breadcrumbCommand))
+            .append(buildHeaderLabel(title, badge, version, breadcrumbCommand))
             .append(buildPageIndicator(slice, showPageIndicator))
             .append(Component.text(" "))
             .append(navButton("»", nextCommand, "Next page"));
-        sendLine(context, centerComponent(header));
+        return centerComponent(header);
     }
 
-    private Component buildHeaderLabel(String title, String badge, String breadcrumbCommand) {
+    private Component buildHeaderLabel(String title, String badge, String version, String breadcrumbCommand) {
         if (HEADER_BADGE_ATLAS.equals(badge)) {
+            String qualifier = version == null ? stripMinecraftNamespace(title) : stripMinecraftNamespace(title) + " @ " + version;
             Component atlasLabel = Component.text(formatAtlasTitle(title), NamedTextColor.GOLD)
                 .append(Component.text(" "))
                 .append(Component.text(formatBadgeLabel(badge), NamedTextColor.GOLD))
-                .append(Component.text(" (" + stripMinecraftNamespace(title) + ")", NamedTextColor.DARK_GRAY));
+                .append(Component.text(" (" + qualifier + ")", NamedTextColor.DARK_GRAY));
             return applyBreadcrumbInteractivity(atlasLabel, breadcrumbCommand);
         }
         List<Component> segments = buildBreadcrumbSegments(title);
@@ -306,14 +510,10 @@ public record SpriteViewCommandHandler(SpriteAtlasCatalog catalog, Duration titl
         return Component.text(" (Page " + slice.page() + " of " + slice.totalPages() + ")", NamedTextColor.GOLD);
     }
 
-    private void sendNavbarSpacer(CommandContext<CommandSourceStack> context) {
-        sendLine(context, NAVBAR_SPACER);
-    }
-
     private Component navButton(String label, String command, String hover) {
         boolean enabled = command != null && !command.isBlank();
-        String color = enabled ? "yellow" : "dark_gray";
-        Component arrow = MINI.deserialize("<reset><" + color + "><bold>" + label + "</bold></" + color + "><reset>");
+        Component arrow = Component.text(label, enabled ? NamedTextColor.YELLOW : NamedTextColor.DARK_GRAY,
+            TextDecoration.BOLD);
         if (!enabled) {
             return arrow;
         }
@@ -327,41 +527,23 @@ public record SpriteViewCommandHandler(SpriteAtlasCatalog catalog, Duration titl
             .hoverEvent(Component.text(hover, NamedTextColor.GRAY));
     }
 
-    private Component copyButton(String label, NamedTextColor color, String payload, String hover) {
+    private static Component copyButton(String label, NamedTextColor color, String payload, String hover) {
         return Component.text(label, color)
             .clickEvent(ClickEvent.copyToClipboard(payload))
             .hoverEvent(Component.text(hover, NamedTextColor.GRAY));
     }
 
-    private List<String> atlasSpriteKeys(SpriteAtlasCatalog.AtlasEntry atlas) {
-        List<String> sprites = new ArrayList<>(atlas.spriteCount());
-        for (SpriteAtlasCatalog.SpriteGroup group : atlas.groups()) {
-            sprites.addAll(group.sprites());
-        }
-        sprites.sort(String.CASE_INSENSITIVE_ORDER);
-        return sprites;
-    }
-
-    private String buildAtlasJsonPayload(String atlasId, String spriteKey) {
+    private static String buildAtlasJsonPayload(String atlasId, String spriteKey) {
         return "{\"object\":\"atlas\",\"atlas\":\"" + escapeJson(atlasId) + "\",\"sprite\":\"" + escapeJson(spriteKey) + "\"}";
     }
 
-    private String escapeJson(String value) {
+    private static String escapeJson(String value) {
         if (value == null) {
             return "";
         }
         return value.replace("\\", "\\\\").replace("\"", "\\\"");
     }
 
-    private boolean atlasContainsSprite(SpriteAtlasCatalog.AtlasEntry atlas, String spriteKey) {
-        for (SpriteAtlasCatalog.SpriteGroup group : atlas.groups()) {
-            if (group.sprites().contains(spriteKey)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     private String normalizeSpriteArgument(String raw) {
         if (raw == null) {
             return "";
@@ -375,39 +557,132 @@ public record SpriteViewCommandHandler(SpriteAtlasCatalog catalog, Duration titl
         return trimmed;
     }
 
-    private void showSpritePreview(CommandContext<CommandSourceStack> context, String atlasId, String spriteKey) {
-        Component titleComponent = MINI.deserialize("<" + buildMiniMessageSpriteTag(atlasId, spriteKey) + ">");
+    private Consumer<CommandSender> showSpritePreview(String atlasId, String spriteKey) {
+        Component titleComponent = spriteComponent(atlasId, spriteKey);
         Title.Times times = Title.Times.times(Duration.ZERO, titleDisplayDuration, Duration.ZERO);
         Title title = Title.title(titleComponent, Component.empty(), times);
-        context.getSource().getSender().showTitle(title);
+        return sender -> sender.showTitle(title);
+    }
+
+    /**
+     * The sprite object component the MiniMessage tag from {@link #buildMiniMessageSpriteTag} parses to, built
+     * directly. Keys a sprite component cannot carry show as a red question mark.
+     */
+    private static Component spriteComponent(String atlasId, String spriteKey) {
+        if (!Key.parseable(atlasId) || !Key.parseable(spriteKey)) {
+            return MISSING_SPRITE;
+        }
+        return Component.object(ObjectContents.sprite(Key.key(atlasId), Key.key(spriteKey)));
     }
 
-    private String buildMiniMessageSpriteTag(String atlasId, String spriteKey) {
+    private static String buildMiniMessageSpriteTag(String atlasId, String spriteKey) {
         return "sprite:\"" + escapeMiniMessageArg(atlasId) + "\":" + escapeMiniMessageArg(spriteKey);
     }
 
-    private String escapeMiniMessageArg(String value) {
+    private static String escapeMiniMessageArg(String value) {
         return value.replace("\"", "\\\"");
     }
 
-    private void sendPageRule(CommandContext<CommandSourceStack> context) {
-        sendLine(context, PAGE_RULE);
+    /**
+     * Takes the snapshot {@code version} currently publishes, then builds the reply from it off the main thread.
+     * Errors resolving the snapshot are replied to right away.
+     */
+    private int respond(CommandContext<CommandSourceStack> context, String version,
+                        Function<SpriteAtlasCatalog.CatalogSnapshot, Consumer<CommandSender>> reply) {
+        Optional<SpriteAtlasCatalog.CatalogSnapshot> snapshot = resolveSnapshot(context, version);
+        if (snapshot.isPresent()) {
+            SpriteAtlasCatalog.CatalogSnapshot taken = snapshot.get();
+            dispatcher.submit(context.getSource().getSender(), () -> reply.apply(taken));
+        }
+        return Command.SINGLE_SUCCESS;
+    }
+
+    /**
+     * A page as one chat message. The joined lines sit under an unstyled parent, so each keeps exactly the
+     * style it had when sent on its own.
+     */
+    private static Consumer<CommandSender> pageMessage(List<Component> lines) {
+        return message(Component.join(JoinConfiguration.newlines(), lines));
     }
 
+    private static Consumer<CommandSender> message(Component component) {
+        return sender -> sender.sendMessage(component);
+    }
+
+    // Goes through the dispatcher too, so it cannot overtake a page still being built for the same sender.
     private void sendLine(CommandContext<CommandSourceStack> context, Component component) {
-        context.getSource().getSender().sendMessage(component);
+        dispatcher.submit(context.getSource().getSender(), () -> message(component));
     }
 
     private void sendNotReady(CommandContext<CommandSourceStack> context) {
         sendLine(context, Component.text("Sprite atlas catalog is not ready yet. Please refresh first.", NamedTextColor.RED));
     }
 
+    private Optional<SpriteAtlasCatalog.CatalogSnapshot> resolveSnapshot(CommandContext<CommandSourceStack> context, String version) {
+        SpriteAtlasCatalog catalog = catalogs.catalog(version);
+        if (catalog == null) {
+            sendLine(context, Component.text("Unknown version: " + version + " (loaded: "
+                + String.join(", ", catalogs.versions()) + ")", NamedTextColor.RED));
+            return Optional.empty();
+        }
+        Optional<SpriteAtlasCatalog.CatalogSnapshot> snapshot = catalog.currentSnapshot();
+        if (snapshot.isEmpty()) {
+            sendNotReady(context);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the version of the catalog {@code version} selects, resolving {@code null} to the server's own.
+     */
+    private String catalogVersion(String version) {
+        return version == null ? catalogs.primaryVersion() : version;
+    }
+
+    /**
+     * Returns {@code version} when it selects a non-primary catalog, or {@code null} for the server's own.
+     */
+    private String scopedVersion(String version) {
+        return catalogs.isPrimary(version) ? null : version;
+    }
+
+    private String rootTitle(String version) {
+        String scoped = scopedVersion(version);
+        return scoped == null ? "Sprite Atlases" : "Sprite Atlases/" + scoped;
+    }
+
+    private String rootPageCommand(String version, int page) {
+        String scoped = scopedVersion(version);
+        return scoped == null
+            ? command("sprite", "page", Integer.toString(page))
+            : command("sprite", "view", "version", scoped, "page", Integer.toString(page));
+    }
+
+    private String viewCommand(String version, String... arguments) {
+        return scopedCommand("view", version, arguments);
+    }
+
+    private String scopedCommand(String subcommand, String version, String... arguments) {
+        String scoped = scopedVersion(version);
+        List<String> parts = new ArrayList<>();
+        parts.add("sprite");
+        if (scoped != null || arguments.length > 0) {
+            parts.add(subcommand);
+        }
+        if (scoped != null) {
+            parts.add("version");
+            parts.add(scoped);
+        }
+        parts.addAll(List.of(arguments));
+        return command(parts.toArray(String[]::new));
+    }
+
     private String atlasCommandArgument(SpriteAtlasCatalog.AtlasEntry atlas) {
         return atlas.isMinecraft() ? atlas.simpleName() : atlas.atlasId();
     }
 
-    private String previewCommand(String atlasId, String spriteKey) {
-        return command("sprite", "preview", atlasId, spriteKey);
+    private String previewCommand(String version, String atlasId, String spriteKey) {
+        return scopedCommand("preview", version, atlasId, spriteKey);
     }
 
     private String command(String... parts) {
@@ -438,13 +713,16 @@ public record SpriteViewCommandHandler(SpriteAtlasCatalog catalog, Duration titl
         return trimmed;
     }
 
+    // Brigadier only reads letters, digits and _-.+ unquoted, so sprite paths and namespaced ids need quotes.
     private boolean needsQuoting(String value) {
         for (int i = 0; i < value.length(); i++) {
-            char ch = value.charAt(i);
-            if (Character.isWhitespace(ch)) {
+            if (!StringReader.isAllowedInUnquotedString(value.charAt(i))) {
                 return true;
             }
         }
         return false;
     }
+
+    private record DuplicateRow(int set, String hash, SpriteReverseIndex.SpriteUse sprite) {
+    }
 }
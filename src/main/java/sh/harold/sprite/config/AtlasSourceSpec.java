@@ -0,0 +1,21 @@
+package sh.harold.sprite.config;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One configured place atlases can be populated from.
+ *
+ * @param type the kind of source
+ * @param location the mirror base URL or filesystem path, with {@code {version}} replaced by the server
+ *                 version; unused for {@link AtlasSourceType#MOJANG}
+ */
+public record AtlasSourceSpec(AtlasSourceType type, String location) {
+    public AtlasSourceSpec {
+        Objects.requireNonNull(type, "type");
+    }
+
+    public static List<AtlasSourceSpec> defaults() {
+        return List.of(new AtlasSourceSpec(AtlasSourceType.MOJANG, null));
+    }
+}
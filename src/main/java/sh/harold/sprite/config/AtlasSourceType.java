@@ -0,0 +1,8 @@
+package sh.harold.sprite.config;
+
+public enum AtlasSourceType {
+    MOJANG,
+    MIRROR,
+    LOCAL_JAR,
+    DIRECTORY
+}
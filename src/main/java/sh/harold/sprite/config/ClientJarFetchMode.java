@@ -0,0 +1,6 @@
+package sh.harold.sprite.config;
+
+public enum ClientJarFetchMode {
+    FULL,
+    RANGE
+}
@@ -0,0 +1,17 @@
+package sh.harold.sprite.config;
+
+/**
+ * Bounds for the content-addressed client jar cache. A limit of zero or less disables that bound.
+ *
+ * @param maxBytes total size the cached jars may occupy before the least recently used are evicted
+ * @param maxJars number of jars kept before the least recently used are evicted
+ * @param keepAfterExtraction whether the jar stays cached once its atlases and texture index are extracted
+ */
+public record JarCachePolicy(long maxBytes, int maxJars, boolean keepAfterExtraction) {
+    public static final long DEFAULT_MAX_MEGABYTES = 256;
+    public static final int DEFAULT_MAX_JARS = 2;
+
+    public static JarCachePolicy defaults() {
+        return new JarCachePolicy(DEFAULT_MAX_MEGABYTES * 1024 * 1024, DEFAULT_MAX_JARS, true);
+    }
+}
@@ -1,21 +1,34 @@
 package sh.harold.sprite.config;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.Objects;
 
 public record SpriteConfig(
     int configVersion,
     AtlasPopulationMode populationMode,
-    Duration titleDisplayDuration
+    List<AtlasSourceSpec> atlasSources,
+    ClientJarFetchMode clientJarFetchMode,
+    JarCachePolicy jarCachePolicy,
+    boolean watchCache,
+    List<String> additionalVersions,
+    Duration titleDisplayDuration,
+    int pageCacheComponents
 ) {
-    public static final int CURRENT_VERSION = 2;
+    public static final int CURRENT_VERSION = 8;
     public static final Duration DEFAULT_TITLE_DISPLAY_DURATION = Duration.ofSeconds(2);
+    public static final int DEFAULT_PAGE_CACHE_COMPONENTS = 50_000;
 
     public SpriteConfig {
         populationMode = Objects.requireNonNullElse(populationMode, AtlasPopulationMode.AUTOMATIC);
+        atlasSources = atlasSources == null || atlasSources.isEmpty() ? AtlasSourceSpec.defaults() : List.copyOf(atlasSources);
+        clientJarFetchMode = Objects.requireNonNullElse(clientJarFetchMode, ClientJarFetchMode.FULL);
+        jarCachePolicy = Objects.requireNonNullElseGet(jarCachePolicy, JarCachePolicy::defaults);
+        additionalVersions = additionalVersions == null ? List.of() : List.copyOf(additionalVersions);
         Duration sanitized = titleDisplayDuration == null || titleDisplayDuration.isNegative()
             ? DEFAULT_TITLE_DISPLAY_DURATION
             : titleDisplayDuration;
         titleDisplayDuration = sanitized;
+        pageCacheComponents = Math.max(0, pageCacheComponents);
     }
 }
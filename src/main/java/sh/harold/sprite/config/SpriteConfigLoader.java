@@ -10,6 +10,8 @@ import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.logging.Level;
 
@@ -34,14 +36,15 @@ public final class SpriteConfigLoader {
 
             SpriteConfig config = readConfig(configPath);
             if (config.configVersion() != SpriteConfig.CURRENT_VERSION) {
-                backupAndRegenerate(configPath);
+                migrate(configPath, config.configVersion());
                 config = readConfig(configPath);
             }
             return config;
         } catch (IOException ex) {
             plugin.getLogger().log(Level.SEVERE, "Failed to load sprite config; falling back to defaults.", ex);
             return new SpriteConfig(SpriteConfig.CURRENT_VERSION, AtlasPopulationMode.AUTOMATIC,
-                SpriteConfig.DEFAULT_TITLE_DISPLAY_DURATION);
+                AtlasSourceSpec.defaults(), ClientJarFetchMode.FULL, JarCachePolicy.defaults(), false,
+                List.of(), SpriteConfig.DEFAULT_TITLE_DISPLAY_DURATION, SpriteConfig.DEFAULT_PAGE_CACHE_COMPONENTS);
         }
     }
 
@@ -57,6 +60,27 @@ public final class SpriteConfigLoader {
                 "Unknown atlas population mode '" + modeName + "', defaulting to AUTOMATIC.", ex);
             mode = AtlasPopulationMode.AUTOMATIC;
         }
+        List<AtlasSourceSpec> sources = readSources(yaml);
+        var fetchModeName = yaml.getString("population.client-jar-fetch", ClientJarFetchMode.FULL.name());
+        ClientJarFetchMode fetchMode;
+        try {
+            fetchMode = ClientJarFetchMode.valueOf(fetchModeName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            plugin.getLogger().log(Level.WARNING,
+                "Unknown client jar fetch mode '" + fetchModeName + "', defaulting to FULL.", ex);
+            fetchMode = ClientJarFetchMode.FULL;
+        }
+        long maxMegabytes = yaml.getLong("population.jar-cache.max-megabytes", JarCachePolicy.DEFAULT_MAX_MEGABYTES);
+        int maxJars = yaml.getInt("population.jar-cache.max-jars", JarCachePolicy.DEFAULT_MAX_JARS);
+        boolean keepJar = yaml.getBoolean("population.jar-cache.keep-after-extraction", true);
+        JarCachePolicy jarCachePolicy = new JarCachePolicy(maxMegabytes * 1024 * 1024, maxJars, keepJar);
+        boolean watchCache = yaml.getBoolean("population.watch", false);
+        List<String> additionalVersions = new ArrayList<>();
+        for (String additional : yaml.getStringList("versions.additional")) {
+            if (additional != null && !additional.isBlank() && !additionalVersions.contains(additional.trim())) {
+                additionalVersions.add(additional.trim());
+            }
+        }
         double staySeconds = yaml.getDouble("view.title-display-seconds",
             SpriteConfig.DEFAULT_TITLE_DISPLAY_DURATION.toMillis() / 1000.0);
         if (staySeconds < 0) {
@@ -65,15 +89,56 @@ public final class SpriteConfigLoader {
             staySeconds = fallbackSeconds;
         }
         Duration titleDuration = Duration.ofMillis(Math.round(staySeconds * 1000.0));
-        return new SpriteConfig(version, mode, titleDuration);
+        int pageCacheComponents = yaml.getInt("view.page-cache-components", SpriteConfig.DEFAULT_PAGE_CACHE_COMPONENTS);
+        return new SpriteConfig(version, mode, sources, fetchMode, jarCachePolicy, watchCache, additionalVersions,
+            titleDuration, pageCacheComponents);
     }
 
-    private void backupAndRegenerate(Path configPath) throws IOException {
+    private List<AtlasSourceSpec> readSources(YamlConfiguration yaml) {
+        List<AtlasSourceSpec> sources = new ArrayList<>();
+        for (var entry : yaml.getMapList("population.sources")) {
+            Object typeName = entry.get("type");
+            AtlasSourceType type;
+            try {
+                type = AtlasSourceType.valueOf(String.valueOf(typeName).toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException ex) {
+                plugin.getLogger().warning("Unknown atlas source type '" + typeName + "'; skipping it.");
+                continue;
+            }
+            Object location = type == AtlasSourceType.MIRROR ? entry.get("url") : entry.get("path");
+            if (type != AtlasSourceType.MOJANG && location == null) {
+                plugin.getLogger().warning("Atlas source " + type + " is missing its "
+                    + (type == AtlasSourceType.MIRROR ? "url" : "path") + "; skipping it.");
+                continue;
+            }
+            sources.add(new AtlasSourceSpec(type, location == null ? null : location.toString()));
+        }
+        if (sources.isEmpty()) {
+            return AtlasSourceSpec.defaults();
+        }
+        return sources;
+    }
+
+    /**
+     * Regenerates the config from the bundled defaults and carries every value the operator set over to it,
+     * so keys added since their version appear with their comments without losing existing settings. Values
+     * of keys the current defaults no longer have are dropped; the previous file is kept as a backup.
+     */
+    private void migrate(Path configPath, int fromVersion) throws IOException {
+        var previous = YamlConfiguration.loadConfiguration(configPath.toFile());
         var backupName = "config-" + BACKUP_FORMAT.format(LocalDateTime.now()) + ".yml.bak";
         Path backupPath = configPath.resolveSibling(backupName);
         Files.move(configPath, backupPath, StandardCopyOption.REPLACE_EXISTING);
-        plugin.getLogger().warning("Outdated config detected. Backed up to " + backupPath.getFileName()
-            + " and regenerating defaults.");
         plugin.saveResource("config.yml", false);
+
+        var migrated = YamlConfiguration.loadConfiguration(configPath.toFile());
+        for (String path : previous.getKeys(true)) {
+            if (!path.equals("config-version") && !previous.isConfigurationSection(path) && migrated.contains(path)) {
+                migrated.set(path, previous.get(path));
+            }
+        }
+        migrated.save(configPath.toFile());
+        plugin.getLogger().warning("Updated config from version " + fromVersion + " to " + SpriteConfig.CURRENT_VERSION
+            + ", keeping your settings. The previous file was backed up to " + backupPath.getFileName() + ".");
     }
 }
@@ -14,8 +14,8 @@ public final class Pagination {
         }
 
         int totalItems = source.size();
-        int totalPages = Math.max(1, (int) Math.ceil(totalItems / (double) pageSize));
-        int page = Math.max(1, Math.min(requestedPage, totalPages));
+        int totalPages = totalPages(totalItems, pageSize);
+        int page = pageNumber(totalItems, requestedPage, pageSize);
         int fromIndex = Math.min((page - 1) * pageSize, totalItems);
         int toIndex = Math.min(fromIndex + pageSize, totalItems);
 
@@ -23,6 +23,17 @@ public final class Pagination {
         return new Page<>(List.copyOf(slice), page, totalPages, totalItems);
     }
 
+    /**
+     * Returns the page {@link #slice} would show for {@code requestedPage}, without slicing anything.
+     */
+    public static int pageNumber(int totalItems, int requestedPage, int pageSize) {
+        return Math.max(1, Math.min(requestedPage, totalPages(totalItems, pageSize)));
+    }
+
+    private static int totalPages(int totalItems, int pageSize) {
+        return Math.max(1, (int) Math.ceil(totalItems / (double) pageSize));
+    }
+
     public record Page<T>(List<T> items, int page, int totalPages, int totalItems) {
         public boolean hasPrevious() {
             return page > 1;
@@ -0,0 +1,175 @@
+package sh.harold.sprite.atlas;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RemoteZipReaderTest {
+    private static final String BLOCKS = "assets/minecraft/atlases/blocks.json";
+    private static final String ITEMS = "assets/minecraft/atlases/items.json";
+    private static final byte[] BLOCKS_JSON = "{\"sources\":[{\"type\":\"minecraft:directory\",\"source\":\"block\"}]}"
+        .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ITEMS_JSON = "{\"sources\":[{\"type\":\"minecraft:directory\",\"source\":\"item\"}]}"
+        .getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicLong servedBytes = new AtomicLong();
+    private byte[] jar;
+    private Mode mode;
+    private HttpServer server;
+    private HttpClient client;
+    private RemoteZipReader reader;
+
+    private enum Mode {
+        RANGES,
+        IGNORES_RANGES,
+        MISMATCHED_RANGE,
+        SHORT_BODY
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        jar = syntheticJar();
+        mode = Mode.RANGES;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/client.jar", this::serve);
+        server.start();
+        client = HttpClient.newHttpClient();
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/client.jar");
+        reader = new RemoteZipReader(client, uri, "sprite-test");
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void readsAtlasEntriesThroughPartialContent() throws Exception {
+        List<RemoteZipReader.Entry> entries = reader.readCentralDirectory();
+        assertNotNull(entries);
+        List<RemoteZipReader.Entry> atlases = entries.stream()
+            .filter(entry -> AtlasCacheStore.isAtlasEntry(entry.name()))
+            .toList();
+        assertEquals(2, atlases.size());
+
+        Map<RemoteZipReader.Entry, byte[]> contents = reader.readEntries(atlases);
+        assertNotNull(contents);
+        for (Map.Entry<RemoteZipReader.Entry, byte[]> content : contents.entrySet()) {
+            byte[] expected = content.getKey().name().equals(BLOCKS) ? BLOCKS_JSON : ITEMS_JSON;
+            assertArrayEquals(expected, content.getValue());
+        }
+        assertTrue(servedBytes.get() < jar.length, "served " + servedBytes.get() + " of " + jar.length + " bytes");
+    }
+
+    @Test
+    void fallsBackWhenTheServerAnswersWithTheWholeJar() throws Exception {
+        mode = Mode.IGNORES_RANGES;
+        assertNull(reader.readCentralDirectory());
+    }
+
+    @Test
+    void fallsBackWhenContentRangeDoesNotMatchTheRequest() throws Exception {
+        mode = Mode.MISMATCHED_RANGE;
+        assertNull(reader.readCentralDirectory());
+    }
+
+    @Test
+    void rejectsARangeBodyShorterThanItsContentRange() {
+        mode = Mode.SHORT_BODY;
+        IOException thrown = assertThrows(IOException.class, reader::readCentralDirectory);
+        assertTrue(thrown.getMessage().contains("ended after"), thrown.getMessage());
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range == null || mode == Mode.IGNORES_RANGES) {
+                send(exchange, 200, jar);
+                return;
+            }
+            String spec = range.substring("bytes=".length());
+            long start;
+            long end;
+            if (spec.startsWith("-")) {
+                start = Math.max(0, jar.length - Long.parseLong(spec.substring(1)));
+                end = jar.length - 1;
+            } else {
+                int dash = spec.indexOf('-');
+                start = Long.parseLong(spec.substring(0, dash));
+                end = Math.min(Long.parseLong(spec.substring(dash + 1)), jar.length - 1);
+            }
+            byte[] body = Arrays.copyOfRange(jar, (int) start, (int) end + 1);
+            if (mode == Mode.MISMATCHED_RANGE) {
+                start++;
+            } else if (mode == Mode.SHORT_BODY) {
+                body = Arrays.copyOf(body, body.length / 2);
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + jar.length);
+            send(exchange, 206, body);
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        servedBytes.addAndGet(body.length);
+    }
+
+    // Two atlases, one deflated and one stored, on either side of a texture too large for one tail request to
+    // cover and too far apart to be fetched as one range.
+    private static byte[] syntheticJar() throws IOException {
+        byte[] texture = new byte[256 * 1024];
+        new Random(1).nextBytes(texture);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry(BLOCKS));
+            zip.write(BLOCKS_JSON);
+            zip.putNextEntry(stored("assets/minecraft/textures/block/noise.png", texture));
+            zip.write(texture);
+            zip.putNextEntry(stored(ITEMS, ITEMS_JSON));
+            zip.write(ITEMS_JSON);
+            zip.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ZipEntry stored(String name, byte[] content) {
+        ZipEntry entry = new ZipEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+        return entry;
+    }
+}